@@ -3,6 +3,7 @@ package com.example.tof;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.graphics.Rect;
 import android.graphics.ImageFormat;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -11,45 +12,214 @@ import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Range;
-import android.util.SizeF;
+import android.util.Size;
 import android.view.Surface;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 
-public class Camera extends CameraDevice.StateCallback {
+public class Camera extends CameraDevice.StateCallback implements DepthFrameSource {
     private static final String TAG = Camera.class.getSimpleName();
 
-    private static int FPS_MIN = 15;
-    private static int FPS_MAX = 30;
-
     private Context context;
     private CameraManager cameraManager;
+    private DepthStreamSelector streamSelector =
+            new DepthStreamSelector(DepthStreamSelector.Policy.CLOSEST_TO_TARGET_PIXELS);
+    private DepthStreamConfig streamConfig = DepthStreamConfig.DEFAULT;
+    private CameraIntrinsics intrinsics;
+    private PointCloudListener pointCloudListener;
+    private DepthRecorder recorder;
+    private DepthStreamSender streamSender;
+    private CaptureScheduler.Policy capturePolicy = CaptureScheduler.Policy.BALANCED;
+    private CaptureScheduler captureScheduler;
     private ImageReader previewReader;
     private CaptureRequest.Builder previewBuilder;
+    private CameraCaptureSession captureSession;
     private DepthFrameAvailableListener imageAvailableListener;
+    private CameraDevice cameraDevice;
+    // Camera callbacks and frame capture run here rather than on the main looper
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
 
     public Camera(Context context, DepthFrameVisualizer depthFrameVisualizer) {
         this.context = context;
         cameraManager = (CameraManager)context.getSystemService(Context.CAMERA_SERVICE);
+        cameraThread = new HandlerThread("CameraCapture");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
         imageAvailableListener = new DepthFrameAvailableListener(depthFrameVisualizer);
-        previewReader = ImageReader.newInstance(DepthFrameAvailableListener.WIDTH,
-                DepthFrameAvailableListener.HEIGHT, ImageFormat.DEPTH16,2);
-        previewReader.setOnImageAvailableListener(imageAvailableListener, null);
+    }
+
+    // Decides which of the camera's depth stream sizes is used. Takes effect the next time the
+    // camera is opened.
+    public void setStreamSelector(DepthStreamSelector streamSelector) {
+        this.streamSelector = streamSelector;
+    }
+
+    // Trades frame rate against latency when processing can't keep up, see CaptureScheduler.
+    // Takes effect the next time the camera is opened.
+    public void setCapturePolicy(CaptureScheduler.Policy capturePolicy) {
+        this.capturePolicy = capturePolicy;
+    }
+
+    // Known once the camera has been opened, e.g. for its fps range and processing time
+    public CaptureScheduler getCaptureScheduler() {
+        return captureScheduler;
+    }
+
+    public DepthStreamConfig getStreamConfig() {
+        return streamConfig;
+    }
+
+    @Override
+    public int getWidth() {
+        return streamConfig.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return streamConfig.getHeight();
+    }
+
+    // Opens the front depth camera and sends its frames to the pipeline, e.g. getPipeline() for
+    // the bitmaps. The pipeline is resized once the stream size is known.
+    @Override
+    public void start(DepthPipeline<?> pipeline) {
+        imageAvailableListener.setTarget(pipeline);
+        openFrontDepthCamera();
+    }
+
+    // Stops capturing, leaving the camera thread and pipeline ready for another start
+    @Override
+    public void stop() {
+        stopRecording();
+        stopStreaming();
+        // Closed along with the device
+        captureSession = null;
+        if (cameraDevice != null) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+        if (previewReader != null) {
+            previewReader.close();
+            previewReader = null;
+        }
+    }
+
+    // Lens intrinsics at the depth stream size, known once the camera has been opened
+    public CameraIntrinsics getIntrinsics() {
+        return intrinsics;
+    }
+
+    // Unprojects every depth frame into a point cloud for the listener, or stops when it's null
+    public void setPointCloudListener(PointCloudListener listener) {
+        pointCloudListener = listener;
+        updatePointCloud();
+    }
+
+    private void updatePointCloud() {
+        if (pointCloudListener != null && intrinsics != null) {
+            getPipeline().setPointCloud(new PointCloudProjector(intrinsics), pointCloudListener);
+        } else {
+            getPipeline().setPointCloud(null, null);
+        }
+    }
+
+    // Watches the raw frames for motion on the camera thread and tells the listener when it starts
+    // and stops. When gated the pipeline only gets frames while there is motion, e.g. for a kiosk
+    // that only needs to wake up when someone walks up. Pass a null detector to stop.
+    public void setMotionDetector(MotionDetector detector, MotionListener listener, boolean gated) {
+        imageAvailableListener.setMotionGated(false);
+        imageAvailableListener.setMotionDetector(detector, listener);
+        imageAvailableListener.setMotionGated(detector != null && gated);
+    }
+
+    // Records the raw depth stream to the file until stopRecording, replacing any recording in
+    // progress. Frames are written on the recorder's own thread.
+    public void startRecording(File file) throws IOException {
+        stopRecording();
+        recorder = new DepthRecorder(file, streamConfig.getWidth(), streamConfig.getHeight(),
+                imageAvailableListener.getDepthDecoder());
+        imageAvailableListener.setRecorder(recorder);
+        Log.i(TAG, "Recording depth to " + file);
+    }
+
+    public void stopRecording() {
+        if (recorder == null) {
+            return;
+        }
+        imageAvailableListener.setRecorder(null);
+        try {
+            recorder.close();
+            Log.i(TAG, "Recorded " + recorder.getRecordedFrameCount() + " depth frames, dropped "
+                    + recorder.getDroppedFrameCount());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not finish depth recording: " + e.getMessage());
+        }
+        recorder = null;
+    }
+
+    // Streams the raw depth frames, compressed, to a companion process listening at the address
+    // (see DepthStreamReceiver) until stopStreaming. Connecting and sending happen on the
+    // sender's own thread, which drops the oldest frames if the connection can't keep up.
+    public void startStreaming(InetSocketAddress address) throws IOException {
+        stopStreaming();
+        streamSender = new DepthStreamSender(address, streamConfig.getWidth(), streamConfig.getHeight());
+        imageAvailableListener.setStreamSender(streamSender);
+        Log.i(TAG, "Streaming depth to " + address);
+    }
+
+    public void stopStreaming() {
+        if (streamSender == null) {
+            return;
+        }
+        imageAvailableListener.setStreamSender(null);
+        try {
+            streamSender.close();
+            Log.i(TAG, "Streamed " + streamSender.getSentFrameCount() + " depth frames in "
+                    + streamSender.getSentByteCount() + " bytes, dropped " + streamSender.getDroppedFrameCount());
+        } catch (IOException e) {
+            Log.e(TAG, "Depth stream failed: " + e.getMessage());
+        }
+        streamSender = null;
+    }
+
+    public DepthPipeline<DepthBitmaps> getPipeline() {
+        return imageAvailableListener.getPipeline();
     }
 
     // Open the front depth camera and start sending frames
     public void openFrontDepthCamera() {
         final String cameraId = getFrontDepthCameraID();
+        if (cameraId == null) {
+            Log.e(TAG, "No front depth camera found");
+            return;
+        }
+        configureDepthStream(cameraId);
         openCamera(cameraId);
     }
 
+    // Stop capturing and shut down the processing pipeline
+    public void close() {
+        stop();
+        imageAvailableListener.stop();
+        cameraThread.quitSafely();
+    }
+
     private String getFrontDepthCameraID() {
         try {
             for (String camera : cameraManager.getCameraIdList()) {
@@ -62,18 +232,6 @@ public class Camera extends CameraDevice.StateCallback {
                     depthCapable = depthCapable || capable;
                 }
                 if (depthCapable && facingFront) {
-                    // Note that the sensor size is much larger than the available capture size
-                    SizeF sensorSize = chars.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
-                    Log.i(TAG, "Sensor size: " + sensorSize);
-
-                    // Since sensor size doesn't actually match capture size and because it is
-                    // reporting an extremely wide aspect ratio, this FoV is bogus
-                    float[] focalLengths = chars.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
-                    if (focalLengths.length > 0) {
-                        float focalLength = focalLengths[0];
-                        double fov = 2 * Math.atan(sensorSize.getWidth() / (2 * focalLength));
-                        Log.i(TAG, "Calculated FoV: " + fov);
-                    }
                     return camera;
                 }
             }
@@ -84,11 +242,118 @@ public class Camera extends CameraDevice.StateCallback {
         return null;
     }
 
+    // Picks the depth stream size and frame rate from what the camera advertises, and sizes the
+    // ImageReader and processing pipeline to match
+    private void configureDepthStream(String cameraId) {
+        DepthStreamConfig config = null;
+        List<int[]> fpsRanges = new ArrayList<>();
+        intrinsics = null;
+        try {
+            CameraCharacteristics chars = cameraManager.getCameraCharacteristics(cameraId);
+            useTimestampClock(chars);
+            StreamConfigurationMap map = chars.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            Size[] outputSizes = map != null ? map.getOutputSizes(ImageFormat.DEPTH16) : null;
+            if (outputSizes != null) {
+                List<DepthStreamSelector.StreamSize> sizes = new ArrayList<>();
+                for (Size size : outputSizes) {
+                    long minFrameDuration = map.getOutputMinFrameDuration(ImageFormat.DEPTH16, size);
+                    int maxFps = minFrameDuration > 0 ? (int) (1000000000L / minFrameDuration) : 0;
+                    sizes.add(new DepthStreamSelector.StreamSize(size.getWidth(), size.getHeight(), maxFps));
+                }
+                Range<Integer>[] ranges = chars.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+                if (ranges != null) {
+                    for (Range<Integer> range : ranges) {
+                        fpsRanges.add(new int[]{range.getLower(), range.getUpper()});
+                    }
+                }
+                config = streamSelector.select(sizes, fpsRanges);
+            }
+            if (config == null) {
+                config = DepthStreamConfig.DEFAULT;
+            }
+            intrinsics = readIntrinsics(chars, config);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Could not read depth stream configurations");
+            e.printStackTrace();
+        }
+        if (config == null) {
+            config = DepthStreamConfig.DEFAULT;
+        }
+        if (intrinsics == null) {
+            intrinsics = CameraIntrinsics.fromFieldOfView(CameraIntrinsics.DEFAULT_HORIZONTAL_FOV_DEGREES,
+                    config.getWidth(), config.getHeight());
+        }
+        Log.i(TAG, "Depth stream: " + config + ", intrinsics: " + intrinsics);
+        createCaptureScheduler(config, fpsRanges);
+
+        if (previewReader == null || previewReader.getWidth() != config.getWidth()
+                || previewReader.getHeight() != config.getHeight()
+                || previewReader.getMaxImages() != captureScheduler.getImageBufferCount()) {
+            if (previewReader != null) {
+                previewReader.close();
+            }
+            previewReader = ImageReader.newInstance(config.getWidth(), config.getHeight(), ImageFormat.DEPTH16,
+                    captureScheduler.getImageBufferCount());
+            previewReader.setOnImageAvailableListener(imageAvailableListener, cameraHandler);
+        }
+        if (recorder != null && (recorder.getWidth() != config.getWidth()
+                || recorder.getHeight() != config.getHeight())) {
+            // A recording holds frames of a single size
+            stopRecording();
+        }
+        if (streamSender != null && (streamSender.getWidth() != config.getWidth()
+                || streamSender.getHeight() != config.getHeight())) {
+            stopStreaming();
+        }
+        imageAvailableListener.resize(config.getWidth(), config.getHeight());
+        streamConfig = config;
+        updatePointCloud();
+    }
+
+    // The scheduler picks among the ranges the chosen size can deliver
+    private void createCaptureScheduler(DepthStreamConfig config, List<int[]> fpsRanges) {
+        captureScheduler = new CaptureScheduler(capturePolicy, CaptureScheduler.rangesFor(config, fpsRanges));
+        imageAvailableListener.setCaptureScheduler(captureScheduler, new Runnable() {
+            @Override
+            public void run() {
+                updateFpsRange();
+            }
+        });
+    }
+
+    // The sensor's physical size and focal length don't match the depth stream (the sensor
+    // reports an extremely wide aspect ratio), so only the calibration is trusted. Returns null
+    // when the camera doesn't report it.
+    private static CameraIntrinsics readIntrinsics(CameraCharacteristics chars, DepthStreamConfig config) {
+        float[] calibration = chars.get(CameraCharacteristics.LENS_INTRINSIC_CALIBRATION);
+        Rect activeArray = chars.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if (calibration == null || activeArray == null) {
+            return null;
+        }
+        return CameraIntrinsics.fromCalibration(calibration, activeArray.width(), activeArray.height(),
+                config.getWidth(), config.getHeight());
+    }
+
+    // End to end latency compares frame timestamps against a clock on the same time base
+    private void useTimestampClock(CameraCharacteristics chars) {
+        Integer timestampSource = chars.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        NanoClock clock = NanoClock.SYSTEM;
+        if (timestampSource != null && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME) {
+            clock = new NanoClock() {
+                @Override
+                public long nanoTime() {
+                    return SystemClock.elapsedRealtimeNanos();
+                }
+            };
+        }
+        imageAvailableListener.getPipeline().setMetrics(new PipelineMetrics(clock));
+    }
+
     private void openCamera(String cameraId) {
         try{
             int permission = ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA);
             if(PackageManager.PERMISSION_GRANTED == permission) {
-                cameraManager.openCamera(cameraId, this, null);
+                cameraManager.openCamera(cameraId, this, cameraHandler);
             }else{
                 Log.e(TAG,"Permission not available to open camera");
             }
@@ -101,11 +366,12 @@ public class Camera extends CameraDevice.StateCallback {
 
     @Override
     public void onOpened(@NonNull CameraDevice camera) {
+        cameraDevice = camera;
         try {
             previewBuilder = camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             previewBuilder.set(CaptureRequest.JPEG_ORIENTATION, 0);
-            Range<Integer> fpsRange = new Range<>(FPS_MIN, FPS_MAX);
-            previewBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+            int[] fpsRange = captureScheduler.getFpsRange();
+            previewBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(fpsRange[0], fpsRange[1]));
             previewBuilder.addTarget(previewReader.getSurface());
 
             List<Surface> targetSurfaces = Arrays.asList(previewReader.getSurface());
@@ -119,7 +385,7 @@ public class Camera extends CameraDevice.StateCallback {
                         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
                             Log.e(TAG,"!!! Creating Capture Session failed due to internal error ");
                         }
-                    }, null);
+                    }, cameraHandler);
 
         } catch (CameraAccessException e) {
             e.printStackTrace();
@@ -128,15 +394,33 @@ public class Camera extends CameraDevice.StateCallback {
 
     private void onCaptureSessionConfigured(@NonNull CameraCaptureSession session) {
         Log.i(TAG,"Capture Session created");
+        captureSession = session;
         previewBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
         try {
-            session.setRepeatingRequest(previewBuilder.build(), null, null);
+            session.setRepeatingRequest(previewBuilder.build(), null, cameraHandler);
         } catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
 
+    // Runs on the camera thread when the scheduler picked a new frame rate
+    private void updateFpsRange() {
+        CameraCaptureSession session = captureSession;
+        if (session == null || previewBuilder == null) {
+            return;
+        }
+        int[] fpsRange = captureScheduler.getFpsRange();
+        previewBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(fpsRange[0], fpsRange[1]));
+        try {
+            session.setRepeatingRequest(previewBuilder.build(), null, cameraHandler);
+            Log.i(TAG, "Depth frame rate " + fpsRange[0] + "-" + fpsRange[1] + " fps for "
+                    + captureScheduler.getAverageProcessingNanos() / 1000 + " us of processing per frame");
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Could not change the frame rate: " + e.getMessage());
+        }
+    }
+
     @Override
     public void onDisconnected(@NonNull CameraDevice camera) {
 
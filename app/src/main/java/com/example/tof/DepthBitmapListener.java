@@ -0,0 +1,9 @@
+package com.example.tof;
+
+import android.graphics.Bitmap;
+
+// Receives the bitmap of a subscribed stage on the pipeline's render thread. The bitmap is reused
+// for later frames once this returns.
+public interface DepthBitmapListener {
+    void onBitmapAvailable(DepthStage stage, Bitmap bitmap);
+}
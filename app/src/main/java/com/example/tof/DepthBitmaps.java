@@ -0,0 +1,11 @@
+package com.example.tof;
+
+import android.graphics.Bitmap;
+
+// The bitmaps built for one frame, indexed by DepthStage ordinal. Each slot owns its bitmap and
+// reuses it for every frame of the same size.
+public class DepthBitmaps {
+    final Bitmap[] bitmaps = new Bitmap[DepthStage.count()];
+    // The stages converted for this frame, as a DepthStage bit mask
+    int stages;
+}
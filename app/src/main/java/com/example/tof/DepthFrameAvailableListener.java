@@ -1,157 +1,348 @@
 package com.example.tof;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.graphics.ImageFormat;
 import android.media.Image;
 import android.media.ImageReader;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 
 public class DepthFrameAvailableListener implements ImageReader.OnImageAvailableListener {
     private static final String TAG = DepthFrameAvailableListener.class.getSimpleName();
 
-    public static int WIDTH = 240;
-    public static int HEIGHT = 180;
+    private DepthPipeline<DepthBitmaps> pipeline;
+    // Where camera frames are submitted, the bitmap pipeline unless the camera was started with
+    // another one
+    private volatile DepthPipeline<?> target;
+    private volatile DepthRecorder recorder;
+    private volatile DepthStreamSender streamSender;
+    // Set and cleared together
+    private volatile MotionDetector motionDetector;
+    private volatile MotionListener motionListener;
+    private volatile boolean motionGated;
+    // Set and cleared together
+    private volatile CaptureScheduler captureScheduler;
+    private volatile Runnable fpsRangeChanged;
+    private Colormap colormap = Colormap.GREEN;
+    // Everything used for bitmap conversion is only touched from the pipeline's conversion stage,
+    // and is reallocated there when the frame size changes.
+    // Reused for every conversion so pixels can be written with a single setPixels call
+    private int[] pixels;
+    private int bitmapWidth;
+    private int bitmapHeight;
+    // Replaced as a whole when subscriptions change, like the pipeline's stage listeners
+    private volatile DepthBitmapListener[][] bitmapListeners;
 
-    private static float RANGE_MIN = 200.0f;
-    private static float RANGE_MAX = 1600.0f;
-    private static float CONFIDENCE_FILTER = 0.1f;
+    public DepthFrameAvailableListener(DepthFrameVisualizer depthFrameVisualizer) {
+        this(DepthStreamConfig.DEFAULT.getWidth(), DepthStreamConfig.DEFAULT.getHeight(), depthFrameVisualizer);
+    }
 
-    private DepthFrameVisualizer depthFrameVisualizer;
-    private int[] rawMask;
-    private int[] noiseReduceMask;
-    private int[] averagedMask;
-    private int[] averagedMaskP2;
-    private int[] blurredAverage;
+    public DepthFrameAvailableListener(int width, int height, DepthFrameVisualizer depthFrameVisualizer) {
+        bitmapListeners = new DepthBitmapListener[DepthStage.count()][0];
 
-    public DepthFrameAvailableListener(DepthFrameVisualizer depthFrameVisualizer) {
-        this.depthFrameVisualizer = depthFrameVisualizer;
+        DepthFrameProcessor depthFrameProcessor = new DepthFrameProcessor(width, height);
+        pipeline = new DepthPipeline<>(depthFrameProcessor, new BitmapConverter(), new BitmapRenderer());
+        pipeline.setConvertedStages(DepthStage.NONE);
+        if (depthFrameVisualizer != null) {
+            DepthBitmapListener visualizerListener = new VisualizerListener(depthFrameVisualizer);
+            for (int i = 0; i < DepthStage.count(); i++) {
+                subscribe(DepthStage.fromOrdinal(i), visualizerListener);
+            }
+        }
+        pipeline.start();
+        target = pipeline;
+    }
+
+    // Bitmaps are only built for stages that have a subscriber, and only the stages needed for
+    // them are computed. For raw masks without bitmaps, subscribe to the pipeline directly.
+    public synchronized void subscribe(DepthStage stage, DepthBitmapListener listener) {
+        DepthBitmapListener[][] listeners = bitmapListeners.clone();
+        DepthBitmapListener[] current = listeners[stage.ordinal()];
+        DepthBitmapListener[] updated = new DepthBitmapListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners[stage.ordinal()] = updated;
+        setBitmapListeners(listeners);
+    }
+
+    public synchronized void unsubscribe(DepthStage stage, DepthBitmapListener listener) {
+        DepthBitmapListener[][] listeners = bitmapListeners.clone();
+        DepthBitmapListener[] current = listeners[stage.ordinal()];
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                DepthBitmapListener[] updated = new DepthBitmapListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners[stage.ordinal()] = updated;
+                setBitmapListeners(listeners);
+                return;
+            }
+        }
+    }
+
+    private void setBitmapListeners(DepthBitmapListener[][] listeners) {
+        int stages = DepthStage.NONE;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].length > 0) {
+                stages |= DepthStage.fromOrdinal(i).mask();
+            }
+        }
+        bitmapListeners = listeners;
+        pipeline.setConvertedStages(stages);
+    }
+
+    public void setColormap(Colormap colormap) {
+        this.colormap = colormap;
+    }
+
+    // Range and confidence settings can be changed on the decoder while frames are flowing
+    public DepthDecoder getDepthDecoder() {
+        return pipeline.getProcessor().getDecoder();
+    }
+
+    // Call when the depth stream size changes. Buffers are only reallocated if it really did.
+    public void resize(int width, int height) {
+        pipeline.resize(width, height);
+        DepthPipeline<?> target = this.target;
+        if (target != pipeline) {
+            target.resize(width, height);
+        }
+    }
+
+    public DepthPipeline<DepthBitmaps> getPipeline() {
+        return pipeline;
+    }
+
+    // Sends camera frames to another pipeline instead, or back to the bitmap pipeline when null
+    public void setTarget(DepthPipeline<?> target) {
+        this.target = target != null ? target : pipeline;
+    }
+
+    public DepthPipeline<?> getTarget() {
+        return target;
+    }
+
+    // Also hands every raw frame to the recorder, or stops when it's null. Closing the recorder
+    // is up to the caller.
+    public void setRecorder(DepthRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Also hands every raw frame to the stream sender, or stops when it's null. Closing the sender
+    // is up to the caller.
+    public void setStreamSender(DepthStreamSender streamSender) {
+        this.streamSender = streamSender;
+    }
+
+    // Runs every raw frame through the detector on the camera thread, before it is submitted, and
+    // tells the listener (which may be null) when it becomes active or goes back to low power.
+    // Pass nulls to stop.
+    public synchronized void setMotionDetector(MotionDetector detector, MotionListener listener) {
+        if (detector == null && listener != null) {
+            throw new IllegalArgumentException("A motion listener needs a detector");
+        }
+        motionListener = null;
+        motionDetector = detector;
+        motionListener = listener;
+    }
+
+    public MotionDetector getMotionDetector() {
+        return motionDetector;
+    }
 
-        int size = WIDTH * HEIGHT;
-        rawMask = new int[size];
-        noiseReduceMask = new int[size];
-        averagedMask = new int[size];
-        averagedMaskP2 = new int[size];
-        blurredAverage = new int[size];
+    // Only submits frames to the pipeline while the motion detector is active, so an idle scene
+    // costs no more than the detector's low power mode. Recording and streaming carry on.
+    public void setMotionGated(boolean motionGated) {
+        this.motionGated = motionGated;
     }
 
+    public boolean isMotionGated() {
+        return motionGated;
+    }
+
+    // Reads images the way the scheduler says and reports how long each frame took, the longer
+    // of this callback and the pipeline's processing. fpsRangeChanged is run on the camera thread
+    // when the scheduler picks a new frame rate. Pass nulls to read every image.
+    public synchronized void setCaptureScheduler(CaptureScheduler scheduler, Runnable fpsRangeChanged) {
+        if ((scheduler == null) != (fpsRangeChanged == null)) {
+            throw new IllegalArgumentException("Set both a scheduler and a callback, or neither");
+        }
+        this.fpsRangeChanged = null;
+        captureScheduler = scheduler;
+        this.fpsRangeChanged = fpsRangeChanged;
+    }
+
+    public CaptureScheduler getCaptureScheduler() {
+        return captureScheduler;
+    }
+
+    public void stop() {
+        pipeline.stop();
+    }
+
+    // Runs on the camera thread. The frame is copied into the pipeline so the image can be closed
+    // straight away, and the rest of the work happens on the pipeline's own threads.
     @Override
     public void onImageAvailable(ImageReader reader) {
+        long start = System.nanoTime();
+        CaptureScheduler scheduler = captureScheduler;
+        boolean latest = scheduler != null && scheduler.isAcquireLatest();
+        Image image = null;
         try {
-            Image image = reader.acquireNextImage();
+            image = latest ? reader.acquireLatestImage() : reader.acquireNextImage();
             if (image != null && image.getFormat() == ImageFormat.DEPTH16) {
                 processImage(image);
-                publishRawData();
-                publishNoiseReduction();
-                publishMovingAverage();
-                publishBlurredMovingAverage();
             }
-            image.close();
         }
         catch (Exception e) {
-            Log.e(TAG, "Failed to acquireNextImage: " + e.getMessage());
+            Log.e(TAG, "Failed to " + (latest ? "acquireLatestImage: " : "acquireNextImage: ") + e.getMessage());
+        }
+        finally {
+            if (image != null) {
+                image.close();
+            }
+        }
+        if (image != null) {
+            target.getMetrics().recordSince(PipelineMetrics.Step.ACQUIRE, start);
+        }
+        if (scheduler != null && image != null) {
+            long callbackNanos = System.nanoTime() - start;
+            if (scheduler.recordFrame(Math.max(callbackNanos, target.getLastProcessingNanos()))) {
+                Runnable fpsRangeChanged = this.fpsRangeChanged;
+                if (fpsRangeChanged != null) {
+                    fpsRangeChanged.run();
+                }
+            }
         }
     }
 
-    private void publishRawData() {
-        if (depthFrameVisualizer != null) {
-            Bitmap bitmap = convertToRGBBitmap(rawMask);
-            depthFrameVisualizer.onRawDataAvailable(bitmap);
-            bitmap.recycle();
+    private void processImage(Image image) {
+        ByteBuffer depthBuffer = image.getPlanes()[0].getBuffer();
+        DepthRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.submitFrame(depthBuffer, image.getTimestamp());
+        }
+        DepthStreamSender streamSender = this.streamSender;
+        if (streamSender != null) {
+            streamSender.submitFrame(depthBuffer, image.getTimestamp());
+        }
+        ShortBuffer shortDepthBuffer = depthBuffer.asShortBuffer();
+        DepthPipeline<?> target = this.target;
+        if (!detectMotion(shortDepthBuffer, target, image.getTimestamp()) && motionGated) {
+            return;
         }
+        target.submitFrame(shortDepthBuffer, image.getTimestamp());
     }
 
-    private void publishNoiseReduction() {
-        if (depthFrameVisualizer != null) {
-            Bitmap bitmap = convertToRGBBitmap(noiseReduceMask);
-            depthFrameVisualizer.onNoiseReductionAvailable(bitmap);
-            bitmap.recycle();
+    // Returns whether the motion detector is active, or true without one
+    private boolean detectMotion(ShortBuffer depthBuffer, DepthPipeline<?> target, long timestamp) {
+        MotionDetector detector = motionDetector;
+        if (detector == null) {
+            return true;
+        }
+        int width = target.getWidth();
+        int height = target.getHeight();
+        if (depthBuffer.limit() < width * height) {
+            // A frame from before a resize, which the pipeline drops too
+            return detector.isActive();
+        }
+        boolean wasActive = detector.isActive();
+        detector.update(depthBuffer, width, height, getDepthDecoder());
+        boolean active = detector.isActive();
+        MotionListener listener = motionListener;
+        if (active != wasActive && listener != null) {
+            listener.onMotionChanged(detector, active, timestamp);
         }
+        return active;
     }
 
-    private void publishMovingAverage() {
-        if (depthFrameVisualizer != null) {
-            Bitmap bitmap = convertToRGBBitmap(averagedMask);
-            depthFrameVisualizer.onMovingAverageAvailable(bitmap);
-            bitmap.recycle();
-        }
+    private Bitmap convertToRGBBitmap(byte[] mask, Bitmap bitmap) {
+        colormap.toArgb(mask, pixels);
+        bitmap.setPixels(pixels, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight);
+        return bitmap;
     }
 
-    private void publishBlurredMovingAverage() {
-        if (depthFrameVisualizer != null) {
-            Bitmap bitmap = convertToRGBBitmap(blurredAverage);
-            depthFrameVisualizer.onBlurredMovingAverageAvailable(bitmap);
-            bitmap.recycle();
+    private void resizeBitmaps(int width, int height) {
+        if (width == bitmapWidth && height == bitmapHeight) {
+            return;
         }
+        bitmapWidth = width;
+        bitmapHeight = height;
+        pixels = new int[width * height];
     }
 
-    private void processImage(Image image) {
-        ShortBuffer shortDepthBuffer = image.getPlanes()[0].getBuffer().asShortBuffer();
-        int[] mask = new int[WIDTH * HEIGHT];
-        int[] noiseReducedMask = new int[WIDTH * HEIGHT];
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                int index = y * WIDTH + x;
-                short depthSample = shortDepthBuffer.get(index);
-                int newValue = extractRange(depthSample, CONFIDENCE_FILTER);
-                // Store value in the rawMask for visualization
-                rawMask[index] = newValue;
-
-                int p1Value = averagedMask[index];
-                int p2Value = averagedMaskP2[index];
-                int avgValue = (newValue + p1Value + p2Value) / 3;
-                if (p1Value < 0 || p2Value < 0 || newValue < 0) {
-                    Log.d("TAG", "WHAT");
+    private class BitmapConverter implements FrameConverter<DepthBitmaps> {
+        @Override
+        public DepthBitmaps createOutput() {
+            // Each slot gets its bitmap the first time its stage is converted, and keeps it
+            return new DepthBitmaps();
+        }
+
+        @Override
+        public void convert(ProcessedFrame frame, DepthBitmaps output) {
+            resizeBitmaps(frame.getWidth(), frame.getHeight());
+            int stages = frame.getStages() & pipeline.getConvertedStages();
+            for (int i = 0; i < output.bitmaps.length; i++) {
+                DepthStage stage = DepthStage.fromOrdinal(i);
+                if (stage.isIn(stages)) {
+                    Bitmap bitmap = output.bitmaps[i];
+                    if (bitmap == null || bitmap.getWidth() != bitmapWidth || bitmap.getHeight() != bitmapHeight) {
+                        // Listeners only use a bitmap until their callback returns, so one of the
+                        // old size can go right away
+                        if (bitmap != null) {
+                            bitmap.recycle();
+                        }
+                        output.bitmaps[i] = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+                    }
+                    convertToRGBBitmap(frame.getMask(stage), output.bitmaps[i]);
                 }
-                // Store the new moving average temporarily
-                mask[index] = avgValue;
             }
+            output.stages = stages;
         }
-        // Produce a noise reduced version of the raw mask for visualization
-        System.arraycopy(rawMask, 0, noiseReducedMask, 0, rawMask.length);
-        noiseReduceMask = FastBlur.boxBlur(noiseReducedMask, WIDTH, HEIGHT, 1);
-
-        // Remember the last two frames for moving average
-        averagedMaskP2 = averagedMask;
-        averagedMask = mask;
-
-        // Produce a blurred version of the latest moving average result
-        System.arraycopy(averagedMask, 0, blurredAverage, 0, averagedMask.length);
-        blurredAverage = FastBlur.boxBlur(blurredAverage, WIDTH, HEIGHT, 1);
     }
 
-    private int extractRange(short sample, float confidenceFilter) {
-        int depthRange = (short) (sample & 0x1FFF);
-        int depthConfidence = (short) ((sample >> 13) & 0x7);
-        float depthPercentage = depthConfidence == 0 ? 1.f : (depthConfidence - 1) / 7.f;
-        if (depthPercentage > confidenceFilter) {
-            return normalizeRange(depthRange);
-        } else {
-            return 0;
+    private class BitmapRenderer implements FrameRenderer<DepthBitmaps> {
+        @Override
+        public void render(DepthBitmaps output) {
+            DepthBitmapListener[][] listeners = bitmapListeners;
+            for (int i = 0; i < listeners.length; i++) {
+                DepthStage stage = DepthStage.fromOrdinal(i);
+                if (!stage.isIn(output.stages)) {
+                    continue;
+                }
+                for (DepthBitmapListener listener : listeners[i]) {
+                    listener.onBitmapAvailable(stage, output.bitmaps[i]);
+                }
+            }
         }
     }
 
-    private int normalizeRange(int range) {
-        float normalized = (float)range - RANGE_MIN;
-        // Clamp to min/max
-        normalized = Math.max(RANGE_MIN, normalized);
-        normalized = Math.min(RANGE_MAX, normalized);
-        // Normalize to 0 to 255
-        normalized = normalized - RANGE_MIN;
-        normalized = normalized / (RANGE_MAX - RANGE_MIN) * 255;
-        return (int)normalized;
-    }
+    // Keeps the original four callback visualizer working on top of stage subscriptions
+    private static class VisualizerListener implements DepthBitmapListener {
+        private final DepthFrameVisualizer depthFrameVisualizer;
+
+        VisualizerListener(DepthFrameVisualizer depthFrameVisualizer) {
+            this.depthFrameVisualizer = depthFrameVisualizer;
+        }
 
-    private Bitmap convertToRGBBitmap(int[] mask) {
-        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_4444);
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                int index = y * WIDTH + x;
-                bitmap.setPixel(x, y, Color.argb(255, 0, mask[index],0));
+        @Override
+        public void onBitmapAvailable(DepthStage stage, Bitmap bitmap) {
+            switch (stage) {
+                case RAW:
+                    depthFrameVisualizer.onRawDataAvailable(bitmap);
+                    break;
+                case NOISE_REDUCTION:
+                    depthFrameVisualizer.onNoiseReductionAvailable(bitmap);
+                    break;
+                case MOVING_AVERAGE:
+                    depthFrameVisualizer.onMovingAverageAvailable(bitmap);
+                    break;
+                case BLURRED_MOVING_AVERAGE:
+                    depthFrameVisualizer.onBlurredMovingAverageAvailable(bitmap);
+                    break;
             }
         }
-        return bitmap;
     }
-}
\ No newline at end of file
+}
@@ -7,8 +7,14 @@ import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.TextureView;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
@@ -23,12 +29,16 @@ import androidx.core.content.ContextCompat;
 public class MainActivity extends AppCompatActivity implements DepthFrameVisualizer {
     private static final String TAG = MainActivity.class.getSimpleName();
     public static final int CAM_PERMISSIONS_REQUEST = 0;
+    private static final String METRICS_FILE = "depth_metrics.txt";
 
     private TextureView rawDataView;
     private TextureView noiseReductionView;
     private TextureView movingAverageView;
     private TextureView blurredAverageView;
     private Matrix defaultBitmapTransform;
+    // Buffer size defaultBitmapTransform was built for
+    private int transformBufferWidth;
+    private int transformBufferHeight;
     private Camera camera;
 
     @Override
@@ -42,7 +52,30 @@ public class MainActivity extends AppCompatActivity implements DepthFrameVisuali
 
         checkCamPermissions();
         camera = new Camera(this, this);
-        camera.openFrontDepthCamera();
+        // Spread the mask values over whatever distance the scene is at
+        camera.getPipeline().getProcessor().setAutoRange(new AutoRange());
+        // Keep dropouts from showing up as near spots in the filtered views
+        camera.getPipeline().getProcessor().setHoleFiller(new HoleFiller());
+        camera.start(camera.getPipeline());
+    }
+
+    @Override
+    protected void onDestroy() {
+        camera.close();
+        writeMetricsReport();
+        super.onDestroy();
+    }
+
+    // Leaves the latency histograms and frame counters of this session in the app's files
+    // directory, e.g. for adb pull
+    private void writeMetricsReport() {
+        File file = new File(getExternalFilesDir(null), METRICS_FILE);
+        try (Writer writer = new FileWriter(file)) {
+            camera.getPipeline().writeMetricsReport(writer);
+            Log.i(TAG, "Wrote pipeline metrics to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write pipeline metrics: " + e.getMessage());
+        }
     }
 
     private void checkCamPermissions() {
@@ -80,29 +113,35 @@ public class MainActivity extends AppCompatActivity implements DepthFrameVisuali
         from the camera and process.
 
         This takes a converted bitmap and renders it onto the surface, with a basic rotation
-        applied.
+        applied. It is called from the depth pipeline's render thread.
      */
     private void renderBitmapToTextureView(Bitmap bitmap, TextureView textureView) {
         Canvas canvas = textureView.lockCanvas();
-        canvas.drawBitmap(bitmap, defaultBitmapTransform(textureView), null);
+        if (canvas == null) {
+            // The surface isn't available yet, or anymore
+            return;
+        }
+        canvas.drawBitmap(bitmap, defaultBitmapTransform(textureView, bitmap), null);
         textureView.unlockCanvasAndPost(canvas);
     }
 
-    private Matrix defaultBitmapTransform(TextureView view) {
-        if (defaultBitmapTransform == null || view.getWidth() == 0 || view.getHeight() == 0) {
+    private Matrix defaultBitmapTransform(TextureView view, Bitmap bitmap) {
+        int bufferWidth = bitmap.getWidth();
+        int bufferHeight = bitmap.getHeight();
+        if (defaultBitmapTransform == null || view.getWidth() == 0 || view.getHeight() == 0
+                || bufferWidth != transformBufferWidth || bufferHeight != transformBufferHeight) {
             Matrix matrix = new Matrix();
             int centerX = view.getWidth() / 2;
             int centerY = view.getHeight() / 2;
 
-            int bufferWidth = DepthFrameAvailableListener.WIDTH;
-            int bufferHeight = DepthFrameAvailableListener.HEIGHT;
-
             RectF bufferRect = new RectF(0, 0, bufferWidth, bufferHeight);
             RectF viewRect = new RectF(0, 0, view.getWidth(), view.getHeight());
             matrix.setRectToRect(bufferRect, viewRect, Matrix.ScaleToFit.CENTER);
             matrix.postRotate(270, centerX, centerY);
 
             defaultBitmapTransform = matrix;
+            transformBufferWidth = bufferWidth;
+            transformBufferHeight = bufferHeight;
         }
         return defaultBitmapTransform;
     }
@@ -0,0 +1,96 @@
+package com.example.tof;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// Command line entry point for BatchProcessor
+public class BatchMain {
+    private static final String USAGE =
+            "Usage: batch <recording> <output-dir> [options]\n"
+            + "  --threads N            worker threads (default: number of cores)\n"
+            + "  --window N             moving average over N frames (default " + TemporalFilter.DEFAULT_WINDOW_SIZE + ")\n"
+            + "  --ema ALPHA            exponential moving average instead, ALPHA/256 per frame\n"
+            + "  --confidence-weighted  weight samples by confidence in the average\n"
+            + "  --range MIN MAX        decode with this range in mm instead of the recorded one\n"
+            + "  --confidence C         decode with this confidence filter instead of the recorded one\n"
+            + "  --band MIN MAX         filtered values (1-255) that make up blobs\n"
+            + "  --min-area N           smallest blob in pixels (default " + BlobDetector.DEFAULT_MIN_AREA + ")";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            usage(null);
+        }
+        BatchProcessor processor = new BatchProcessor(new File(args[0]), new File(args[1]));
+        float rangeMin = DepthDecoder.DEFAULT_RANGE_MIN;
+        float rangeMax = DepthDecoder.DEFAULT_RANGE_MAX;
+        float confidenceFilter = DepthDecoder.DEFAULT_CONFIDENCE_FILTER;
+        boolean overrideDecoder = false;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String option = args[i];
+                if (option.equals("--threads")) {
+                    processor.setThreads(Integer.parseInt(value(args, ++i)));
+                } else if (option.equals("--window")) {
+                    processor.setWindowSize(Integer.parseInt(value(args, ++i)));
+                } else if (option.equals("--ema")) {
+                    processor.setEmaAlpha(Integer.parseInt(value(args, ++i)));
+                } else if (option.equals("--confidence-weighted")) {
+                    processor.setConfidenceWeighted(true);
+                } else if (option.equals("--range")) {
+                    rangeMin = Float.parseFloat(value(args, ++i));
+                    rangeMax = Float.parseFloat(value(args, ++i));
+                    overrideDecoder = true;
+                } else if (option.equals("--confidence")) {
+                    confidenceFilter = Float.parseFloat(value(args, ++i));
+                    overrideDecoder = true;
+                } else if (option.equals("--band")) {
+                    int bandMin = Integer.parseInt(value(args, ++i));
+                    processor.setBlobBand(bandMin, Integer.parseInt(value(args, ++i)));
+                } else if (option.equals("--min-area")) {
+                    processor.setMinBlobArea(Integer.parseInt(value(args, ++i)));
+                } else {
+                    usage("Unknown option " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException
+            usage(e.getMessage());
+        }
+        if (overrideDecoder) {
+            processor.setDecoderSettings(rangeMin, rangeMax, confidenceFilter);
+        }
+
+        long start = System.nanoTime();
+        int frameCount;
+        try {
+            frameCount = processor.run();
+        } catch (IOException e) {
+            System.err.println("Processing failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.US, "Processed %d frames in %.2f s (%.1f frames/s)",
+                frameCount, seconds, frameCount / seconds));
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            usage(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
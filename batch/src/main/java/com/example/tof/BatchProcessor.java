@@ -0,0 +1,394 @@
+package com.example.tof;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*  Runs a DepthRecorder recording through the same decoder, temporal filter and blurs as the app,
+    using every core, and writes:
+
+        filtered.raw     the blurred moving average of every frame, width * height bytes each
+        statistics.csv   valid pixels and depth range per frame
+        blobs.csv        blobs in the blurred moving average, with ids tracked across frames
+
+    The recording is split into segments that are processed in parallel. The moving average of a
+    frame only depends on the last windowSize frames, so each segment first runs the
+    windowSize - 1 frames before it through its filter without writing them, and its output comes
+    out identical to a sequential run. An exponential moving average depends on every frame
+    before it, so with EMA the recording is processed as a single segment.
+
+    Filtered frames are written straight to their place in filtered.raw. Statistics and blobs go
+    to a file per segment that is appended in order at the end, and blob ids are assigned in that
+    final sequential pass, so nothing is held in memory beyond the frames being worked on.
+ */
+public class BatchProcessor {
+    public static final String FILTERED_FRAMES_FILE = "filtered.raw";
+    public static final String STATISTICS_FILE = "statistics.csv";
+    public static final String BLOBS_FILE = "blobs.csv";
+
+    private static final String STATISTICS_HEADER =
+            "frame,timestamp_ns,valid_pixels,mean_depth_mm,min_depth_mm,max_depth_mm,blobs\n";
+    private static final String BLOBS_HEADER =
+            "frame,timestamp_ns,id,age,area,min_x,min_y,max_x,max_y,centroid_x,centroid_y,mean_depth\n";
+    // Segments per thread, so threads that finish early can pick up more work
+    private static final int SEGMENTS_PER_THREAD = 4;
+    private static final int MIN_SEGMENT_LENGTH = 32;
+
+    private final File recordingPath;
+    private final File outputDirectory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int windowSize = TemporalFilter.DEFAULT_WINDOW_SIZE;
+    private TemporalFilter.Mode temporalMode = TemporalFilter.Mode.WINDOW;
+    private int emaAlpha = TemporalFilter.DEFAULT_EMA_ALPHA;
+    private boolean confidenceWeighted;
+    // Otherwise every frame is decoded with the settings it was recorded with
+    private boolean overrideDecoderSettings;
+    private float rangeMin = DepthDecoder.DEFAULT_RANGE_MIN;
+    private float rangeMax = DepthDecoder.DEFAULT_RANGE_MAX;
+    private float confidenceFilter = DepthDecoder.DEFAULT_CONFIDENCE_FILTER;
+    private int bandMin = 1;
+    private int bandMax = 255;
+    private int minArea = BlobDetector.DEFAULT_MIN_AREA;
+
+    public BatchProcessor(File recordingPath, File outputDirectory) {
+        this.recordingPath = recordingPath;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread, was " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1, was " + windowSize);
+        }
+        this.windowSize = windowSize;
+        temporalMode = TemporalFilter.Mode.WINDOW;
+    }
+
+    public void setEmaAlpha(int emaAlpha) {
+        if (emaAlpha < 1 || emaAlpha > 256) {
+            throw new IllegalArgumentException("EMA alpha must be 1 to 256, was " + emaAlpha);
+        }
+        this.emaAlpha = emaAlpha;
+        temporalMode = TemporalFilter.Mode.EMA;
+    }
+
+    public void setConfidenceWeighted(boolean confidenceWeighted) {
+        this.confidenceWeighted = confidenceWeighted;
+    }
+
+    // Decodes every frame with these settings instead of the ones it was recorded with
+    public void setDecoderSettings(float rangeMin, float rangeMax, float confidenceFilter) {
+        this.rangeMin = rangeMin;
+        this.rangeMax = rangeMax;
+        this.confidenceFilter = confidenceFilter;
+        overrideDecoderSettings = true;
+    }
+
+    // See BlobDetector.setBand
+    public void setBlobBand(int bandMin, int bandMax) {
+        if (bandMin < 1 || bandMax > 255 || bandMin > bandMax) {
+            throw new IllegalArgumentException("Band must lie within 1-255, was " + bandMin + "-" + bandMax);
+        }
+        this.bandMin = bandMin;
+        this.bandMax = bandMax;
+    }
+
+    public void setMinBlobArea(int minArea) {
+        this.minArea = minArea;
+    }
+
+    // Processes the whole recording and returns the number of frames
+    public int run() throws IOException, InterruptedException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create " + outputDirectory);
+        }
+        int width;
+        int height;
+        int frameCount;
+        try (DepthRecording recording = new DepthRecording(recordingPath)) {
+            width = recording.getWidth();
+            height = recording.getHeight();
+            frameCount = recording.getFrameCount();
+        }
+
+        int segmentLength = frameCount;
+        if (temporalMode == TemporalFilter.Mode.WINDOW) {
+            int segmentCount = threads * SEGMENTS_PER_THREAD;
+            segmentLength = Math.max(MIN_SEGMENT_LENGTH, (frameCount + segmentCount - 1) / segmentCount);
+        }
+        List<Segment> segments = new ArrayList<>();
+        for (int start = 0; start < frameCount; start += segmentLength) {
+            segments.add(new Segment(segments.size(), start, Math.min(frameCount, start + segmentLength)));
+        }
+
+        File filteredFile = new File(outputDirectory, FILTERED_FRAMES_FILE);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, segments.size())));
+        try (RandomAccessFile filtered = new RandomAccessFile(filteredFile, "rw")) {
+            filtered.setLength((long) frameCount * width * height);
+            final FileChannel filteredChannel = filtered.getChannel();
+            List<Future<Void>> results = new ArrayList<>();
+            for (final Segment segment : segments) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        process(segment, filteredChannel);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Processing failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        joinStatistics(segments);
+        trackBlobs(segments);
+        return frameCount;
+    }
+
+    private void process(Segment segment, FileChannel filteredChannel) throws IOException {
+        try (DepthRecording recording = new DepthRecording(recordingPath);
+             Writer statistics = openWriter(segment.statisticsFile());
+             Writer blobs = openWriter(segment.blobsFile())) {
+            int width = recording.getWidth();
+            int height = recording.getHeight();
+            int size = width * height;
+            DepthDecoder decoder = new DepthDecoder(rangeMin, rangeMax, confidenceFilter);
+            DepthFrameProcessor processor = new DepthFrameProcessor(width, height, decoder);
+            TemporalFilter temporalFilter = processor.getTemporalFilter();
+            temporalFilter.setMode(temporalMode);
+            temporalFilter.setWindowSize(windowSize);
+            temporalFilter.setEmaAlpha(emaAlpha);
+            temporalFilter.setConfidenceWeighted(confidenceWeighted);
+            BlobDetector detector = new BlobDetector();
+            detector.setBand(bandMin, bandMax);
+            detector.setMinArea(minArea);
+
+            short[] samples = new short[size];
+            // The processor's masks are already bytes, so they are written as they are
+            byte[] filtered = processor.getBlurredAverage();
+            ByteBuffer filteredBuffer = ByteBuffer.wrap(filtered);
+            int warmUp = temporalMode == TemporalFilter.Mode.WINDOW ? windowSize - 1 : 0;
+            for (int frame = Math.max(0, segment.start - warmUp); frame < segment.end; frame++) {
+                long timestamp = recording.readFrame(frame, samples);
+                if (!overrideDecoderSettings) {
+                    useRecordedSettings(recording, frame, decoder);
+                }
+                processor.process(samples, DepthStage.BLURRED_MOVING_AVERAGE.mask());
+                if (frame < segment.start) {
+                    continue;
+                }
+
+                filteredBuffer.clear();
+                long position = (long) frame * size;
+                while (filteredBuffer.hasRemaining()) {
+                    filteredChannel.write(filteredBuffer, position + filteredBuffer.position());
+                }
+
+                detector.detect(filtered, width, height);
+                writeStatistics(statistics, frame, timestamp, samples, processor.getRawMask(),
+                        detector.getBlobCount());
+                for (int i = 0; i < detector.getBlobCount(); i++) {
+                    Blob blob = detector.getBlob(i);
+                    blobs.append(Integer.toString(frame)).append(',')
+                            .append(Long.toString(timestamp)).append(',')
+                            .append(Integer.toString(blob.getArea())).append(',')
+                            .append(Integer.toString(blob.getMinX())).append(',')
+                            .append(Integer.toString(blob.getMinY())).append(',')
+                            .append(Integer.toString(blob.getMaxX())).append(',')
+                            .append(Integer.toString(blob.getMaxY())).append(',')
+                            .append(Float.toString(blob.getCentroidX())).append(',')
+                            .append(Float.toString(blob.getCentroidY())).append(',')
+                            .append(Float.toString(blob.getMeanDepth())).append('\n');
+                }
+            }
+        }
+    }
+
+    // Only rebuilds the decoder's table when the settings actually changed
+    private static void useRecordedSettings(DepthRecording recording, int frame, DepthDecoder decoder)
+            throws IOException {
+        float rangeMin = recording.getRangeMin(frame);
+        float rangeMax = recording.getRangeMax(frame);
+        float confidenceFilter = recording.getConfidenceFilter(frame);
+        if (rangeMin != decoder.getRangeMin() || rangeMax != decoder.getRangeMax()) {
+            decoder.setRange(rangeMin, rangeMax);
+        }
+        if (confidenceFilter != decoder.getConfidenceFilter()) {
+            decoder.setConfidenceFilter(confidenceFilter);
+        }
+    }
+
+    // Depth statistics over the samples the decoder kept, i.e. those with a non-zero raw mask
+    private static void writeStatistics(Writer out, int frame, long timestamp, short[] samples, byte[] rawMask,
+            int blobCount) throws IOException {
+        int valid = 0;
+        long sum = 0;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int i = 0; i < samples.length; i++) {
+            if (rawMask[i] == 0) {
+                continue;
+            }
+            int range = samples[i] & 0x1FFF;
+            valid++;
+            sum += range;
+            min = Math.min(min, range);
+            max = Math.max(max, range);
+        }
+        out.append(String.format(Locale.US, "%d,%d,%d,%.1f,%d,%d,%d%n", frame, timestamp, valid,
+                valid > 0 ? (double) sum / valid : 0.0, valid > 0 ? min : 0, max, blobCount));
+    }
+
+    private void joinStatistics(List<Segment> segments) throws IOException {
+        File statisticsFile = new File(outputDirectory, STATISTICS_FILE);
+        try (FileOutputStream out = new FileOutputStream(statisticsFile)) {
+            out.write(STATISTICS_HEADER.getBytes(StandardCharsets.US_ASCII));
+            FileChannel channel = out.getChannel();
+            for (Segment segment : segments) {
+                File part = segment.statisticsFile();
+                try (FileInputStream in = new FileInputStream(part)) {
+                    FileChannel partChannel = in.getChannel();
+                    long position = 0;
+                    long size = partChannel.size();
+                    while (position < size) {
+                        position += partChannel.transferTo(position, size - position, channel);
+                    }
+                }
+                delete(part);
+            }
+        }
+    }
+
+    // Reads the blobs of every segment in frame order and gives them ids, as BlobDetector would
+    // have in a single pass
+    private void trackBlobs(List<Segment> segments) throws IOException {
+        BlobTracker tracker = new BlobTracker(BlobDetector.DEFAULT_MAX_BLOBS);
+        Blob[] blobs = new Blob[BlobDetector.DEFAULT_MAX_BLOBS];
+        long[] frameAndTimestamp = new long[2];
+        File blobsFile = new File(outputDirectory, BLOBS_FILE);
+        try (Writer out = openWriter(blobsFile)) {
+            out.write(BLOBS_HEADER);
+            int count = 0;
+            long frame = -1;
+            long timestamp = 0;
+            for (Segment segment : segments) {
+                File part = segment.blobsFile();
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(part),
+                        StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        Blob blob = parseBlob(line, frameAndTimestamp);
+                        if (frameAndTimestamp[0] != frame) {
+                            writeTracked(out, tracker, blobs, count, frame, timestamp);
+                            count = 0;
+                            // A frame without blobs in between ends every track
+                            if (frame >= 0 && frameAndTimestamp[0] > frame + 1) {
+                                tracker.track(blobs, 0);
+                            }
+                            frame = frameAndTimestamp[0];
+                            timestamp = frameAndTimestamp[1];
+                        }
+                        blobs[count++] = blob;
+                    }
+                }
+                delete(part);
+            }
+            writeTracked(out, tracker, blobs, count, frame, timestamp);
+        }
+    }
+
+    private static void writeTracked(Writer out, BlobTracker tracker, Blob[] blobs, int count, long frame,
+            long timestamp) throws IOException {
+        if (frame < 0) {
+            return;
+        }
+        tracker.track(blobs, count);
+        for (int i = 0; i < count; i++) {
+            Blob blob = blobs[i];
+            out.append(Long.toString(frame)).append(',')
+                    .append(Long.toString(timestamp)).append(',')
+                    .append(Integer.toString(blob.getId())).append(',')
+                    .append(Integer.toString(blob.getAge())).append(',')
+                    .append(Integer.toString(blob.getArea())).append(',')
+                    .append(Integer.toString(blob.getMinX())).append(',')
+                    .append(Integer.toString(blob.getMinY())).append(',')
+                    .append(Integer.toString(blob.getMaxX())).append(',')
+                    .append(Integer.toString(blob.getMaxY())).append(',')
+                    .append(String.format(Locale.US, "%.2f,%.2f,%.2f%n", blob.getCentroidX(), blob.getCentroidY(),
+                            blob.getMeanDepth()));
+        }
+    }
+
+    private static Blob parseBlob(String line, long[] frameAndTimestamp) {
+        String[] fields = line.split(",");
+        frameAndTimestamp[0] = Long.parseLong(fields[0]);
+        frameAndTimestamp[1] = Long.parseLong(fields[1]);
+        return new Blob(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+                Integer.parseInt(fields[5]), Integer.parseInt(fields[6]), Float.parseFloat(fields[7]),
+                Float.parseFloat(fields[8]), Float.parseFloat(fields[9]));
+    }
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII));
+    }
+
+    private static void delete(File file) throws IOException {
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    // Frames start (inclusive) to end (exclusive)
+    private class Segment {
+        final int number;
+        final int start;
+        final int end;
+
+        Segment(int number, int start, int end) {
+            this.number = number;
+            this.start = start;
+            this.end = end;
+        }
+
+        File statisticsFile() {
+            return new File(outputDirectory, STATISTICS_FILE + ".part" + number);
+        }
+
+        File blobsFile() {
+            return new File(outputDirectory, BLOBS_FILE + ".part" + number);
+        }
+    }
+}
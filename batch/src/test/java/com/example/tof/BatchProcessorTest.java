@@ -0,0 +1,111 @@
+package com.example.tof;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchProcessorTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 36;
+    private static final int FRAME_COUNT = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void run_givesTheSameOutputWithAnyNumberOfThreads() throws Exception {
+        File recording = record(folder.newFile("scene.depth"));
+        File sequential = folder.newFolder("sequential");
+        File parallel = folder.newFolder("parallel");
+
+        assertEquals(FRAME_COUNT, processor(recording, sequential, 1).run());
+        assertEquals(FRAME_COUNT, processor(recording, parallel, 4).run());
+
+        for (String name : new String[] {BatchProcessor.FILTERED_FRAMES_FILE, BatchProcessor.STATISTICS_FILE,
+                BatchProcessor.BLOBS_FILE}) {
+            assertArrayEquals(name, read(new File(sequential, name)), read(new File(parallel, name)));
+        }
+        // Only the joined files are left
+        assertEquals(3, parallel.list().length);
+    }
+
+    @Test
+    public void run_writesTheFramesOfASequentialPass() throws Exception {
+        File recording = record(folder.newFile("scene.depth"));
+        File output = folder.newFolder("output");
+        processor(recording, output, 4).run();
+
+        byte[] filtered = read(new File(output, BatchProcessor.FILTERED_FRAMES_FILE));
+        assertEquals(FRAME_COUNT * WIDTH * HEIGHT, filtered.length);
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        short[] samples = new short[WIDTH * HEIGHT];
+        try (DepthRecording source = new DepthRecording(recording)) {
+            for (int frame = 0; frame < FRAME_COUNT; frame++) {
+                source.readFrame(frame, samples);
+                processor.process(samples);
+                byte[] expected = processor.getBlurredAverage();
+                for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                    assertEquals(expected[i], filtered[frame * WIDTH * HEIGHT + i]);
+                }
+            }
+        }
+        List<String> statistics = lines(new File(output, BatchProcessor.STATISTICS_FILE));
+        assertEquals(FRAME_COUNT + 1, statistics.size());
+        assertTrue(statistics.get(FRAME_COUNT).startsWith((FRAME_COUNT - 1) + "," + (FRAME_COUNT - 1) * 10_000_000L));
+    }
+
+    @Test
+    public void run_keepsBlobIdsAcrossSegments() throws Exception {
+        File recording = record(folder.newFile("scene.depth"));
+        File output = folder.newFolder("output");
+        processor(recording, output, 4).run();
+
+        List<String> blobs = lines(new File(output, BatchProcessor.BLOBS_FILE));
+        // A row per frame, the ball
+        assertEquals(FRAME_COUNT + 1, blobs.size());
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            String[] fields = blobs.get(frame + 1).split(",");
+            assertEquals(frame, Integer.parseInt(fields[0]));
+            assertEquals(1, Integer.parseInt(fields[2]));
+            assertEquals(frame, Integer.parseInt(fields[3]));
+        }
+    }
+
+    private static BatchProcessor processor(File recording, File output, int threads) {
+        BatchProcessor processor = new BatchProcessor(recording, output);
+        processor.setThreads(threads);
+        // The ball, but not the wall behind it
+        processor.setBlobBand(1, 80);
+        processor.setMinBlobArea(10);
+        return processor;
+    }
+
+    // A slower ball than TestScenes.scene, so it stays in view for all the frames
+    private static File record(File path) throws IOException {
+        SyntheticDepthFrameSource scene = new SyntheticDepthFrameSource(
+                CameraIntrinsics.fromFieldOfView(75, WIDTH, HEIGHT), 11);
+        scene.addPlane(0, 0, 1, 1.2f)
+                .addSphere(-0.2f, 0, 0.5f, 0.08f, 0.2f, 0, 0);
+        scene.setNoise(5);
+        scene.setDropoutProbability(0.05f);
+        scene.setFps(100);
+        scene.setFrameCount(FRAME_COUNT);
+        return TestScenes.record(path, scene, 64);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+    }
+}
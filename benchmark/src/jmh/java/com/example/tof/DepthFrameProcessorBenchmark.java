@@ -0,0 +1,84 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DepthFrameProcessorBenchmark {
+
+    @Param({"240x180", "640x480", "1280x960"})
+    public String size;
+
+    private short[] samples;
+    private ShortBuffer sampleBuffer;
+    private DepthFrameProcessor processor;
+    private DepthDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        samples = SyntheticDepthFrames.create(width, height, 42);
+        sampleBuffer = ShortBuffer.wrap(samples);
+        processor = new DepthFrameProcessor(width, height);
+        decoder = new DepthDecoder();
+    }
+
+    // The whole per-frame path: decode, moving average and both box blurs
+    @Benchmark
+    public byte[] processFrame() {
+        processor.process(sampleBuffer);
+        return processor.getBlurredAverage();
+    }
+
+    // Only the per-pixel decode, extractRange + normalizeRange
+    @Benchmark
+    public void extractRange(Blackhole blackhole) {
+        int sum = 0;
+        for (short sample : samples) {
+            sum += DepthDecoder.extractRange(sample, DepthDecoder.DEFAULT_RANGE_MIN,
+                    DepthDecoder.DEFAULT_RANGE_MAX, DepthDecoder.DEFAULT_CONFIDENCE_FILTER);
+        }
+        blackhole.consume(sum);
+    }
+
+    @Benchmark
+    public void normalizeRange(Blackhole blackhole) {
+        int sum = 0;
+        for (short sample : samples) {
+            sum += DepthDecoder.normalizeRange(sample & 0x1FFF,
+                    DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX);
+        }
+        blackhole.consume(sum);
+    }
+
+    // The same decode through the 65536 entry lookup table
+    @Benchmark
+    public void decodeTable(Blackhole blackhole) {
+        byte[] table = decoder.getTable();
+        int sum = 0;
+        for (short sample : samples) {
+            sum += table[sample & 0xFFFF] & 0xFF;
+        }
+        blackhole.consume(sum);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FastBlurBenchmark {
+
+    @Param({"240x180", "320x240", "640x480", "1280x960"})
+    public String size;
+
+    @Param({"1", "4"})
+    public int radius;
+
+    private int width;
+    private int height;
+    private int[] source;
+    private int[] input;
+    private int[] output;
+    private int[] scratch;
+    private byte[] byteSource;
+    private byte[] byteOutput;
+    private byte[] byteScratch;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        byteSource = SyntheticDepthFrames.createMask(width, height, 42);
+        source = new int[byteSource.length];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = byteSource[i] & 0xFF;
+        }
+        input = new int[source.length];
+        output = new int[source.length];
+        scratch = new int[source.length];
+        byteOutput = new byte[source.length];
+        byteScratch = new byte[source.length];
+        pool = FastBlur.parallelPool();
+    }
+
+    // The blur uses its input as scratch space, so restore it each time
+    @Benchmark
+    public int[] boxBlur() {
+        System.arraycopy(source, 0, input, 0, source.length);
+        return FastBlur.boxBlur(input, width, height, radius);
+    }
+
+    @Benchmark
+    public int[] gaussBlur() {
+        System.arraycopy(source, 0, input, 0, source.length);
+        return FastBlur.gaussBlur(input, width, height, radius);
+    }
+
+    // Caller supplied buffers, which leave the source untouched and allocate nothing
+    @Benchmark
+    public int[] boxBlurInto() {
+        FastBlur.boxBlur(source, output, scratch, width, height, radius);
+        return output;
+    }
+
+    @Benchmark
+    public int[] gaussBlurInto() {
+        FastBlur.gaussBlur(source, output, scratch, width, height, radius);
+        return output;
+    }
+
+    // Always split across the pool, ignoring MIN_PARALLEL_PIXELS, so comparing these against
+    // the serial versions above shows where parallelism starts paying off.
+    @Benchmark
+    public int[] boxBlurParallel() {
+        FastBlur.boxBlur(source, output, scratch, width, height, radius, pool, 0);
+        return output;
+    }
+
+    @Benchmark
+    public int[] gaussBlurParallel() {
+        FastBlur.gaussBlur(source, output, scratch, width, height, radius, pool, 0);
+        return output;
+    }
+
+    // Byte masks, as DepthFrameProcessor blurs them. Compared with the Into versions they show
+    // what the smaller buffers save.
+    @Benchmark
+    public byte[] boxBlurBytes() {
+        FastBlur.boxBlur(byteSource, byteOutput, byteScratch, width, height, radius);
+        return byteOutput;
+    }
+
+    @Benchmark
+    public byte[] boxBlurBytesParallel() {
+        FastBlur.boxBlur(byteSource, byteOutput, byteScratch, width, height, radius, pool, 0);
+        return byteOutput;
+    }
+
+    @Benchmark
+    public byte[] gaussBlurBytes() {
+        FastBlur.gaussBlur(byteSource, byteOutput, byteScratch, width, height, radius);
+        return byteOutput;
+    }
+
+    @Benchmark
+    public byte[] gaussBlurBytesParallel() {
+        FastBlur.gaussBlur(byteSource, byteOutput, byteScratch, width, height, radius, pool, 0);
+        return byteOutput;
+    }
+}
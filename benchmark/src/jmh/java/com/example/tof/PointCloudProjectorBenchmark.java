@@ -0,0 +1,70 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Full resolution, strided and voxel-thinned point clouds
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PointCloudProjectorBenchmark {
+    @Param({"240x180", "640x480"})
+    public String size;
+
+    private short[][] frames;
+    private PointCloudProjector full;
+    private PointCloudProjector strided;
+    private PointCloudProjector voxels;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        frames = new short[4][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = SyntheticDepthFrames.create(width, height, i);
+        }
+        CameraIntrinsics intrinsics = CameraIntrinsics.fromFieldOfView(
+                CameraIntrinsics.DEFAULT_HORIZONTAL_FOV_DEGREES, width, height);
+        full = new PointCloudProjector(intrinsics);
+        strided = new PointCloudProjector(intrinsics);
+        strided.setStride(2);
+        voxels = new PointCloudProjector(intrinsics);
+        voxels.setVoxelSize(0.02f);
+    }
+
+    @Benchmark
+    public FloatBuffer full() {
+        full.project(frames[next++ & 3]);
+        return full.getPoints();
+    }
+
+    @Benchmark
+    public FloatBuffer stride2() {
+        strided.project(frames[next++ & 3]);
+        return strided.getPoints();
+    }
+
+    @Benchmark
+    public FloatBuffer voxel2cm() {
+        voxels.project(frames[next++ & 3]);
+        return voxels.getPoints();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Every stage a camera frame goes through, on a second of a synthetic scene: a tilted wall and
+// a ball moving across it, with sensor noise and dropouts
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneReplayBenchmark {
+    private static final int FRAME_COUNT = 30;
+
+    @Param({"240x180", "640x480"})
+    public String size;
+
+    private short[][] frames;
+    private DepthFrameProcessor processor;
+    private DepthFrameProcessor holeFillingProcessor;
+    private PointCloudProjector projector;
+    private MotionDetector motionDetector;
+    private MotionDetector lowPowerMotionDetector;
+    private DepthDecoder decoder;
+    private int width;
+    private int height;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        CameraIntrinsics intrinsics = CameraIntrinsics.fromFieldOfView(
+                CameraIntrinsics.DEFAULT_HORIZONTAL_FOV_DEGREES, width, height);
+        SyntheticDepthFrameSource scene = new SyntheticDepthFrameSource(intrinsics, 42);
+        scene.addPlane(0.2f, -0.1f, 1, 1.2f)
+                .addSphere(-0.3f, 0, 0.7f, 0.12f, 0.6f, 0, 0);
+        scene.setNoise(8);
+        scene.setDropoutProbability(0.05f);
+        frames = new short[FRAME_COUNT][width * height];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            scene.readFrame(i, frames[i]);
+        }
+        processor = new DepthFrameProcessor(width, height);
+        holeFillingProcessor = new DepthFrameProcessor(width, height);
+        holeFillingProcessor.setHoleFiller(new HoleFiller());
+        projector = new PointCloudProjector(intrinsics);
+        decoder = new DepthDecoder();
+        motionDetector = new MotionDetector();
+        motionDetector.setLowPowerStride(1);
+        lowPowerMotionDetector = new MotionDetector();
+    }
+
+    // Decode, moving average and both blurs
+    @Benchmark
+    public byte[] process() {
+        processor.process(nextFrame());
+        return processor.getBlurredAverage();
+    }
+
+    // The same with the dropouts filled before the filters
+    @Benchmark
+    public byte[] processWithHoleFilling() {
+        holeFillingProcessor.process(nextFrame());
+        return holeFillingProcessor.getBlurredAverage();
+    }
+
+    // Decode, moving average and blurs plus a full resolution point cloud
+    @Benchmark
+    public FloatBuffer processAndProject() {
+        short[] frame = nextFrame();
+        processor.process(frame);
+        projector.project(frame);
+        return projector.getPoints();
+    }
+
+    // Background model and motion mask on every pixel, without the rest of the processing
+    @Benchmark
+    public int detectMotion() {
+        motionDetector.update(nextFrame(), width, height, decoder);
+        return motionDetector.getChangedPixelCount();
+    }
+
+    // The same in low power mode, on a scene where nothing moves so it stays there
+    @Benchmark
+    public int detectMotionLowPower() {
+        lowPowerMotionDetector.update(frames[0], width, height, decoder);
+        return lowPowerMotionDetector.getChangedPixelCount();
+    }
+
+    private short[] nextFrame() {
+        short[] frame = frames[next];
+        next = (next + 1) % FRAME_COUNT;
+        return frame;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Edge preserving filters next to the box blur they can replace. The histogram median should
+// cost the same at every radius, while the sorting networks only exist for radius 1 and 2.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpatialFilterBenchmark {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 180;
+
+    @Param({"1", "2", "4", "8"})
+    public int radius;
+
+    private byte[] source;
+    private byte[] output;
+    private byte[] scratch;
+    private MedianFilter networkMedian;
+    private MedianFilter histogramMedian;
+    private BilateralFilter bilateral;
+    private AdaptiveBoxFilter adaptiveBox;
+
+    @Setup
+    public void setUp() {
+        source = SyntheticDepthFrames.createMask(WIDTH, HEIGHT, 42);
+        output = new byte[source.length];
+        scratch = new byte[source.length];
+        networkMedian = new MedianFilter(Math.min(radius, 2));
+        histogramMedian = new MedianFilter(radius, true);
+        bilateral = new BilateralFilter(radius, radius, 12f);
+        adaptiveBox = new AdaptiveBoxFilter(1, radius);
+    }
+
+    @Benchmark
+    public byte[] boxBlur() {
+        FastBlur.boxBlur(source, output, scratch, WIDTH, HEIGHT, radius);
+        return output;
+    }
+
+    // Radius is capped at 2
+    @Benchmark
+    public byte[] networkMedian() {
+        networkMedian.filter(source, output, WIDTH, HEIGHT);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] histogramMedian() {
+        histogramMedian.filter(source, output, WIDTH, HEIGHT);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] bilateral() {
+        bilateral.filter(source, output, WIDTH, HEIGHT);
+        return output;
+    }
+
+    // Radius 1 for near pixels up to radius for far ones, from an integral image
+    @Benchmark
+    public byte[] adaptiveBox() {
+        adaptiveBox.filter(source, output, WIDTH, HEIGHT);
+        return output;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.tof;
+
+import java.util.Random;
+
+// Builds repeatable DEPTH16 frames for the benchmarks: a tilted plane with some range noise and
+// a spread of confidence values so both branches of extractRange get exercised.
+final class SyntheticDepthFrames {
+
+    private SyntheticDepthFrames() {
+    }
+
+    static short[] create(int width, int height, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int range = 300 + (x * 1200) / width + (y * 200) / height + random.nextInt(40);
+                int confidence = random.nextInt(8);
+                samples[y * width + x] = (short) ((confidence << 13) | (range & 0x1FFF));
+            }
+        }
+        return samples;
+    }
+
+    static byte[] createMask(int width, int height, long seed) {
+        short[] samples = create(width, height, seed);
+        byte[] mask = new byte[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            mask[i] = (byte) DepthDecoder.normalizeRange(samples[i] & 0x1FFF,
+                    DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.tof;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The window's cost should stay flat as it grows, since only the running sums are touched
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemporalFilterBenchmark {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 180;
+
+    @Param({"3", "8", "32"})
+    public int windowSize;
+
+    @Param({"false", "true"})
+    public boolean confidenceWeighted;
+
+    private byte[][] frames;
+    private byte[] weights;
+    private byte[] output;
+    private TemporalFilter window;
+    private TemporalFilter ema;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        frames = new byte[4][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = SyntheticDepthFrames.createMask(WIDTH, HEIGHT, i);
+        }
+        short[] samples = SyntheticDepthFrames.create(WIDTH, HEIGHT, 42);
+        weights = new byte[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            weights[i] = (byte) TemporalFilter.confidenceWeight(samples[i]);
+        }
+        output = new byte[WIDTH * HEIGHT];
+
+        window = new TemporalFilter(WIDTH, HEIGHT, windowSize);
+        window.setConfidenceWeighted(confidenceWeighted);
+        ema = new TemporalFilter(WIDTH, HEIGHT);
+        ema.setMode(TemporalFilter.Mode.EMA);
+        ema.setConfidenceWeighted(confidenceWeighted);
+    }
+
+    @Benchmark
+    public byte[] window() {
+        window.filter(frames[next++ & 3], weights, output);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] ema() {
+        ema.filter(frames[next++ & 3], weights, output);
+        return output;
+    }
+}
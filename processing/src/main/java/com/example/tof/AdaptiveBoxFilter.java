@@ -0,0 +1,60 @@
+package com.example.tof;
+
+/*  Box filter whose radius follows each pixel's own value, so for depth masks near and far
+    surfaces can be smoothed by different amounts, e.g. more where ToF noise grows with distance.
+
+    Each window's mean comes from an IntegralImage in constant time, so larger radii cost nothing
+    extra. Only valid (non-zero) pixels are averaged, and invalid pixels stay 0.
+ */
+public class AdaptiveBoxFilter implements SpatialFilter {
+    private final int nearRadius;
+    private final int farRadius;
+    // Radius per mask value
+    private final int[] radii = new int[256];
+    private IntegralImage integralImage;
+
+    // nearRadius is used for a value of 1 and farRadius for 255, with the values in between
+    // interpolated
+    public AdaptiveBoxFilter(int nearRadius, int farRadius) {
+        if (nearRadius < 0 || farRadius < 0) {
+            throw new IllegalArgumentException("Radii can't be negative, were " + nearRadius + ", " + farRadius);
+        }
+        this.nearRadius = nearRadius;
+        this.farRadius = farRadius;
+        // 0 is never looked up, since invalid pixels aren't filtered
+        radii[0] = nearRadius;
+        for (int value = 1; value < radii.length; value++) {
+            radii[value] = Math.round(nearRadius + (farRadius - nearRadius) * (value - 1) / 254f);
+        }
+    }
+
+    public int getNearRadius() {
+        return nearRadius;
+    }
+
+    public int getFarRadius() {
+        return farRadius;
+    }
+
+    @Override
+    public void filter(byte[] input, byte[] output, int width, int height) {
+        IntegralImage integralImage = this.integralImage;
+        if (integralImage == null || integralImage.getWidth() != width || integralImage.getHeight() != height) {
+            integralImage = new IntegralImage(width, height);
+            this.integralImage = integralImage;
+        }
+        integralImage.build(input);
+        int[] radii = this.radii;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                int value = input[index] & 0xFF;
+                if (value == 0) {
+                    output[index] = 0;
+                } else {
+                    output[index] = (byte) integralImage.meanAround(x, y, radii[value]);
+                }
+            }
+        }
+    }
+}
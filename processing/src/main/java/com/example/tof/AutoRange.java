@@ -0,0 +1,210 @@
+package com.example.tof;
+
+import java.nio.ShortBuffer;
+
+/*  Fits the decoder's range to the scene, so the 0-255 mask values are spent on the depths
+    actually in view instead of a fixed 200-1600 mm.
+
+    Every stride-th sample of a frame is counted into a histogram of 16 mm bins, which decays by
+    1/2^decayShift per frame, so it follows the last few frames without being rebuilt. The near
+    and far bounds are percentiles of that histogram, and the decoder is only given a new range
+    when a bound moves by more than the hysteresis. Everything is integer math on the sampled
+    pixels; the float math stays in the decoder's table, which is only rebuilt on those changes.
+
+    Since a mask value then maps to a different depth whenever the range moves, anything that
+    reads masks as distances, like a BlobDetector band or a blob's mean depth, is meaningless
+    while an AutoRange is in use. Leave it off to detect blobs at fixed distances.
+ */
+public class AutoRange {
+    public static final int BIN_WIDTH = 16;
+    public static final int DEFAULT_STRIDE = 7;
+    public static final int DEFAULT_DECAY_SHIFT = 3;
+    public static final float DEFAULT_NEAR_PERCENTILE = 0.02f;
+    public static final float DEFAULT_FAR_PERCENTILE = 0.98f;
+    public static final int DEFAULT_HYSTERESIS = 50;
+    public static final int DEFAULT_MIN_SPAN = 200;
+
+    // DEPTH16 range bits
+    private static final int RANGE_MASK = 0x1FFF;
+    private static final int BIN_COUNT = (RANGE_MASK + BIN_WIDTH) / BIN_WIDTH;
+    // Weight of one sample, so decaying small counts doesn't round them away
+    private static final int SAMPLE_WEIGHT = 1 << 8;
+
+    private final long[] bins = new long[BIN_COUNT];
+    private final boolean[] validConfidences = new boolean[8];
+    private volatile int stride = DEFAULT_STRIDE;
+    private volatile int decayShift = DEFAULT_DECAY_SHIFT;
+    private volatile float nearPercentile = DEFAULT_NEAR_PERCENTILE;
+    private volatile float farPercentile = DEFAULT_FAR_PERCENTILE;
+    private volatile int hysteresis = DEFAULT_HYSTERESIS;
+    private volatile int minSpan = DEFAULT_MIN_SPAN;
+    // The bounds last given to the decoder in mm, 0 before the first
+    private int near;
+    private int far;
+
+    // Counts every stride-th sample. A stride that doesn't divide the frame width samples
+    // different columns on every row.
+    public void setStride(int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Stride must be at least 1, was " + stride);
+        }
+        this.stride = stride;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    // Each frame the histogram keeps 1 - 1/2^decayShift of its weight. 0 only uses the last frame.
+    public void setDecayShift(int decayShift) {
+        if (decayShift < 0 || decayShift > 16) {
+            throw new IllegalArgumentException("Decay shift must be 0 to 16, was " + decayShift);
+        }
+        this.decayShift = decayShift;
+    }
+
+    public int getDecayShift() {
+        return decayShift;
+    }
+
+    // The fractions of samples that may lie nearer than the near bound and beyond the far one
+    public void setPercentiles(float nearPercentile, float farPercentile) {
+        if (nearPercentile < 0 || farPercentile > 1 || nearPercentile >= farPercentile) {
+            throw new IllegalArgumentException("Percentiles must satisfy 0 <= near < far <= 1, were "
+                    + nearPercentile + " and " + farPercentile);
+        }
+        this.nearPercentile = nearPercentile;
+        this.farPercentile = farPercentile;
+    }
+
+    public float getNearPercentile() {
+        return nearPercentile;
+    }
+
+    public float getFarPercentile() {
+        return farPercentile;
+    }
+
+    // How far in mm a bound has to move before the range is changed
+    public void setHysteresis(int hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    public int getHysteresis() {
+        return hysteresis;
+    }
+
+    // The narrowest range in mm, so a flat wall doesn't get stretched over all 256 values
+    public void setMinSpan(int minSpan) {
+        this.minSpan = minSpan;
+    }
+
+    public int getMinSpan() {
+        return minSpan;
+    }
+
+    // The near bound of the current range in mm, 0 until a frame with valid samples was seen
+    public synchronized int getNear() {
+        return near;
+    }
+
+    public synchronized int getFar() {
+        return far;
+    }
+
+    // Adds a frame to the histogram and moves the decoder's range if a bound moved far enough.
+    // Returns true if the range was changed.
+    public synchronized boolean update(short[] samples, DepthDecoder decoder) {
+        decay();
+        updateValidConfidences(decoder.getConfidenceFilter());
+        long[] bins = this.bins;
+        boolean[] validConfidences = this.validConfidences;
+        for (int i = 0; i < samples.length; i += stride) {
+            int sample = samples[i] & 0xFFFF;
+            int range = sample & RANGE_MASK;
+            if (range != 0 && validConfidences[sample >> 13]) {
+                bins[range / BIN_WIDTH] += SAMPLE_WEIGHT;
+            }
+        }
+        return applyRange(decoder);
+    }
+
+    public synchronized boolean update(ShortBuffer samples, DepthDecoder decoder) {
+        decay();
+        updateValidConfidences(decoder.getConfidenceFilter());
+        long[] bins = this.bins;
+        boolean[] validConfidences = this.validConfidences;
+        int limit = samples.limit();
+        for (int i = 0; i < limit; i += stride) {
+            int sample = samples.get(i) & 0xFFFF;
+            int range = sample & RANGE_MASK;
+            if (range != 0 && validConfidences[sample >> 13]) {
+                bins[range / BIN_WIDTH] += SAMPLE_WEIGHT;
+            }
+        }
+        return applyRange(decoder);
+    }
+
+    // Forgets the histogram, e.g. when the scene changes completely
+    public synchronized void reset() {
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = 0;
+        }
+        near = 0;
+        far = 0;
+    }
+
+    private void decay() {
+        int decayShift = this.decayShift;
+        long[] bins = this.bins;
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = decayShift == 0 ? 0 : bins[i] - (bins[i] >> decayShift);
+        }
+    }
+
+    // Once per confidence code instead of per sample
+    private void updateValidConfidences(float confidenceFilter) {
+        for (int confidence = 0; confidence < validConfidences.length; confidence++) {
+            validConfidences[confidence] = DepthDecoder.isConfident(confidence, confidenceFilter);
+        }
+    }
+
+    private boolean applyRange(DepthDecoder decoder) {
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        if (total == 0) {
+            return false;
+        }
+        long nearCount = (long) (total * (double) nearPercentile);
+        long farCount = (long) (total * (double) farPercentile);
+        int nearBin = -1;
+        int farBin = bins.length - 1;
+        long cumulative = 0;
+        for (int i = 0; i < bins.length; i++) {
+            cumulative += bins[i];
+            if (nearBin < 0 && cumulative > nearCount) {
+                nearBin = i;
+            }
+            if (cumulative >= farCount) {
+                farBin = i;
+                break;
+            }
+        }
+        if (nearBin < 0 || nearBin > farBin) {
+            nearBin = farBin;
+        }
+        int newNear = nearBin * BIN_WIDTH;
+        int newFar = Math.max((farBin + 1) * BIN_WIDTH, newNear + minSpan);
+        if (far != 0 && Math.abs(newNear - near) <= hysteresis && Math.abs(newFar - far) <= hysteresis) {
+            return false;
+        }
+        near = newNear;
+        far = newFar;
+        // normalizeRange subtracts rangeMin twice, so the depths it spreads over 0-255 run from
+        // 2 * rangeMin to rangeMax + rangeMin
+        decoder.setRange(near / 2f, far - near / 2f);
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.tof;
+
+/*  Bilateral filter for 0-255 masks: a Gaussian blur in which each neighbour is also weighted by
+    how close its value is to the center pixel's. Noise within a surface is smoothed while
+    neighbours across a depth edge barely count, so edges stay sharp.
+
+    The weight of a neighbour only depends on its offset and on the difference of the two values
+    (0-255), so every combination is worked out up front into one table and a neighbour costs a
+    single lookup.
+
+    Pixels outside the frame are treated as copies of the nearest edge pixel.
+ */
+public class BilateralFilter implements SpatialFilter {
+    private static final int LEVELS = 256;
+
+    private final int radius;
+    private final float spatialSigma;
+    private final float rangeSigma;
+    // Weight per window offset and value difference, indexed offset * LEVELS + |difference|
+    private final float[] weights;
+    private final int[] rowOffsets;
+
+    // spatialSigma is in pixels and rangeSigma in mask values
+    public BilateralFilter(int radius, float spatialSigma, float rangeSigma) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be at least 1, was " + radius);
+        }
+        if (spatialSigma <= 0 || rangeSigma <= 0) {
+            throw new IllegalArgumentException("Sigmas must be positive, were " + spatialSigma + ", " + rangeSigma);
+        }
+        this.radius = radius;
+        this.spatialSigma = spatialSigma;
+        this.rangeSigma = rangeSigma;
+        int size = 2 * radius + 1;
+        rowOffsets = new int[size];
+        weights = new float[size * size * LEVELS];
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int offset = (dy + radius) * size + dx + radius;
+                double spatial = Math.exp(-(dx * dx + dy * dy) / (2.0 * spatialSigma * spatialSigma));
+                for (int difference = 0; difference < LEVELS; difference++) {
+                    double range = Math.exp(-(difference * difference) / (2.0 * rangeSigma * rangeSigma));
+                    weights[offset * LEVELS + difference] = (float) (spatial * range);
+                }
+            }
+        }
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public float getSpatialSigma() {
+        return spatialSigma;
+    }
+
+    public float getRangeSigma() {
+        return rangeSigma;
+    }
+
+    @Override
+    public void filter(byte[] input, byte[] output, int width, int height) {
+        int r = radius;
+        int size = 2 * r + 1;
+        float[] weights = this.weights;
+        int[] rowOffsets = this.rowOffsets;
+        for (int y = 0; y < height; y++) {
+            for (int k = 0; k < size; k++) {
+                rowOffsets[k] = clamp(y + k - r, height) * width;
+            }
+            for (int x = 0; x < width; x++) {
+                int center = input[y * width + x] & 0xFF;
+                // Rows are already clamped, so only columns near the sides need it
+                boolean interior = x >= r && x < width - r;
+                float sum = 0;
+                float weightSum = 0;
+                int offset = 0;
+                for (int k = 0; k < size; k++) {
+                    int row = rowOffsets[k];
+                    for (int j = -r; j <= r; j++) {
+                        int value = input[row + (interior ? x + j : clamp(x + j, width))] & 0xFF;
+                        int difference = value - center;
+                        if (difference < 0) {
+                            difference = -difference;
+                        }
+                        float weight = weights[offset * LEVELS + difference];
+                        sum += weight * value;
+                        weightSum += weight;
+                        offset++;
+                    }
+                }
+                // The center pixel always has weight 1, so weightSum is never 0
+                output[y * width + x] = (byte) (sum / weightSum + 0.5f);
+            }
+        }
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.tof;
+
+// One connected region of a depth band found by BlobDetector. Instances are reused from frame to
+// frame, so copy out anything needed after the listener call returns.
+public class Blob {
+    int id;
+    int age;
+    int area;
+    int minX;
+    int minY;
+    int maxX;
+    int maxY;
+    float centroidX;
+    float centroidY;
+    float meanDepth;
+
+    public Blob() {
+    }
+
+    // A blob found earlier, e.g. read back from a file, to be given an id by a BlobTracker
+    public Blob(int area, int minX, int minY, int maxX, int maxY, float centroidX, float centroidY,
+            float meanDepth) {
+        this.area = area;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.centroidX = centroidX;
+        this.centroidY = centroidY;
+        this.meanDepth = meanDepth;
+    }
+
+    // Stays the same for as long as the blob is matched from frame to frame
+    public int getId() {
+        return id;
+    }
+
+    // Frames since the blob first appeared, 0 in its first frame
+    public int getAge() {
+        return age;
+    }
+
+    // In pixels
+    public int getArea() {
+        return area;
+    }
+
+    // The bounding box is inclusive on all sides
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public float getCentroidX() {
+        return centroidX;
+    }
+
+    public float getCentroidY() {
+        return centroidY;
+    }
+
+    // Mean mask value (0-255) over the blob, not a distance when an AutoRange moves the
+    // decoder's range
+    public float getMeanDepth() {
+        return meanDepth;
+    }
+
+    void set(Blob blob) {
+        id = blob.id;
+        age = blob.age;
+        area = blob.area;
+        minX = blob.minX;
+        minY = blob.minY;
+        maxX = blob.maxX;
+        maxY = blob.maxY;
+        centroidX = blob.centroidX;
+        centroidY = blob.centroidY;
+        meanDepth = blob.meanDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "Blob " + id + " area=" + area + " box=(" + minX + "," + minY + ")-(" + maxX + "," + maxY
+                + ") centroid=(" + centroidX + "," + centroidY + ") depth=" + meanDepth;
+    }
+}
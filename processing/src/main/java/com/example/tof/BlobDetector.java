@@ -0,0 +1,291 @@
+package com.example.tof;
+
+/*  Finds connected regions of a depth band in a mask, e.g. a hand held in front of the camera,
+    and follows them from frame to frame.
+
+    Pixels whose mask value lies in the band are labelled in one pass over the frame: each pixel
+    takes the label of an already labelled 8-neighbour (left or the row above) or starts a new
+    one, and labels found to touch are joined in a union-find forest. Area, bounding box and sums
+    for the centroid and depth are collected per label during the same pass, then folded into
+    each label's root, so there is no second pass over the pixels.
+
+    Blobs are then matched to the previous frame's by nearest centroid (see BlobTracker), so a
+    blob keeps its id while it moves. Everything is allocated up front (and again only if the
+    frame size changes), so detecting allocates nothing per frame.
+ */
+public class BlobDetector {
+    public static final int DEFAULT_MAX_BLOBS = 16;
+    public static final int DEFAULT_MIN_AREA = 50;
+
+    private final int maxBlobs;
+    private volatile int bandMin = 1;
+    private volatile int bandMax = 255;
+    private volatile int minArea = DEFAULT_MIN_AREA;
+    private final BlobTracker tracker;
+
+    private int width;
+    private int height;
+    // Label per pixel, 0 outside the band
+    private int[] labels = new int[0];
+    // Per label, indexed from 1
+    private int[] parents = new int[0];
+    private int[] areas;
+    private int[] minXs;
+    private int[] minYs;
+    private int[] maxXs;
+    private int[] maxYs;
+    private long[] sumXs;
+    private long[] sumYs;
+    private long[] sumDepths;
+
+    // Largest blobs of this frame, sorted by area
+    private final Blob[] blobs;
+    private int blobCount;
+
+    public BlobDetector() {
+        this(DEFAULT_MAX_BLOBS);
+    }
+
+    // Only the maxBlobs largest blobs of a frame are reported
+    public BlobDetector(int maxBlobs) {
+        this.maxBlobs = maxBlobs;
+        blobs = new Blob[maxBlobs];
+        for (int i = 0; i < maxBlobs; i++) {
+            blobs[i] = new Blob();
+        }
+        tracker = new BlobTracker(maxBlobs);
+    }
+
+    // Mask values from bandMin to bandMax (inclusive) are part of a blob. 0 is never part of
+    // one, since the decoder uses it for samples it filtered out. The band is in mask units, so
+    // it only stands for fixed distances while the decoder's range is fixed: with an AutoRange
+    // on the processor the same band covers different depths from one frame to the next.
+    public void setBand(int bandMin, int bandMax) {
+        if (bandMin < 1 || bandMax > 255 || bandMin > bandMax) {
+            throw new IllegalArgumentException("Band must lie within 1-255, was " + bandMin + "-" + bandMax);
+        }
+        this.bandMin = bandMin;
+        this.bandMax = bandMax;
+    }
+
+    public int getBandMin() {
+        return bandMin;
+    }
+
+    public int getBandMax() {
+        return bandMax;
+    }
+
+    // Smaller regions are ignored as noise
+    public void setMinArea(int minArea) {
+        this.minArea = minArea;
+    }
+
+    public int getMinArea() {
+        return minArea;
+    }
+
+    public BlobTracker getTracker() {
+        return tracker;
+    }
+
+    // A listener to subscribe to a pipeline stage, detecting blobs in that stage's mask
+    public DepthStageListener asStageListener(final BlobListener listener) {
+        return new DepthStageListener() {
+            @Override
+            public void onStageAvailable(DepthStage stage, ProcessedFrame frame) {
+                detect(frame.getMask(stage), frame.getWidth(), frame.getHeight());
+                listener.onBlobsDetected(BlobDetector.this, frame.getTimestamp());
+            }
+        };
+    }
+
+    // mask holds unsigned 0-255 values, as DepthFrameProcessor and ProcessedFrame keep them
+    public void detect(byte[] mask, int width, int height) {
+        ensureSize(width, height);
+        int labelCount = label(mask);
+        collectBlobs(labelCount);
+        tracker.track(blobs, blobCount);
+    }
+
+    public int getBlobCount() {
+        return blobCount;
+    }
+
+    // Blobs are sorted by area, largest first
+    public Blob getBlob(int index) {
+        if (index >= blobCount) {
+            throw new IndexOutOfBoundsException("Blob " + index + " of " + blobCount);
+        }
+        return blobs[index];
+    }
+
+    // Forgets the blobs being tracked, so every blob gets a new id
+    public void reset() {
+        blobCount = 0;
+        tracker.reset();
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        labels = new int[width * height];
+        // Pixels that start a label are never 8-neighbours of each other, so at most every other
+        // pixel of every other row does
+        int maxLabels = ((width + 1) / 2) * ((height + 1) / 2) + 1;
+        parents = new int[maxLabels];
+        areas = new int[maxLabels];
+        minXs = new int[maxLabels];
+        minYs = new int[maxLabels];
+        maxXs = new int[maxLabels];
+        maxYs = new int[maxLabels];
+        sumXs = new long[maxLabels];
+        sumYs = new long[maxLabels];
+        sumDepths = new long[maxLabels];
+        reset();
+    }
+
+    // Returns the number of labels used, which are 1 to count
+    private int label(byte[] mask) {
+        int width = this.width;
+        int bandMin = this.bandMin;
+        int bandMax = this.bandMax;
+        int[] labels = this.labels;
+        int[] parents = this.parents;
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = row + x;
+                int value = mask[index] & 0xFF;
+                if (value < bandMin || value > bandMax) {
+                    labels[index] = 0;
+                    continue;
+                }
+                int label = 0;
+                if (x > 0) {
+                    label = join(label, labels[index - 1]);
+                }
+                if (y > 0) {
+                    int above = index - width;
+                    if (x > 0) {
+                        label = join(label, labels[above - 1]);
+                    }
+                    label = join(label, labels[above]);
+                    if (x < width - 1) {
+                        label = join(label, labels[above + 1]);
+                    }
+                }
+                if (label == 0) {
+                    label = ++count;
+                    parents[label] = label;
+                    areas[label] = 0;
+                    minXs[label] = x;
+                    minYs[label] = y;
+                    maxXs[label] = x;
+                    maxYs[label] = y;
+                    sumXs[label] = 0;
+                    sumYs[label] = 0;
+                    sumDepths[label] = 0;
+                }
+                labels[index] = label;
+                // Statistics go on the pixel's own label and are merged into roots afterwards
+                areas[label]++;
+                if (x < minXs[label]) {
+                    minXs[label] = x;
+                }
+                if (x > maxXs[label]) {
+                    maxXs[label] = x;
+                }
+                maxYs[label] = y;
+                sumXs[label] += x;
+                sumYs[label] += y;
+                sumDepths[label] += value;
+            }
+        }
+        return count;
+    }
+
+    // Joins the sets of two labels (0 meaning none) and returns one of them to use
+    private int join(int label, int neighbour) {
+        if (neighbour == 0) {
+            return label;
+        }
+        if (label == 0) {
+            return neighbour;
+        }
+        int a = find(label);
+        int b = find(neighbour);
+        // The smaller label becomes the root, so roots are always labelled before their children
+        if (a < b) {
+            parents[b] = a;
+        } else if (b < a) {
+            parents[a] = b;
+        }
+        return label;
+    }
+
+    private int find(int label) {
+        int[] parents = this.parents;
+        while (parents[label] != label) {
+            // Path halving keeps the trees flat
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+
+    private void collectBlobs(int labelCount) {
+        // Children always have larger labels than their roots, so walking down from the top
+        // folds every label into its root before the root itself is looked at
+        for (int label = labelCount; label >= 1; label--) {
+            int root = find(label);
+            if (root == label) {
+                continue;
+            }
+            areas[root] += areas[label];
+            minXs[root] = Math.min(minXs[root], minXs[label]);
+            minYs[root] = Math.min(minYs[root], minYs[label]);
+            maxXs[root] = Math.max(maxXs[root], maxXs[label]);
+            maxYs[root] = Math.max(maxYs[root], maxYs[label]);
+            sumXs[root] += sumXs[label];
+            sumYs[root] += sumYs[label];
+            sumDepths[root] += sumDepths[label];
+        }
+
+        blobCount = 0;
+
+        int minArea = this.minArea;
+        for (int label = 1; label <= labelCount; label++) {
+            int area = areas[label];
+            if (parents[label] != label || area < minArea) {
+                continue;
+            }
+            // Insert by area, dropping the smallest when full
+            int position = blobCount;
+            while (position > 0 && blobs[position - 1].area < area) {
+                position--;
+            }
+            if (position >= maxBlobs) {
+                continue;
+            }
+            Blob blob = blobCount < maxBlobs ? blobs[blobCount] : blobs[maxBlobs - 1];
+            System.arraycopy(blobs, position, blobs, position + 1, Math.min(blobCount, maxBlobs - 1) - position);
+            blobs[position] = blob;
+            if (blobCount < maxBlobs) {
+                blobCount++;
+            }
+            blob.area = area;
+            blob.minX = minXs[label];
+            blob.minY = minYs[label];
+            blob.maxX = maxXs[label];
+            blob.maxY = maxYs[label];
+            blob.centroidX = (float) sumXs[label] / area;
+            blob.centroidY = (float) sumYs[label] / area;
+            blob.meanDepth = (float) sumDepths[label] / area;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tof;
+
+// Receives the blobs found in each frame, on the thread that ran BlobDetector. The detector and
+// its blobs are only valid for the duration of the call.
+public interface BlobListener {
+    void onBlobsDetected(BlobDetector detector, long timestamp);
+}
@@ -0,0 +1,81 @@
+package com.example.tof;
+
+/*  Gives blobs ids that stay the same from frame to frame.
+
+    Blobs are matched greedily, largest first, to the nearest unclaimed blob of the previous frame
+    whose centroid is within maxMatchDistance, taking over its id. Unmatched blobs get a new id.
+    The previous frame's blobs are copied, so the caller can reuse its Blob instances, and nothing
+    is allocated per frame.
+ */
+public class BlobTracker {
+    // How far in pixels a centroid may move between frames and still be the same blob
+    public static final float DEFAULT_MAX_MATCH_DISTANCE = 30f;
+
+    private final Blob[] previousBlobs;
+    private final boolean[] matched;
+    private int previousCount;
+    private int nextId = 1;
+    private volatile float maxMatchDistance = DEFAULT_MAX_MATCH_DISTANCE;
+
+    // maxBlobs is the most blobs that will be tracked in one frame
+    public BlobTracker(int maxBlobs) {
+        previousBlobs = new Blob[maxBlobs];
+        for (int i = 0; i < maxBlobs; i++) {
+            previousBlobs[i] = new Blob();
+        }
+        matched = new boolean[maxBlobs];
+    }
+
+    public void setMaxMatchDistance(float maxMatchDistance) {
+        this.maxMatchDistance = maxMatchDistance;
+    }
+
+    public float getMaxMatchDistance() {
+        return maxMatchDistance;
+    }
+
+    // Sets the id and age of the first count blobs, which should be sorted by area, largest first
+    public void track(Blob[] blobs, int count) {
+        if (count > previousBlobs.length) {
+            throw new IllegalArgumentException("Can track " + previousBlobs.length + " blobs, got " + count);
+        }
+        float maxDistanceSquared = maxMatchDistance * maxMatchDistance;
+        for (int i = 0; i < previousCount; i++) {
+            matched[i] = false;
+        }
+        for (int i = 0; i < count; i++) {
+            Blob blob = blobs[i];
+            int nearest = -1;
+            float nearestDistance = maxDistanceSquared;
+            for (int j = 0; j < previousCount; j++) {
+                if (matched[j]) {
+                    continue;
+                }
+                float dx = blob.centroidX - previousBlobs[j].centroidX;
+                float dy = blob.centroidY - previousBlobs[j].centroidY;
+                float distance = dx * dx + dy * dy;
+                if (distance <= nearestDistance) {
+                    nearest = j;
+                    nearestDistance = distance;
+                }
+            }
+            if (nearest >= 0) {
+                matched[nearest] = true;
+                blob.id = previousBlobs[nearest].id;
+                blob.age = previousBlobs[nearest].age + 1;
+            } else {
+                blob.id = nextId++;
+                blob.age = 0;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            previousBlobs[i].set(blobs[i]);
+        }
+        previousCount = count;
+    }
+
+    // Forgets the previous frame, so every blob gets a new id
+    public void reset() {
+        previousCount = 0;
+    }
+}
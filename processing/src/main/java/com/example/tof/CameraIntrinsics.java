@@ -0,0 +1,90 @@
+package com.example.tof;
+
+/*  Pinhole intrinsics of the depth camera in pixels of a particular frame size: focal lengths
+    fx/fy and the principal point cx/cy.
+
+    Camera2 reports LENS_INTRINSIC_CALIBRATION in pixels of the sensor's active array, so those
+    are scaled down to the stream size with fromCalibration. Devices that don't report it (the
+    S10 5G among them) get an estimate from a field of view with the principal point centered.
+ */
+public class CameraIntrinsics {
+    // Used when the camera doesn't report its intrinsics. Roughly what the S10 5G depth camera
+    // covers.
+    public static final float DEFAULT_HORIZONTAL_FOV_DEGREES = 75f;
+
+    private final int width;
+    private final int height;
+    private final float fx;
+    private final float fy;
+    private final float cx;
+    private final float cy;
+
+    public CameraIntrinsics(int width, int height, float fx, float fy, float cx, float cy) {
+        if (fx <= 0 || fy <= 0) {
+            throw new IllegalArgumentException("Focal lengths must be positive, were " + fx + ", " + fy);
+        }
+        this.width = width;
+        this.height = height;
+        this.fx = fx;
+        this.fy = fy;
+        this.cx = cx;
+        this.cy = cy;
+    }
+
+    // calibration is LENS_INTRINSIC_CALIBRATION ([fx, fy, cx, cy, skew], skew is ignored) in
+    // pixels of an activeWidth x activeHeight array. Returns null if it's missing or unusable so
+    // callers can fall back to fromFieldOfView.
+    public static CameraIntrinsics fromCalibration(float[] calibration, int activeWidth, int activeHeight,
+            int width, int height) {
+        if (calibration == null || calibration.length < 4 || calibration[0] <= 0 || calibration[1] <= 0
+                || activeWidth <= 0 || activeHeight <= 0) {
+            return null;
+        }
+        float scaleX = (float) width / activeWidth;
+        float scaleY = (float) height / activeHeight;
+        return new CameraIntrinsics(width, height, calibration[0] * scaleX, calibration[1] * scaleY,
+                calibration[2] * scaleX, calibration[3] * scaleY);
+    }
+
+    // Square pixels with the principal point in the center of the frame
+    public static CameraIntrinsics fromFieldOfView(float horizontalFovDegrees, int width, int height) {
+        float focalLength = (float) (width / (2 * Math.tan(Math.toRadians(horizontalFovDegrees) / 2)));
+        return new CameraIntrinsics(width, height, focalLength, focalLength, width / 2f, height / 2f);
+    }
+
+    // The same lens for another frame size of the same aspect ratio
+    public CameraIntrinsics scaledTo(int width, int height) {
+        float scaleX = (float) width / this.width;
+        float scaleY = (float) height / this.height;
+        return new CameraIntrinsics(width, height, fx * scaleX, fy * scaleY, cx * scaleX, cy * scaleY);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getFx() {
+        return fx;
+    }
+
+    public float getFy() {
+        return fy;
+    }
+
+    public float getCx() {
+        return cx;
+    }
+
+    public float getCy() {
+        return cy;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " fx=" + fx + " fy=" + fy + " cx=" + cx + " cy=" + cy;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.tof;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*  Matches the camera's frame rate and image handling to how long frames take to process, so
+    frame rate is traded against latency on purpose instead of camera buffers running out.
+
+    Camera reports each frame's processing time to recordFrame. Once every evaluation interval
+    the average is compared with the frame interval: the AE target fps range becomes the fastest
+    of the camera's ranges that keeps processing under the target utilization. Slowing down
+    happens at once; speeding up only after a few intervals in a row allow it, so the repeating
+    request isn't rebuilt on every hiccup. The policy also decides whether frames are read with
+    acquireNextImage or acquireLatestImage and how many buffers the ImageReader gets.
+
+    The clock only decides when to evaluate, so the policy can be tested with a simulated one.
+ */
+public class CaptureScheduler {
+    public enum Policy {
+        // Always the highest frame rate, handing processing the newest image and dropping the
+        // ones it didn't get to
+        LOWEST_LATENCY(3),
+        // Frame rate lowered to what processing keeps up with, reading the newest image while it
+        // falls behind and every image otherwise
+        BALANCED(3),
+        // Frame rate lowered to what processing keeps up with, with spare buffers to ride out
+        // slow frames, so every image is processed
+        EVERY_FRAME(4);
+
+        // acquireLatestImage needs one more than the images held at once, and a third lets the
+        // camera fill a buffer while one is read and one waits
+        private final int imageBufferCount;
+
+        Policy(int imageBufferCount) {
+            this.imageBufferCount = imageBufferCount;
+        }
+    }
+
+    public static final long DEFAULT_EVALUATION_INTERVAL_NANOS = 1000000000L;
+    // Processing may take this much of the frame interval, leaving the rest for jitter
+    public static final float DEFAULT_TARGET_UTILIZATION = 0.8f;
+    // Intervals in a row that have to allow a faster range before it's used
+    public static final int RAISE_EVALUATIONS = 3;
+    // Fewer frames than this in an interval aren't enough to go on, so it is extended
+    private static final int MIN_WINDOW_FRAMES = 5;
+
+    private final Policy policy;
+    private final NanoClock clock;
+    // Copies of the camera's ranges, {lower, upper} each
+    private final List<int[]> fpsRanges;
+    private volatile long evaluationIntervalNanos = DEFAULT_EVALUATION_INTERVAL_NANOS;
+    private volatile float targetUtilization = DEFAULT_TARGET_UTILIZATION;
+    private volatile int[] fpsRange;
+    private volatile boolean acquireLatest;
+    private volatile long averageProcessingNanos;
+    private long windowStart;
+    private long windowNanos;
+    private int windowFrames;
+    private int raiseCount;
+    private int[] raiseRange;
+
+    public CaptureScheduler(Policy policy, List<int[]> fpsRanges) {
+        this(policy, fpsRanges, NanoClock.SYSTEM);
+    }
+
+    // fpsRanges holds the {lower, upper} pairs the camera accepts for the stream, as gathered for
+    // DepthStreamSelector. It starts at the fastest one.
+    public CaptureScheduler(Policy policy, List<int[]> fpsRanges, NanoClock clock) {
+        if (fpsRanges.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one fps range");
+        }
+        this.policy = policy;
+        this.clock = clock;
+        this.fpsRanges = new ArrayList<>();
+        for (int[] range : fpsRanges) {
+            if (!isValid(range)) {
+                throw new IllegalArgumentException("Bad fps range " + Arrays.toString(range));
+            }
+            this.fpsRanges.add(range.clone());
+        }
+        fpsRange = fit(Float.MAX_VALUE);
+        acquireLatest = policy == Policy.LOWEST_LATENCY;
+        windowStart = clock.nanoTime();
+    }
+
+    // The camera's ranges the stream can deliver: those up to the config's max fps, or all of them
+    // when that isn't known. Falls back to the config's own range, then the default one, so the
+    // result is never empty and every range in it is valid.
+    public static List<int[]> rangesFor(DepthStreamConfig config, List<int[]> fpsRanges) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int[] range : fpsRanges) {
+            if (isValid(range) && (config.getMaxFps() <= 0 || range[1] <= config.getMaxFps())) {
+                ranges.add(range);
+            }
+        }
+        if (ranges.isEmpty()) {
+            int[] range = {config.getMinFps(), config.getMaxFps()};
+            if (!isValid(range)) {
+                range = new int[] {DepthStreamConfig.DEFAULT.getMinFps(), DepthStreamConfig.DEFAULT.getMaxFps()};
+            }
+            ranges.add(range);
+        }
+        return ranges;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void setEvaluationIntervalNanos(long evaluationIntervalNanos) {
+        if (evaluationIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Interval must be positive, was " + evaluationIntervalNanos);
+        }
+        this.evaluationIntervalNanos = evaluationIntervalNanos;
+    }
+
+    public long getEvaluationIntervalNanos() {
+        return evaluationIntervalNanos;
+    }
+
+    // The fraction of the frame interval processing may take
+    public void setTargetUtilization(float targetUtilization) {
+        if (targetUtilization <= 0 || targetUtilization > 1) {
+            throw new IllegalArgumentException("Utilization must be in (0, 1], was " + targetUtilization);
+        }
+        this.targetUtilization = targetUtilization;
+    }
+
+    public float getTargetUtilization() {
+        return targetUtilization;
+    }
+
+    // The {lower, upper} range for CONTROL_AE_TARGET_FPS_RANGE, one of the camera's. Don't modify.
+    public int[] getFpsRange() {
+        return fpsRange;
+    }
+
+    // Whether images should be read with acquireLatestImage rather than acquireNextImage
+    public boolean isAcquireLatest() {
+        return acquireLatest;
+    }
+
+    // maxImages for the ImageReader
+    public int getImageBufferCount() {
+        return policy.imageBufferCount;
+    }
+
+    // Over the last evaluation interval, 0 before the first
+    public long getAverageProcessingNanos() {
+        return averageProcessingNanos;
+    }
+
+    // Reports how long a frame took to process. Returns true if the fps range changed, so the
+    // repeating request needs to be set again.
+    public synchronized boolean recordFrame(long processingNanos) {
+        windowNanos += processingNanos;
+        windowFrames++;
+        long now = clock.nanoTime();
+        if (now - windowStart < evaluationIntervalNanos || windowFrames < MIN_WINDOW_FRAMES) {
+            return false;
+        }
+        long average = windowNanos / windowFrames;
+        windowStart = now;
+        windowNanos = 0;
+        windowFrames = 0;
+        averageProcessingNanos = average;
+
+        int[] current = fpsRange;
+        if (policy == Policy.BALANCED) {
+            // Behind when frames can come in faster than they are processed
+            acquireLatest = average > 1e9 / current[1];
+        }
+        if (policy == Policy.LOWEST_LATENCY) {
+            return false;
+        }
+        int[] fitting = fit(average > 0 ? (float) (targetUtilization * 1e9 / average) : Float.MAX_VALUE);
+        if (fitting == current) {
+            raiseCount = 0;
+            return false;
+        }
+        if (isFaster(fitting, current)) {
+            // Only once the same range has been allowed for a few intervals in a row
+            raiseCount = fitting == raiseRange ? raiseCount + 1 : 1;
+            raiseRange = fitting;
+            if (raiseCount < RAISE_EVALUATIONS) {
+                return false;
+            }
+        }
+        raiseCount = 0;
+        raiseRange = null;
+        fpsRange = fitting;
+        return true;
+    }
+
+    // The range with the highest upper bound processing keeps up with, preferring a lower lower
+    // bound like DepthStreamSelector. When none does, the one with the lowest upper bound.
+    private int[] fit(float sustainableFps) {
+        int[] best = null;
+        int[] slowest = null;
+        for (int[] range : fpsRanges) {
+            if (slowest == null || range[1] < slowest[1] || (range[1] == slowest[1] && range[0] < slowest[0])) {
+                slowest = range;
+            }
+            if (range[1] > sustainableFps) {
+                continue;
+            }
+            if (best == null || range[1] > best[1] || (range[1] == best[1] && range[0] < best[0])) {
+                best = range;
+            }
+        }
+        return best != null ? best : slowest;
+    }
+
+    private static boolean isValid(int[] range) {
+        return range.length == 2 && range[0] > 0 && range[0] <= range[1];
+    }
+
+    private static boolean isFaster(int[] range, int[] than) {
+        return range[1] != than[1] ? range[1] > than[1] : range[0] > than[0];
+    }
+}
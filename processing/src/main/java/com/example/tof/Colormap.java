@@ -0,0 +1,80 @@
+package com.example.tof;
+
+/*  Precomputed 256 entry lookup tables that turn a 0-255 depth mask value into an opaque ARGB
+    color, so converting a mask costs one array read per pixel.
+ */
+public enum Colormap {
+    // The original visualization, black to full green
+    GREEN {
+        @Override
+        int color(float x) {
+            return argb(0, x, 0);
+        }
+    },
+    GRAYSCALE {
+        @Override
+        int color(float x) {
+            return argb(x, x, x);
+        }
+    },
+    // Polynomial approximation of Google's Turbo colormap
+    TURBO {
+        @Override
+        int color(float x) {
+            float r = 0.13572138f + x * (4.61539260f + x * (-42.66032258f + x * (132.13108234f + x * (-152.94239396f + x * 59.28637943f))));
+            float g = 0.09140261f + x * (2.19418839f + x * (4.84296658f + x * (-14.18503333f + x * (4.27729857f + x * 2.82956604f))));
+            float b = 0.10667330f + x * (12.64194608f + x * (-60.58204836f + x * (110.36276771f + x * (-89.90310912f + x * 27.34824973f))));
+            return argb(r, g, b);
+        }
+    },
+    JET {
+        @Override
+        int color(float x) {
+            float r = 1.5f - Math.abs(4 * x - 3);
+            float g = 1.5f - Math.abs(4 * x - 2);
+            float b = 1.5f - Math.abs(4 * x - 1);
+            return argb(r, g, b);
+        }
+    };
+
+    public static final int SIZE = 256;
+
+    private final int[] lut = new int[SIZE];
+
+    Colormap() {
+        for (int i = 0; i < SIZE; i++) {
+            lut[i] = color(i / (float)(SIZE - 1));
+        }
+    }
+
+    // Color for an intensity between 0 and 1
+    abstract int color(float x);
+
+    public int toArgb(int value) {
+        return lut[value];
+    }
+
+    // Mask values must already be in the 0-255 range, as DepthFrameProcessor produces them
+    public void toArgb(int[] mask, int[] pixels) {
+        int[] lut = this.lut;
+        for (int i = 0; i < mask.length; i++) {
+            pixels[i] = lut[mask[i]];
+        }
+    }
+
+    // For masks stored as unsigned bytes
+    public void toArgb(byte[] mask, int[] pixels) {
+        int[] lut = this.lut;
+        for (int i = 0; i < mask.length; i++) {
+            pixels[i] = lut[mask[i] & 0xFF];
+        }
+    }
+
+    private static int argb(float r, float g, float b) {
+        return 0xFF000000 | (channel(r) << 16) | (channel(g) << 8) | channel(b);
+    }
+
+    private static int channel(float value) {
+        return (int)(Math.max(0.f, Math.min(1.f, value)) * 255 + 0.5f);
+    }
+}
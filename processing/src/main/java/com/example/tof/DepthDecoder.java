@@ -0,0 +1,103 @@
+package com.example.tof;
+
+/*  Decodes DEPTH16 samples into 0-255 mask values through a lookup table.
+
+    A sample is only 16 bits (13 bits of range, 3 bits of confidence) so every possible input
+    fits in a 65536 entry table, built once from extractRange instead of running the float math
+    on every pixel. Changing a setting builds a new table and swaps it in as a whole, so a frame
+    being decoded on another thread always sees one consistent set of settings.
+ */
+public class DepthDecoder {
+    public static final float DEFAULT_RANGE_MIN = 200.0f;
+    public static final float DEFAULT_RANGE_MAX = 1600.0f;
+    public static final float DEFAULT_CONFIDENCE_FILTER = 0.1f;
+
+    private static final int TABLE_SIZE = 1 << 16;
+
+    private float rangeMin;
+    private float rangeMax;
+    private float confidenceFilter;
+    // Mask values are 0-255, stored as unsigned bytes
+    private volatile byte[] table;
+
+    public DepthDecoder() {
+        this(DEFAULT_RANGE_MIN, DEFAULT_RANGE_MAX, DEFAULT_CONFIDENCE_FILTER);
+    }
+
+    public DepthDecoder(float rangeMin, float rangeMax, float confidenceFilter) {
+        this.rangeMin = rangeMin;
+        this.rangeMax = rangeMax;
+        this.confidenceFilter = confidenceFilter;
+        table = buildTable(rangeMin, rangeMax, confidenceFilter);
+    }
+
+    public int decode(short sample) {
+        return table[sample & 0xFFFF] & 0xFF;
+    }
+
+    // Callers decoding a whole frame should read the table once and index it with
+    // (sample & 0xFFFF), masking the result with 0xFF.
+    public byte[] getTable() {
+        return table;
+    }
+
+    public synchronized void setRange(float rangeMin, float rangeMax) {
+        this.rangeMin = rangeMin;
+        this.rangeMax = rangeMax;
+        table = buildTable(rangeMin, rangeMax, confidenceFilter);
+    }
+
+    public synchronized void setConfidenceFilter(float confidenceFilter) {
+        this.confidenceFilter = confidenceFilter;
+        table = buildTable(rangeMin, rangeMax, confidenceFilter);
+    }
+
+    public synchronized float getRangeMin() {
+        return rangeMin;
+    }
+
+    public synchronized float getRangeMax() {
+        return rangeMax;
+    }
+
+    public synchronized float getConfidenceFilter() {
+        return confidenceFilter;
+    }
+
+    private static byte[] buildTable(float rangeMin, float rangeMax, float confidenceFilter) {
+        byte[] table = new byte[TABLE_SIZE];
+        for (int sample = 0; sample < TABLE_SIZE; sample++) {
+            table[sample] = (byte) extractRange((short) sample, rangeMin, rangeMax, confidenceFilter);
+        }
+        return table;
+    }
+
+    // The per-sample formula the table is built from
+    public static int extractRange(short sample, float rangeMin, float rangeMax, float confidenceFilter) {
+        int depthRange = (short) (sample & 0x1FFF);
+        int depthConfidence = (short) ((sample >> 13) & 0x7);
+        if (isConfident(depthConfidence, confidenceFilter)) {
+            return normalizeRange(depthRange, rangeMin, rangeMax);
+        } else {
+            return 0;
+        }
+    }
+
+    // Whether samples with a 3-bit DEPTH16 confidence code pass the filter: 0 means full
+    // confidence and 1-7 mean 0/7 to 6/7
+    public static boolean isConfident(int depthConfidence, float confidenceFilter) {
+        float depthPercentage = depthConfidence == 0 ? 1.f : (depthConfidence - 1) / 7.f;
+        return depthPercentage > confidenceFilter;
+    }
+
+    public static int normalizeRange(int range, float rangeMin, float rangeMax) {
+        float normalized = (float)range - rangeMin;
+        // Clamp to min/max
+        normalized = Math.max(rangeMin, normalized);
+        normalized = Math.min(rangeMax, normalized);
+        // Normalize to 0 to 255
+        normalized = normalized - rangeMin;
+        normalized = normalized / (rangeMax - rangeMin) * 255;
+        return (int)normalized;
+    }
+}
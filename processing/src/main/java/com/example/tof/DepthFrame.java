@@ -0,0 +1,47 @@
+package com.example.tof;
+
+import java.nio.ShortBuffer;
+
+// A copy of one frame of DEPTH16 samples, so the camera's buffer can be given back right away
+public class DepthFrame {
+    private final int width;
+    private final int height;
+    private final short[] samples;
+    private long timestamp;
+
+    public DepthFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        samples = new short[width * height];
+    }
+
+    public void set(ShortBuffer depthBuffer, long timestamp) {
+        // Absolute reads leave the caller's buffer position alone
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = depthBuffer.get(i);
+        }
+        this.timestamp = timestamp;
+    }
+
+    public void set(short[] depthSamples, long timestamp) {
+        System.arraycopy(depthSamples, 0, samples, 0, samples.length);
+        this.timestamp = timestamp;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public short[] getSamples() {
+        return samples;
+    }
+
+    // Sensor timestamp in nanoseconds
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
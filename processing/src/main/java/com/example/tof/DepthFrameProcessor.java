@@ -0,0 +1,347 @@
+package com.example.tof;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/*  Turns DEPTH16 samples into the masks that get visualized.
+
+    This holds no Android types so that the per-pixel work can be run directly on a
+    ShortBuffer or short[] in unit tests and benchmarks, without an android.media.Image.
+
+    Mask values are 0-255, so every mask and every filter works on unsigned bytes: a quarter of
+    the memory and bandwidth of int masks, and the decode table's values are stored as they are.
+ */
+public class DepthFrameProcessor {
+    private final int width;
+    private final int height;
+    private final DepthDecoder decoder;
+    private final byte[] rawMask;
+    private final byte[] noiseReduceMask;
+    private final byte[] blurredAverage;
+    private final byte[] blurScratch;
+    private final byte[] averagedMask;
+    // Confidence weight per pixel, only filled when the temporal filter asks for it
+    private final byte[] confidenceWeights;
+    // Only used with a hole filler: 1 for samples the decoder dropped, and the raw mask with
+    // those filled, which the filters then read instead of the raw mask
+    private final byte[] holes;
+    private final byte[] filledMask;
+    private final boolean[] confidentCodes = new boolean[8];
+    private final TemporalFilter temporalFilter;
+    // When set, blurs of large enough frames are split across this pool
+    private volatile ForkJoinPool blurPool;
+    // Replace the box blur of the two blur stages when set
+    private volatile SpatialFilter noiseReductionFilter;
+    private volatile SpatialFilter movingAverageFilter;
+    // When set, the time each step takes is recorded here
+    private volatile PipelineMetrics metrics;
+    // When set, fits the decoder's range to every frame before decoding it
+    private volatile AutoRange autoRange;
+    // When set, fills holes in the raw mask before any filter sees it
+    private volatile HoleFiller holeFiller;
+    private int computedStages;
+
+    public DepthFrameProcessor(int width, int height) {
+        this(width, height, new DepthDecoder());
+    }
+
+    public DepthFrameProcessor(int width, int height, DepthDecoder decoder) {
+        this(width, height, decoder, new TemporalFilter(width, height));
+    }
+
+    private DepthFrameProcessor(int width, int height, DepthDecoder decoder, TemporalFilter temporalFilter) {
+        this.width = width;
+        this.height = height;
+        this.decoder = decoder;
+        this.temporalFilter = temporalFilter;
+
+        int size = width * height;
+        rawMask = new byte[size];
+        noiseReduceMask = new byte[size];
+        blurredAverage = new byte[size];
+        blurScratch = new byte[size];
+        averagedMask = new byte[size];
+        confidenceWeights = new byte[size];
+        holes = new byte[size];
+        filledMask = new byte[size];
+    }
+
+    // A processor for a new frame size sharing this one's decoder and settings. Every buffer is
+    // sized for the new frames, and the temporal history starts over.
+    public DepthFrameProcessor withSize(int width, int height) {
+        DepthFrameProcessor processor = new DepthFrameProcessor(width, height, decoder,
+                temporalFilter.withSize(width, height));
+        processor.setBlurPool(blurPool);
+        processor.noiseReductionFilter = noiseReductionFilter;
+        processor.movingAverageFilter = movingAverageFilter;
+        processor.setMetrics(metrics);
+        processor.setAutoRange(autoRange);
+        processor.setHoleFiller(holeFiller);
+        return processor;
+    }
+
+    public void process(short[] depthSamples) {
+        process(depthSamples, DepthStage.ALL);
+    }
+
+    public void process(ShortBuffer shortDepthBuffer) {
+        process(shortDepthBuffer, DepthStage.ALL);
+    }
+
+    // Computes only the requested stages (a DepthStage bit mask) and what they depend on. Stages
+    // that aren't computed keep whatever they held before, and the temporal filter only sees
+    // frames where the moving average is computed.
+    public void process(short[] depthSamples, int stages) {
+        stages = DepthStage.withDependencies(stages);
+        if (stages == DepthStage.NONE) {
+            computedStages = stages;
+            return;
+        }
+        PipelineMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        AutoRange autoRange = this.autoRange;
+        if (autoRange != null) {
+            autoRange.update(depthSamples, decoder);
+        }
+        // Read the table once so the whole frame is decoded with the same settings
+        byte[] decodeTable = decoder.getTable();
+        for (int index = 0; index < width * height; index++) {
+            // Store value in the rawMask for visualization
+            rawMask[index] = decodeTable[depthSamples[index] & 0xFFFF];
+        }
+        if (needsConfidenceWeights(stages)) {
+            for (int index = 0; index < width * height; index++) {
+                confidenceWeights[index] = (byte) TemporalFilter.confidenceWeight(depthSamples[index]);
+            }
+        }
+        HoleFiller holeFiller = this.holeFiller;
+        if (holeFiller != null && needsFilteredInput(stages)) {
+            updateConfidentCodes();
+            for (int index = 0; index < width * height; index++) {
+                holes[index] = isHole(depthSamples[index]);
+            }
+        }
+        finishFrame(stages, holeFiller, metrics, start);
+    }
+
+    public void process(ShortBuffer shortDepthBuffer, int stages) {
+        stages = DepthStage.withDependencies(stages);
+        if (stages == DepthStage.NONE) {
+            computedStages = stages;
+            return;
+        }
+        PipelineMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        AutoRange autoRange = this.autoRange;
+        if (autoRange != null) {
+            autoRange.update(shortDepthBuffer, decoder);
+        }
+        byte[] decodeTable = decoder.getTable();
+        for (int index = 0; index < width * height; index++) {
+            rawMask[index] = decodeTable[shortDepthBuffer.get(index) & 0xFFFF];
+        }
+        if (needsConfidenceWeights(stages)) {
+            for (int index = 0; index < width * height; index++) {
+                confidenceWeights[index] = (byte) TemporalFilter.confidenceWeight(shortDepthBuffer.get(index));
+            }
+        }
+        HoleFiller holeFiller = this.holeFiller;
+        if (holeFiller != null && needsFilteredInput(stages)) {
+            updateConfidentCodes();
+            for (int index = 0; index < width * height; index++) {
+                holes[index] = isHole(shortDepthBuffer.get(index));
+            }
+        }
+        finishFrame(stages, holeFiller, metrics, start);
+    }
+
+    // Hole filling is recorded as part of decoding
+    private void finishFrame(int stages, HoleFiller holeFiller, PipelineMetrics metrics, long start) {
+        byte[] input = rawMask;
+        if (holeFiller != null && needsFilteredInput(stages)) {
+            holeFiller.fill(rawMask, holes, filledMask, width, height);
+            input = filledMask;
+        }
+        if (metrics != null) {
+            metrics.recordSince(PipelineMetrics.Step.DECODE, start);
+        }
+
+        if (DepthStage.NOISE_REDUCTION.isIn(stages)) {
+            start = System.nanoTime();
+            // Produce a noise reduced version of the raw mask for visualization
+            filter(input, noiseReduceMask, noiseReductionFilter);
+            if (metrics != null) {
+                metrics.recordSince(PipelineMetrics.Step.NOISE_REDUCTION_BLUR, start);
+            }
+        }
+
+        if (DepthStage.MOVING_AVERAGE.isIn(stages)) {
+            start = System.nanoTime();
+            temporalFilter.filter(input, confidenceWeights, averagedMask);
+            if (metrics != null) {
+                metrics.recordSince(PipelineMetrics.Step.TEMPORAL_FILTER, start);
+            }
+        }
+
+        if (DepthStage.BLURRED_MOVING_AVERAGE.isIn(stages)) {
+            start = System.nanoTime();
+            // Produce a blurred version of the latest moving average result
+            filter(averagedMask, blurredAverage, movingAverageFilter);
+            if (metrics != null) {
+                metrics.recordSince(PipelineMetrics.Step.MOVING_AVERAGE_BLUR, start);
+            }
+        }
+        computedStages = stages;
+    }
+
+    // Whether any stage past RAW runs, all of which read the raw mask
+    private static boolean needsFilteredInput(int stages) {
+        return (stages & ~DepthStage.RAW.mask()) != 0;
+    }
+
+    private void updateConfidentCodes() {
+        float confidenceFilter = decoder.getConfidenceFilter();
+        for (int confidence = 0; confidence < confidentCodes.length; confidence++) {
+            confidentCodes[confidence] = DepthDecoder.isConfident(confidence, confidenceFilter);
+        }
+    }
+
+    // Samples the decoder dropped, and those without a range at all
+    private byte isHole(short sample) {
+        return (byte) ((sample & 0x1FFF) == 0 || !confidentCodes[(sample >> 13) & 0x7] ? 1 : 0);
+    }
+
+    private boolean needsConfidenceWeights(int stages) {
+        return DepthStage.MOVING_AVERAGE.isIn(stages) && temporalFilter.isConfidenceWeighted();
+    }
+
+    private void filter(byte[] input, byte[] output, SpatialFilter filter) {
+        if (filter != null) {
+            filter.filter(input, output, width, height);
+            return;
+        }
+        ForkJoinPool pool = blurPool;
+        if (pool != null) {
+            FastBlur.boxBlur(input, output, blurScratch, width, height, 1, pool);
+        } else {
+            FastBlur.boxBlur(input, output, blurScratch, width, height, 1);
+        }
+    }
+
+    // Pass FastBlur.parallelPool() to blur high resolution frames on every core, or null for the
+    // serial blur
+    public void setBlurPool(ForkJoinPool blurPool) {
+        this.blurPool = blurPool;
+    }
+
+    // Records how long decoding, the temporal filter and each blur take. null turns it off.
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Lets the AutoRange set the decoder's range from the depths in view. null keeps the range
+    // where it is.
+    public void setAutoRange(AutoRange autoRange) {
+        this.autoRange = autoRange;
+    }
+
+    public AutoRange getAutoRange() {
+        return autoRange;
+    }
+
+    // Fills holes the decoder leaves for low confidence samples before the blurs and the moving
+    // average, so they don't drag them towards 0. The RAW stage keeps its holes. null turns it
+    // off.
+    public void setHoleFiller(HoleFiller holeFiller) {
+        this.holeFiller = holeFiller;
+    }
+
+    public HoleFiller getHoleFiller() {
+        return holeFiller;
+    }
+
+    // Replaces the box blur of NOISE_REDUCTION or BLURRED_MOVING_AVERAGE, for example with an edge
+    // preserving MedianFilter or BilateralFilter. null goes back to the box blur. The filter is
+    // only used from the processing thread, so one instance can serve both stages.
+    public void setSpatialFilter(DepthStage stage, SpatialFilter filter) {
+        switch (stage) {
+            case NOISE_REDUCTION:
+                noiseReductionFilter = filter;
+                break;
+            case BLURRED_MOVING_AVERAGE:
+                movingAverageFilter = filter;
+                break;
+            default:
+                throw new IllegalArgumentException("Stage " + stage + " has no spatial filter");
+        }
+    }
+
+    public SpatialFilter getSpatialFilter(DepthStage stage) {
+        switch (stage) {
+            case NOISE_REDUCTION:
+                return noiseReductionFilter;
+            case BLURRED_MOVING_AVERAGE:
+                return movingAverageFilter;
+            default:
+                throw new IllegalArgumentException("Stage " + stage + " has no spatial filter");
+        }
+    }
+
+    public DepthDecoder getDecoder() {
+        return decoder;
+    }
+
+    // Window size, mode and confidence weighting of the moving average
+    public TemporalFilter getTemporalFilter() {
+        return temporalFilter;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // The stages computed for the last frame, as a DepthStage bit mask
+    public int getComputedStages() {
+        return computedStages;
+    }
+
+    // Read values with (mask[i] & 0xFF)
+    public byte[] getMask(DepthStage stage) {
+        switch (stage) {
+            case RAW:
+                return getRawMask();
+            case NOISE_REDUCTION:
+                return getNoiseReduceMask();
+            case MOVING_AVERAGE:
+                return getAveragedMask();
+            case BLURRED_MOVING_AVERAGE:
+                return getBlurredAverage();
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+    }
+
+    public byte[] getRawMask() {
+        return rawMask;
+    }
+
+    public byte[] getNoiseReduceMask() {
+        return noiseReduceMask;
+    }
+
+    public byte[] getAveragedMask() {
+        return averagedMask;
+    }
+
+    public byte[] getBlurredAverage() {
+        return blurredAverage;
+    }
+}
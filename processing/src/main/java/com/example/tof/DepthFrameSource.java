@@ -0,0 +1,17 @@
+package com.example.tof;
+
+/*  Something that produces DEPTH16 frames and feeds them to a DepthPipeline: the camera on a
+    device, or a recording or synthetic scene (see PlaybackDepthFrameSource) in tests, benchmarks
+    and offline tools. Frames are submitted from the source's own thread.
+ */
+public interface DepthFrameSource {
+    // Frame size, which may only be known once the source has started
+    int getWidth();
+
+    int getHeight();
+
+    // Starts submitting frames to the pipeline, resizing it to the source's frame size first
+    void start(DepthPipeline<?> pipeline);
+
+    void stop();
+}
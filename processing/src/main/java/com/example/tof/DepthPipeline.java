@@ -0,0 +1,547 @@
+package com.example.tof;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*  Runs depth frames through four stages, each on its own thread:
+
+    1. capture: submitFrame copies the samples on the caller's (camera callback) thread
+    2. processing: decode, moving average and blurs in DepthFrameProcessor
+    3. conversion: the FrameConverter, for example building bitmaps
+    4. render: the FrameRenderer
+
+    Stages are joined by FrameHandoffs, so when a stage falls behind the frame waiting for it is
+    replaced by a newer one instead of frames queueing up. Dropped frames are counted per stage.
+
+    Only the DepthStages somebody needs are computed: those with a DepthStageListener subscribed,
+    plus those the converter is asked for with setConvertedStages. Without a converter (headless)
+    the conversion and render stages aren't run at all. A PointCloudProjector can also be set to
+    unproject every frame for a PointCloudListener.
+
+    SharedFrameListeners get a stage's mask as a pooled, reference counted SharedFrame. The mask
+    is copied into the frame once however many listeners there are, and listeners can keep it
+    past the call, so a recorder, analysis and the UI can all share a frame without copies or
+    garbage. When the pool is exhausted the frame is skipped for those listeners.
+
+    Every stage records its latency into PipelineMetrics, along with the time from each frame's
+    timestamp to the end of rendering (or processing, when headless).
+ */
+public class DepthPipeline<T> {
+    // One buffer being filled, one waiting in the handoff and one being consumed
+    private static final int BUFFERS_PER_STAGE = 3;
+    public static final int DEFAULT_SHARED_FRAME_COUNT = 8;
+
+    private final FrameConverter<T> converter;
+    private final FrameRenderer<T> renderer;
+    // Replaced together when the pipeline is resized
+    private volatile DepthFrameProcessor processor;
+    private volatile FrameHandoff<DepthFrame> captured;
+    private volatile FrameHandoff<ProcessedFrame> processed;
+    private volatile FrameHandoff<Converted<T>> converted;
+    private final Object captureLock = new Object();
+    private long captureDroppedCount;
+    // Drops counted by handoffs that have since been replaced
+    private volatile long earlierProcessingDrops;
+    private volatile long earlierConversionDrops;
+    private volatile long earlierRenderDrops;
+    // Only written by the processing thread
+    private volatile long skippedCount;
+    private volatile long lastProcessingNanos;
+    private volatile PipelineMetrics metrics;
+    // Set and cleared together
+    private volatile PointCloudProjector pointCloudProjector;
+    private volatile PointCloudListener pointCloudListener;
+    private List<Thread> threads;
+    // Subscribers per DepthStage ordinal. Replaced as a whole on every change so the processing
+    // thread can walk it without locking or allocating.
+    private volatile DepthStageListener[][] stageListeners;
+    private volatile SharedFrameListener[][] sharedFrameListeners;
+    private volatile int subscribedStages;
+    private volatile SharedFramePool sharedFramePool;
+    private int sharedFrameCount = DEFAULT_SHARED_FRAME_COUNT;
+    private volatile int convertedStages;
+
+    // Headless pipeline, where results are only delivered to DepthStageListeners
+    public DepthPipeline(DepthFrameProcessor processor) {
+        this(processor, null, null);
+    }
+
+    public DepthPipeline(DepthFrameProcessor processor, FrameConverter<T> converter, FrameRenderer<T> renderer) {
+        this.processor = processor;
+        this.converter = converter;
+        this.renderer = renderer;
+        stageListeners = new DepthStageListener[DepthStage.count()][0];
+        sharedFrameListeners = new SharedFrameListener[DepthStage.count()][0];
+        convertedStages = converter != null ? DepthStage.ALL : DepthStage.NONE;
+        setMetrics(new PipelineMetrics());
+        createHandoffs(processor.getWidth(), processor.getHeight());
+    }
+
+    private void createHandoffs(int width, int height) {
+        if (captured != null) {
+            earlierProcessingDrops += captured.getDroppedCount();
+            earlierConversionDrops += processed.getDroppedCount();
+            earlierRenderDrops += converted.getDroppedCount();
+        }
+        List<DepthFrame> depthFrames = new ArrayList<>();
+        List<ProcessedFrame> processedFrames = new ArrayList<>();
+        List<Converted<T>> outputs = new ArrayList<>();
+        for (int i = 0; i < BUFFERS_PER_STAGE; i++) {
+            depthFrames.add(new DepthFrame(width, height));
+            processedFrames.add(new ProcessedFrame(width, height));
+            if (converter != null) {
+                outputs.add(new Converted<>(converter.createOutput()));
+            }
+        }
+        captured = new FrameHandoff<>(depthFrames);
+        processed = new FrameHandoff<>(processedFrames);
+        converted = new FrameHandoff<>(outputs);
+        // Frames still held from the old pool go back to it and are collected with it
+        if (sharedFramePool == null || sharedFramePool.getWidth() != width || sharedFramePool.getHeight() != height) {
+            sharedFramePool = new SharedFramePool(width, height, sharedFrameCount);
+        }
+    }
+
+    public synchronized void start() {
+        if (threads != null) {
+            return;
+        }
+        threads = new ArrayList<>();
+        threads.add(startStage("DepthProcessing", new Runnable() {
+            @Override
+            public void run() {
+                runProcessingStage();
+            }
+        }));
+        if (converter == null) {
+            return;
+        }
+        threads.add(startStage("DepthConversion", new Runnable() {
+            @Override
+            public void run() {
+                runConversionStage();
+            }
+        }));
+        threads.add(startStage("DepthRender", new Runnable() {
+            @Override
+            public void run() {
+                runRenderStage();
+            }
+        }));
+    }
+
+    public synchronized void subscribe(DepthStage stage, DepthStageListener listener) {
+        DepthStageListener[][] listeners = stageListeners.clone();
+        DepthStageListener[] current = listeners[stage.ordinal()];
+        DepthStageListener[] updated = new DepthStageListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners[stage.ordinal()] = updated;
+        setStageListeners(listeners);
+    }
+
+    public synchronized void unsubscribe(DepthStage stage, DepthStageListener listener) {
+        DepthStageListener[][] listeners = stageListeners.clone();
+        DepthStageListener[] current = listeners[stage.ordinal()];
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                DepthStageListener[] updated = new DepthStageListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners[stage.ordinal()] = updated;
+                setStageListeners(listeners);
+                return;
+            }
+        }
+    }
+
+    public synchronized void subscribe(DepthStage stage, SharedFrameListener listener) {
+        SharedFrameListener[][] listeners = sharedFrameListeners.clone();
+        SharedFrameListener[] current = listeners[stage.ordinal()];
+        SharedFrameListener[] updated = new SharedFrameListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners[stage.ordinal()] = updated;
+        sharedFrameListeners = listeners;
+        updateSubscribedStages();
+    }
+
+    public synchronized void unsubscribe(DepthStage stage, SharedFrameListener listener) {
+        SharedFrameListener[][] listeners = sharedFrameListeners.clone();
+        SharedFrameListener[] current = listeners[stage.ordinal()];
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                SharedFrameListener[] updated = new SharedFrameListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners[stage.ordinal()] = updated;
+                sharedFrameListeners = listeners;
+                updateSubscribedStages();
+                return;
+            }
+        }
+    }
+
+    // How many SharedFrames can be in use at once, across all stages. Replaces the pool; frames
+    // listeners still hold go back to the old one.
+    public synchronized void setSharedFrameCount(int count) {
+        sharedFramePool = new SharedFramePool(getWidth(), getHeight(), count);
+        sharedFrameCount = count;
+    }
+
+    // For its counters, e.g. exhaustion and leaks
+    public SharedFramePool getSharedFramePool() {
+        return sharedFramePool;
+    }
+
+    // Unprojects every frame with the projector and hands the points to the listener. Pass nulls to
+    // stop. The projector is replaced by one of the right size on resize.
+    public synchronized void setPointCloud(PointCloudProjector projector, PointCloudListener listener) {
+        if ((projector == null) != (listener == null)) {
+            throw new IllegalArgumentException("Set both a projector and a listener, or neither");
+        }
+        if (projector != null && (projector.getWidth() != getWidth() || projector.getHeight() != getHeight())) {
+            projector = projector.withSize(getWidth(), getHeight());
+        }
+        // Cleared first so the processing thread never sees a listener without its projector
+        pointCloudListener = null;
+        pointCloudProjector = projector;
+        pointCloudListener = listener;
+    }
+
+    public PointCloudProjector getPointCloudProjector() {
+        return pointCloudProjector;
+    }
+
+    // The stages (a DepthStage bit mask) the converter needs. NONE skips conversion and rendering.
+    public void setConvertedStages(int stages) {
+        if (converter == null && stages != DepthStage.NONE) {
+            throw new IllegalStateException("A headless pipeline has no converter");
+        }
+        convertedStages = stages;
+    }
+
+    public int getConvertedStages() {
+        return convertedStages;
+    }
+
+    // Everything that will be computed for the next frame, dependencies included
+    public int getRequiredStages() {
+        return DepthStage.withDependencies(subscribedStages | convertedStages);
+    }
+
+    private void setStageListeners(DepthStageListener[][] listeners) {
+        stageListeners = listeners;
+        updateSubscribedStages();
+    }
+
+    private void updateSubscribedStages() {
+        DepthStageListener[][] listeners = stageListeners;
+        SharedFrameListener[][] sharedListeners = sharedFrameListeners;
+        int stages = DepthStage.NONE;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].length > 0 || sharedListeners[i].length > 0) {
+                stages |= DepthStage.fromOrdinal(i).mask();
+            }
+        }
+        subscribedStages = stages;
+    }
+
+    // Switches to a new frame size, reallocating the processor and every stage buffer. Does
+    // nothing if the size is unchanged. Subscriptions and processing settings carry over, while
+    // frames in flight and the temporal history are dropped.
+    public synchronized void resize(int width, int height) {
+        if (width == processor.getWidth() && height == processor.getHeight()) {
+            return;
+        }
+        boolean running = threads != null;
+        stop();
+        processor = processor.withSize(width, height);
+        processor.setMetrics(metrics);
+        if (pointCloudProjector != null) {
+            pointCloudProjector = pointCloudProjector.withSize(width, height);
+        }
+        createHandoffs(width, height);
+        if (running) {
+            start();
+        }
+    }
+
+    public int getWidth() {
+        return processor.getWidth();
+    }
+
+    public int getHeight() {
+        return processor.getHeight();
+    }
+
+    // Stops the stage threads, waiting for any frame in flight to finish
+    public synchronized void stop() {
+        if (threads == null) {
+            return;
+        }
+        captured.close();
+        processed.close();
+        converted.close();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads = null;
+        // Closed handoffs can't be reused, so get fresh ones ready for the next start
+        createHandoffs(processor.getWidth(), processor.getHeight());
+    }
+
+    // Capture stage. Copies the frame so the caller can release its buffer as soon as this
+    // returns. Returns false if the frame had to be dropped.
+    public boolean submitFrame(ShortBuffer depthBuffer, long timestamp) {
+        long start = System.nanoTime();
+        FrameHandoff<DepthFrame> captured = this.captured;
+        DepthFrame frame = obtainCaptureFrame(captured, depthBuffer.limit());
+        if (frame == null) {
+            return false;
+        }
+        frame.set(depthBuffer, timestamp);
+        captured.publish(frame);
+        metrics.recordSince(PipelineMetrics.Step.CAPTURE, start);
+        return true;
+    }
+
+    public boolean submitFrame(short[] depthSamples, long timestamp) {
+        long start = System.nanoTime();
+        FrameHandoff<DepthFrame> captured = this.captured;
+        DepthFrame frame = obtainCaptureFrame(captured, depthSamples.length);
+        if (frame == null) {
+            return false;
+        }
+        frame.set(depthSamples, timestamp);
+        captured.publish(frame);
+        metrics.recordSince(PipelineMetrics.Step.CAPTURE, start);
+        return true;
+    }
+
+    public DepthFrameProcessor getProcessor() {
+        return processor;
+    }
+
+    // Replaces the metrics every stage records into, for example with one whose clock matches
+    // the frame timestamps
+    public synchronized void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        processor.setMetrics(metrics);
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // The latency of every stage followed by the frame counters
+    public void writeMetricsReport(Appendable out) throws IOException {
+        metrics.writeReport(out);
+        out.append("dropped capture=").append(Long.toString(getCaptureDroppedCount()))
+                .append(" processing=").append(Long.toString(getProcessingDroppedCount()))
+                .append(" conversion=").append(Long.toString(getConversionDroppedCount()))
+                .append(" render=").append(Long.toString(getRenderDroppedCount()))
+                .append('\n');
+        out.append("skipped ").append(Long.toString(getSkippedFrameCount())).append('\n');
+    }
+
+    // How long the processing stage spent on the last frame it processed, listeners included,
+    // e.g. for a CaptureScheduler. 0 before the first.
+    public long getLastProcessingNanos() {
+        return lastProcessingNanos;
+    }
+
+    // Frames lost anywhere in the pipeline
+    public long getDroppedFrameCount() {
+        return getCaptureDroppedCount() + getProcessingDroppedCount() + getConversionDroppedCount()
+                + getRenderDroppedCount();
+    }
+
+    public long getCaptureDroppedCount() {
+        synchronized (captureLock) {
+            return captureDroppedCount;
+        }
+    }
+
+    // Frames captured but replaced before processing got to them
+    public long getProcessingDroppedCount() {
+        return earlierProcessingDrops + captured.getDroppedCount();
+    }
+
+    public long getConversionDroppedCount() {
+        return earlierConversionDrops + processed.getDroppedCount();
+    }
+
+    public long getRenderDroppedCount() {
+        return earlierRenderDrops + converted.getDroppedCount();
+    }
+
+    // Frames processed with nothing subscribed, nothing to convert and no point cloud, so no work
+    // was done
+    public long getSkippedFrameCount() {
+        return skippedCount;
+    }
+
+    // Frames from before a resize don't fit and are dropped
+    private DepthFrame obtainCaptureFrame(FrameHandoff<DepthFrame> captured, int sampleCount) {
+        DepthFrame frame = sampleCount >= getWidth() * getHeight() ? captured.obtain() : null;
+        if (frame == null) {
+            synchronized (captureLock) {
+                captureDroppedCount++;
+            }
+        }
+        return frame;
+    }
+
+    private void runProcessingStage() {
+        // The stage threads are restarted on resize, so they can hold on to the current buffers
+        FrameHandoff<DepthFrame> captured = this.captured;
+        FrameHandoff<ProcessedFrame> processed = this.processed;
+        DepthFrameProcessor processor = this.processor;
+        try {
+            DepthFrame frame;
+            while ((frame = captured.take()) != null) {
+                int converted = convertedStages;
+                int stages = subscribedStages | converted;
+                ProcessedFrame result = processed.obtain();
+                boolean projected = projectPointCloud(frame);
+                if (stages == DepthStage.NONE) {
+                    if (projected) {
+                        metrics.recordEndToEnd(frame.getTimestamp());
+                    } else {
+                        skippedCount++;
+                    }
+                } else if (result != null) {
+                    long start = System.nanoTime();
+                    processor.process(frame.getSamples(), stages);
+                    result.set(processor, frame.getTimestamp());
+                    notifyStageListeners(result);
+                    notifySharedFrameListeners(processor, frame.getTimestamp());
+                    lastProcessingNanos = System.nanoTime() - start;
+                    if (converted != DepthStage.NONE) {
+                        processed.publish(result);
+                        result = null;
+                    } else {
+                        metrics.recordEndToEnd(frame.getTimestamp());
+                    }
+                }
+                if (result != null) {
+                    processed.recycle(result);
+                }
+                captured.recycle(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean projectPointCloud(DepthFrame frame) {
+        PointCloudListener listener = pointCloudListener;
+        PointCloudProjector projector = pointCloudProjector;
+        if (listener == null || projector == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        projector.project(frame.getSamples());
+        metrics.recordSince(PipelineMetrics.Step.POINT_CLOUD, start);
+        listener.onPointCloudAvailable(projector, frame.getTimestamp());
+        return true;
+    }
+
+    private void notifyStageListeners(ProcessedFrame frame) {
+        DepthStageListener[][] listeners = stageListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            DepthStageListener[] stageListeners = listeners[i];
+            for (int j = 0; j < stageListeners.length; j++) {
+                stageListeners[j].onStageAvailable(DepthStage.fromOrdinal(i), frame);
+            }
+        }
+    }
+
+    private void notifySharedFrameListeners(DepthFrameProcessor processor, long timestamp) {
+        SharedFrameListener[][] listeners = sharedFrameListeners;
+        SharedFramePool pool = sharedFramePool;
+        for (int i = 0; i < listeners.length; i++) {
+            SharedFrameListener[] stageListeners = listeners[i];
+            if (stageListeners.length == 0) {
+                continue;
+            }
+            // Pool exhaustion is counted by the pool
+            SharedFrame shared = pool.acquire();
+            if (shared == null) {
+                continue;
+            }
+            DepthStage stage = DepthStage.fromOrdinal(i);
+            shared.set(stage, processor.getMask(stage), timestamp);
+            try {
+                for (int j = 0; j < stageListeners.length; j++) {
+                    stageListeners[j].onFrameAvailable(shared);
+                }
+            } finally {
+                shared.release();
+            }
+        }
+    }
+
+    private void runConversionStage() {
+        FrameHandoff<ProcessedFrame> processed = this.processed;
+        FrameHandoff<Converted<T>> converted = this.converted;
+        try {
+            ProcessedFrame frame;
+            while ((frame = processed.take()) != null) {
+                Converted<T> output = converted.obtain();
+                if (output != null) {
+                    long start = System.nanoTime();
+                    converter.convert(frame, output.output);
+                    output.timestamp = frame.getTimestamp();
+                    metrics.recordSince(PipelineMetrics.Step.CONVERSION, start);
+                    converted.publish(output);
+                }
+                processed.recycle(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runRenderStage() {
+        FrameHandoff<Converted<T>> converted = this.converted;
+        try {
+            Converted<T> output;
+            while ((output = converted.take()) != null) {
+                long start = System.nanoTime();
+                renderer.render(output.output);
+                PipelineMetrics metrics = this.metrics;
+                metrics.recordSince(PipelineMetrics.Step.RENDER, start);
+                metrics.recordEndToEnd(output.timestamp);
+                converted.recycle(output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A converter output and the timestamp of the frame it was converted from
+    private static class Converted<T> {
+        final T output;
+        long timestamp;
+
+        Converted(T output) {
+            this.output = output;
+        }
+    }
+
+    private static Thread startStage(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
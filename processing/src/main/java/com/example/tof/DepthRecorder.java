@@ -0,0 +1,302 @@
+package com.example.tof;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*  Records raw DEPTH16 frames to a file in the chunked format described in DepthRecording.
+
+    submitFrame only copies the frame into one of a few preallocated direct buffers and queues it,
+    so it is cheap enough for the camera callback and never waits: if the writer has fallen so far
+    behind that every buffer is queued, the frame is dropped and counted instead. A writer thread
+    copies queued frames into the file through a MappedByteBuffer over the current chunk. The file
+    grows by one mapped chunk at a time and is trimmed to the last frame on close.
+
+    Every frame is stored with the decoder's range and confidence settings at the time it was
+    written, so a recording can be decoded the way it looked on screen. They are read on the
+    writer thread, so the camera callback never waits on the decoder while its table is rebuilt.
+ */
+public class DepthRecorder {
+    // About four seconds at 30 fps
+    public static final int DEFAULT_FRAMES_PER_CHUNK = 128;
+    // Frames that can wait for the writer before new ones are dropped
+    public static final int DEFAULT_BUFFER_COUNT = 8;
+
+    // Queued by close to stop the writer
+    private static final Slot END = new Slot(0);
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+    private final int framesPerChunk;
+    private final long chunkSize;
+    private final DepthDecoder decoder;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final ArrayBlockingQueue<Slot> queuedSlots;
+    private final Thread writer;
+    private final Object dropLock = new Object();
+    private long droppedCount;
+    private volatile long recordedCount;
+    private volatile IOException writeError;
+    private volatile boolean closed;
+
+    // Only touched by the writer thread
+    private MappedByteBuffer chunk;
+    private int chunkNumber = -1;
+    private int chunkFrameCount;
+
+    public DepthRecorder(File path, int width, int height, DepthDecoder decoder) throws IOException {
+        this(path, width, height, decoder, DEFAULT_FRAMES_PER_CHUNK, DEFAULT_BUFFER_COUNT);
+    }
+
+    public DepthRecorder(File path, int width, int height, DepthDecoder decoder, int framesPerChunk,
+            int bufferCount) throws IOException {
+        if (framesPerChunk < 1 || bufferCount < 1) {
+            throw new IllegalArgumentException("Need at least one frame per chunk and one buffer, were "
+                    + framesPerChunk + " and " + bufferCount);
+        }
+        this.width = width;
+        this.height = height;
+        this.decoder = decoder;
+        this.framesPerChunk = framesPerChunk;
+        frameBytes = width * height * 2;
+        chunkSize = DepthRecording.chunkSize(width, height, framesPerChunk);
+
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        try {
+            file.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(DepthRecording.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(DepthRecording.MAGIC)
+                    .putInt(DepthRecording.VERSION)
+                    .putInt(width)
+                    .putInt(height)
+                    .putInt(framesPerChunk);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        freeSlots = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeSlots.add(new Slot(frameBytes));
+        }
+        // Room for every slot plus END, so queueing never fails
+        queuedSlots = new ArrayBlockingQueue<>(bufferCount + 1);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "DepthRecorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Copies the frame from a DEPTH16 image plane, which is little-endian on every Android device.
+    // The buffer's position and limit are left as they were. Returns false if the frame was
+    // dropped.
+    public boolean submitFrame(ByteBuffer depthPlane, long timestamp) {
+        Slot slot = obtainSlot(depthPlane.capacity() / 2);
+        if (slot == null) {
+            return false;
+        }
+        int position = depthPlane.position();
+        int limit = depthPlane.limit();
+        depthPlane.limit(frameBytes).position(0);
+        slot.data.clear();
+        slot.data.put(depthPlane);
+        depthPlane.limit(limit).position(position);
+        return queue(slot, timestamp);
+    }
+
+    public boolean submitFrame(short[] depthSamples, long timestamp) {
+        Slot slot = obtainSlot(depthSamples.length);
+        if (slot == null) {
+            return false;
+        }
+        ByteBuffer data = slot.data;
+        for (int i = 0; i < frameBytes / 2; i++) {
+            data.putShort(i * 2, depthSamples[i]);
+        }
+        return queue(slot, timestamp);
+    }
+
+    // Frames written to the file so far
+    public long getRecordedFrameCount() {
+        return recordedCount;
+    }
+
+    // Frames that didn't fit, or arrived while the writer was backed up or after a write failed
+    public long getDroppedFrameCount() {
+        synchronized (dropLock) {
+            return droppedCount;
+        }
+    }
+
+    // Writes out every queued frame and closes the file. Throws the first error the writer ran
+    // into, if any.
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queuedSlots.add(END);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (writeError == null) {
+                finishChunk();
+            }
+        } catch (IOException e) {
+            writeError = e;
+        } finally {
+            file.close();
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    private Slot obtainSlot(int sampleCount) {
+        Slot slot = null;
+        if (!closed && writeError == null && sampleCount >= width * height) {
+            slot = freeSlots.poll();
+        }
+        if (slot == null) {
+            synchronized (dropLock) {
+                droppedCount++;
+            }
+        }
+        return slot;
+    }
+
+    // Returns false if close came in while the frame was being copied
+    private boolean queue(Slot slot, long timestamp) {
+        slot.timestamp = timestamp;
+        // Locked against close, so no frame is queued behind END where it would never be written
+        synchronized (this) {
+            if (!closed) {
+                queuedSlots.add(slot);
+                return true;
+            }
+        }
+        freeSlots.add(slot);
+        synchronized (dropLock) {
+            droppedCount++;
+        }
+        return false;
+    }
+
+    private void runWriter() {
+        try {
+            Slot slot;
+            while ((slot = queuedSlots.take()) != END) {
+                try {
+                    if (writeError == null) {
+                        write(slot);
+                    }
+                } catch (IOException e) {
+                    writeError = e;
+                } finally {
+                    freeSlots.add(slot);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Slot slot) throws IOException {
+        if (chunk == null || chunkFrameCount == framesPerChunk) {
+            startChunk(slot.timestamp);
+        }
+        int frameIndex = chunkFrameCount;
+        int frameOffset = DepthRecording.CHUNK_HEADER_SIZE + framesPerChunk * DepthRecording.INDEX_ENTRY_SIZE
+                + frameIndex * frameBytes;
+        chunk.position(frameOffset);
+        slot.data.clear();
+        chunk.put(slot.data);
+
+        int entry = DepthRecording.CHUNK_HEADER_SIZE + frameIndex * DepthRecording.INDEX_ENTRY_SIZE;
+        chunk.putLong(entry, slot.timestamp);
+        chunk.putLong(entry + 8, chunkOffset(chunkNumber) + frameOffset);
+        chunk.putFloat(entry + 16, decoder.getRangeMin());
+        chunk.putFloat(entry + 20, decoder.getRangeMax());
+        chunk.putFloat(entry + 24, decoder.getConfidenceFilter());
+        // The count goes last, so a reader never sees a frame before its data and index entry
+        chunkFrameCount++;
+        chunk.putInt(DepthRecording.CHUNK_FRAME_COUNT_OFFSET, chunkFrameCount);
+        recordedCount++;
+    }
+
+    // Maps the next chunk, which grows the file by a whole chunk
+    private void startChunk(long timestamp) throws IOException {
+        if (chunk != null) {
+            chunk.force();
+        }
+        chunkNumber++;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset(chunkNumber), chunkSize);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunkFrameCount = 0;
+        chunk.putInt(0, DepthRecording.CHUNK_MAGIC);
+        chunk.putInt(4, chunkNumber);
+        chunk.putInt(8, width);
+        chunk.putInt(12, height);
+        chunk.putInt(DepthRecording.CHUNK_FRAME_COUNT_OFFSET, 0);
+        chunk.putLong(24, timestamp);
+        chunk.putFloat(32, decoder.getRangeMin());
+        chunk.putFloat(36, decoder.getRangeMax());
+        chunk.putFloat(40, decoder.getConfidenceFilter());
+    }
+
+    // Flushes the last chunk and cuts off the part of it no frame was written to
+    private void finishChunk() throws IOException {
+        if (chunk == null) {
+            return;
+        }
+        chunk.force();
+        long end = chunkOffset(chunkNumber) + DepthRecording.CHUNK_HEADER_SIZE
+                + (long) framesPerChunk * DepthRecording.INDEX_ENTRY_SIZE + (long) chunkFrameCount * frameBytes;
+        channel.truncate(end);
+        chunk = null;
+    }
+
+    private long chunkOffset(int chunk) {
+        return DepthRecording.FILE_HEADER_SIZE + chunk * chunkSize;
+    }
+
+    // A frame waiting to be written
+    private static class Slot {
+        final ByteBuffer data;
+        long timestamp;
+
+        Slot(int size) {
+            data = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
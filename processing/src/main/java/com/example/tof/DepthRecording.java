@@ -0,0 +1,163 @@
+package com.example.tof;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/*  Reads back a file written by DepthRecorder.
+
+    The file starts with a header, followed by chunks that all have the same size:
+
+        file header   magic, version, width, height, frames per chunk
+        chunk         header: magic, chunk number, width, height, frame count, timestamp of the
+                      first frame and the decoder settings it was recorded with
+                      index: per frame its timestamp, file offset and decoder settings
+                      frames: raw little-endian DEPTH16 samples, width * height each
+
+    Since every chunk is the same size, finding a frame takes one division to get its chunk and
+    one read of its index entry, however long the recording is. Only the last chunk can be
+    partially filled. Everything is little-endian.
+ */
+public class DepthRecording implements Closeable {
+    static final int MAGIC = 0x44464F54; // "TOFD"
+    static final int CHUNK_MAGIC = 0x4B4E4843; // "CHNK"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 32;
+    static final int CHUNK_HEADER_SIZE = 48;
+    static final int INDEX_ENTRY_SIZE = 32;
+    // Offset of the frame count within the chunk header
+    static final int CHUNK_FRAME_COUNT_OFFSET = 16;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int framesPerChunk;
+    private final long chunkSize;
+    private final int frameCount;
+    // Reused for every read, so reading frames allocates nothing
+    private final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer frame;
+    private final ShortBuffer frameSamples;
+
+    public DepthRecording(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a depth recording");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported depth recording version " + header.getInt(4));
+            }
+            width = header.getInt(8);
+            height = header.getInt(12);
+            framesPerChunk = header.getInt(16);
+            chunkSize = chunkSize(width, height, framesPerChunk);
+
+            long chunkCount = (channel.size() - FILE_HEADER_SIZE + chunkSize - 1) / chunkSize;
+            if (chunkCount > 0) {
+                ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(chunkHeader, chunkOffset(chunkCount - 1));
+                if (chunkHeader.getInt(0) != CHUNK_MAGIC) {
+                    throw new IOException("Chunk " + (chunkCount - 1) + " of " + path + " is corrupt");
+                }
+                frameCount = (int) ((chunkCount - 1) * framesPerChunk + chunkHeader.getInt(CHUNK_FRAME_COUNT_OFFSET));
+            } else {
+                frameCount = 0;
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        frame = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.LITTLE_ENDIAN);
+        frameSamples = frame.asShortBuffer();
+    }
+
+    static long chunkSize(int width, int height, int framesPerChunk) {
+        return CHUNK_HEADER_SIZE + (long) framesPerChunk * (INDEX_ENTRY_SIZE + width * height * 2L);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFramesPerChunk() {
+        return framesPerChunk;
+    }
+
+    // Sensor timestamp in nanoseconds
+    public synchronized long getTimestamp(int index) throws IOException {
+        readEntry(index);
+        return entry.getLong(0);
+    }
+
+    // The decoder settings the frame was recorded with
+    public synchronized float getRangeMin(int index) throws IOException {
+        readEntry(index);
+        return entry.getFloat(16);
+    }
+
+    public synchronized float getRangeMax(int index) throws IOException {
+        readEntry(index);
+        return entry.getFloat(20);
+    }
+
+    public synchronized float getConfidenceFilter(int index) throws IOException {
+        readEntry(index);
+        return entry.getFloat(24);
+    }
+
+    // Reads the samples of a frame and returns its timestamp
+    public synchronized long readFrame(int index, short[] samples) throws IOException {
+        readEntry(index);
+        readFully(frame, entry.getLong(8));
+        frameSamples.clear();
+        frameSamples.get(samples, 0, width * height);
+        return entry.getLong(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long chunkOffset(long chunk) {
+        return FILE_HEADER_SIZE + chunk * chunkSize;
+    }
+
+    private void readEntry(int index) throws IOException {
+        if (index < 0 || index >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+        int chunk = index / framesPerChunk;
+        int slot = index % framesPerChunk;
+        readFully(entry, chunkOffset(chunk) + CHUNK_HEADER_SIZE + (long) slot * INDEX_ENTRY_SIZE);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Depth recording ends at " + (position + buffer.position()));
+            }
+        }
+    }
+}
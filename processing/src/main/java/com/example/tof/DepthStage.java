@@ -0,0 +1,53 @@
+package com.example.tof;
+
+/*  The named outputs of DepthFrameProcessor. A stage can only be computed after the stage it
+    depends on, so asking for a stage also computes its dependencies.
+
+    Sets of stages are passed around as int bit masks (see mask()) so checking them per frame
+    doesn't allocate.
+ */
+public enum DepthStage {
+    RAW(null),
+    NOISE_REDUCTION(RAW),
+    MOVING_AVERAGE(RAW),
+    BLURRED_MOVING_AVERAGE(MOVING_AVERAGE);
+
+    private static final DepthStage[] STAGES = values();
+    public static final int NONE = 0;
+    public static final int ALL = (1 << STAGES.length) - 1;
+
+    private final DepthStage dependency;
+
+    DepthStage(DepthStage dependency) {
+        this.dependency = dependency;
+    }
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public boolean isIn(int stages) {
+        return (stages & mask()) != 0;
+    }
+
+    public static DepthStage fromOrdinal(int ordinal) {
+        return STAGES[ordinal];
+    }
+
+    public static int count() {
+        return STAGES.length;
+    }
+
+    // Adds every stage the given stages depend on
+    public static int withDependencies(int stages) {
+        // Dependencies are declared before the stages that use them, so one pass from the last
+        // stage to the first picks up chains of dependencies
+        for (int i = STAGES.length - 1; i >= 0; i--) {
+            DepthStage stage = STAGES[i];
+            if (stage.isIn(stages) && stage.dependency != null) {
+                stages |= stage.dependency.mask();
+            }
+        }
+        return stages;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tof;
+
+// Receives the result of a subscribed stage on the pipeline's processing thread. The frame is only
+// valid for the duration of the call, so copy out anything that is needed later.
+public interface DepthStageListener {
+    void onStageAvailable(DepthStage stage, ProcessedFrame frame);
+}
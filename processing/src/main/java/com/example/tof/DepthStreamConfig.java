@@ -0,0 +1,40 @@
+package com.example.tof;
+
+// The depth stream size and frame rate range chosen for a camera
+public class DepthStreamConfig {
+    // What the S10 5G front depth camera delivers, used when nothing better is known
+    public static final DepthStreamConfig DEFAULT = new DepthStreamConfig(240, 180, 15, 30);
+
+    private final int width;
+    private final int height;
+    private final int minFps;
+    private final int maxFps;
+
+    public DepthStreamConfig(int width, int height, int minFps, int maxFps) {
+        this.width = width;
+        this.height = height;
+        this.minFps = minFps;
+        this.maxFps = maxFps;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMinFps() {
+        return minFps;
+    }
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " @ " + minFps + "-" + maxFps + " fps";
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.tof;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*  Decodes the messages DepthStreamEncoder produces back into DEPTH16 frames.
+
+    A message is little-endian:
+
+        int    length of the rest of the message
+        byte   KEYFRAME or DELTA
+        int    width
+        int    height
+        long   timestamp
+        tokens covering every pixel in order
+
+    Each token is an unsigned LEB128 varint whose low two bits are its kind and the rest its value:
+
+        SAMPLE          one pixel, the zigzag encoded difference from its reference
+        INVALID_RUN     that many zero confidence pixels
+        UNCHANGED_RUN   that many pixels equal to their reference
+
+    The reference of a pixel is the pixel before it in a keyframe (0 for the first one) and the
+    pixel's value in the previous frame in a delta frame, so a decoder can only start at a
+    keyframe. Zero confidence pixels all come out as INVALID_SAMPLE: their range is dropped,
+    since no decoder setting shows it anyway.
+ */
+public class DepthStreamDecoder {
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+    // Length, type, width, height and timestamp
+    public static final int MESSAGE_HEADER_SIZE = 4 + 1 + 4 + 4 + 8;
+    // Zero confidence and no range
+    public static final short INVALID_SAMPLE = 1 << 13;
+
+    static final int SAMPLE = 0;
+    static final int INVALID_RUN = 1;
+    static final int UNCHANGED_RUN = 2;
+    static final int KIND_BITS = 2;
+
+    private int width;
+    private int height;
+    private long timestamp;
+    private boolean keyframe;
+    // The last decoded frame, the reference for the next delta frame
+    private short[] previous = new short[0];
+    private boolean haveKeyframe;
+
+    // The largest message a frame of this size can take, whatever its contents
+    public static int maxMessageSize(int width, int height) {
+        // A SAMPLE token is at most 19 bits, and a run token never takes more bytes than pixels
+        return MESSAGE_HEADER_SIZE + 3 * width * height;
+    }
+
+    // Decodes the message starting at the buffer's position, leaving the position after it.
+    // samples must hold at least width * height values. Returns the frame's timestamp.
+    public long decode(ByteBuffer message, short[] samples) throws IOException {
+        ByteOrder order = message.order();
+        message.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int length = message.getInt();
+            if (length < MESSAGE_HEADER_SIZE - 4 || length > message.remaining()) {
+                throw new IOException("Bad message length " + length);
+            }
+            int end = message.position() + length;
+            byte type = message.get();
+            int width = message.getInt();
+            int height = message.getInt();
+            long timestamp = message.getLong();
+            if (type != KEYFRAME && type != DELTA) {
+                throw new IOException("Unknown message type " + type);
+            }
+            if (width <= 0 || height <= 0 || samples.length < width * height) {
+                throw new IOException("Frame of " + width + "x" + height + " doesn't fit " + samples.length + " samples");
+            }
+            if (type == DELTA && (!haveKeyframe || width != this.width || height != this.height)) {
+                throw new IOException("Delta frame without a keyframe to apply it to");
+            }
+            if (previous.length != width * height) {
+                previous = new short[width * height];
+            }
+            decodeTokens(message, end, type == KEYFRAME, width * height);
+            if (message.position() != end) {
+                throw new IOException("Message is " + (end - message.position()) + " bytes longer than its frame");
+            }
+            System.arraycopy(previous, 0, samples, 0, width * height);
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+            keyframe = type == KEYFRAME;
+            haveKeyframe = true;
+            return timestamp;
+        } finally {
+            message.order(order);
+        }
+    }
+
+    private void decodeTokens(ByteBuffer message, int end, boolean keyframe, int size) throws IOException {
+        short[] previous = this.previous;
+        int index = 0;
+        while (index < size) {
+            if (message.position() >= end) {
+                throw new IOException("Message ends after " + index + " of " + size + " pixels");
+            }
+            int token = readVarint(message, end);
+            int value = token >>> KIND_BITS;
+            switch (token & ((1 << KIND_BITS) - 1)) {
+                case SAMPLE: {
+                    int reference = keyframe ? (index > 0 ? previous[index - 1] & 0xFFFF : 0) : previous[index] & 0xFFFF;
+                    previous[index++] = (short) (reference + ((value >>> 1) ^ -(value & 1)));
+                    break;
+                }
+                case INVALID_RUN:
+                    checkRun(index, value, size);
+                    for (int i = 0; i < value; i++) {
+                        previous[index++] = INVALID_SAMPLE;
+                    }
+                    break;
+                case UNCHANGED_RUN:
+                    checkRun(index, value, size);
+                    if (keyframe) {
+                        short reference = index > 0 ? previous[index - 1] : 0;
+                        for (int i = 0; i < value; i++) {
+                            previous[index++] = reference;
+                        }
+                    } else {
+                        index += value;
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown token " + token);
+            }
+        }
+    }
+
+    private static void checkRun(int index, int run, int size) throws IOException {
+        if (run <= 0 || run > size - index) {
+            throw new IOException("Run of " + run + " at pixel " + index + " of " + size);
+        }
+    }
+
+    private static int readVarint(ByteBuffer in, int end) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (in.position() >= end) {
+                throw new IOException("Message ends inside a token");
+            }
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Token longer than 32 bits");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Of the last decoded frame
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    // Forgets the previous frame, e.g. for a new connection, so decoding starts at a keyframe again
+    public void reset() {
+        haveKeyframe = false;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.tof;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/*  Compresses DEPTH16 frames for streaming, in the format described in DepthStreamDecoder.
+
+    Each frame is coded as the difference from the one before, so the static parts of a scene
+    cost a run token and the rest mostly one or two bytes of zigzag varint per pixel. Zero
+    confidence areas, which are large around edges and dark surfaces, are run-length coded. A
+    keyframe, coded against the pixel to its left instead, goes out every keyframeInterval frames
+    so a receiver that joins late or lost its state can start over.
+
+    The encoder keeps its own copy of the previous frame, exactly as the decoder will see it, and
+    allocates nothing per frame.
+ */
+public class DepthStreamEncoder {
+    // One a second at 30 fps
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+
+    private final int width;
+    private final int height;
+    // The last encoded frame as the decoder will have it
+    private final short[] previous;
+    private volatile int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+    private volatile boolean keyframeRequested = true;
+    private int framesSinceKeyframe;
+
+    public DepthStreamEncoder(int width, int height) {
+        this.width = width;
+        this.height = height;
+        previous = new short[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // 1 makes every frame a keyframe
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1, was " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    // Makes the next frame a keyframe
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    // Appends the message for a frame at the buffer's position, which needs
+    // DepthStreamDecoder.maxMessageSize bytes free, and returns its size. Samples are read with
+    // absolute gets from 0, so the buffer's position is left alone.
+    public int encode(ShortBuffer samples, long timestamp, ByteBuffer out) {
+        boolean keyframe = keyframeRequested || framesSinceKeyframe + 1 >= keyframeInterval;
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        int start = out.position();
+        out.putInt(0)
+                .put(keyframe ? DepthStreamDecoder.KEYFRAME : DepthStreamDecoder.DELTA)
+                .putInt(width)
+                .putInt(height)
+                .putLong(timestamp);
+
+        short[] previous = this.previous;
+        int size = width * height;
+        int index = 0;
+        while (index < size) {
+            int sample = canonical(samples.get(index));
+            int reference = reference(keyframe, index);
+            int run = index + 1;
+            if (sample == DepthStreamDecoder.INVALID_SAMPLE) {
+                while (run < size && canonical(samples.get(run)) == DepthStreamDecoder.INVALID_SAMPLE) {
+                    run++;
+                }
+                for (int i = index; i < run; i++) {
+                    previous[i] = DepthStreamDecoder.INVALID_SAMPLE;
+                }
+                writeToken(out, DepthStreamDecoder.INVALID_RUN, run - index);
+            } else if (sample == reference) {
+                // In a keyframe every pixel of the run has the same reference, the one before it
+                while (run < size) {
+                    int next = canonical(samples.get(run));
+                    if (next == DepthStreamDecoder.INVALID_SAMPLE || next != (keyframe ? sample : previous[run] & 0xFFFF)) {
+                        break;
+                    }
+                    run++;
+                }
+                if (keyframe) {
+                    for (int i = index; i < run; i++) {
+                        previous[i] = (short) sample;
+                    }
+                }
+                writeToken(out, DepthStreamDecoder.UNCHANGED_RUN, run - index);
+            } else {
+                int difference = sample - reference;
+                previous[index] = (short) sample;
+                writeToken(out, DepthStreamDecoder.SAMPLE, (difference << 1) ^ (difference >> 31));
+            }
+            index = run;
+        }
+
+        int length = out.position() - start;
+        out.putInt(start, length - 4);
+        out.order(order);
+        if (keyframe) {
+            keyframeRequested = false;
+            framesSinceKeyframe = 0;
+        } else {
+            framesSinceKeyframe++;
+        }
+        return length;
+    }
+
+    // See DepthStreamDecoder. In a keyframe previous already holds the pixels before index.
+    private int reference(boolean keyframe, int index) {
+        if (keyframe) {
+            return index > 0 ? previous[index - 1] & 0xFFFF : 0;
+        }
+        return previous[index] & 0xFFFF;
+    }
+
+    // Zero confidence samples all become the same value, so they can be run-length coded
+    private static int canonical(short sample) {
+        int value = sample & 0xFFFF;
+        return (value >>> 13) == 1 ? DepthStreamDecoder.INVALID_SAMPLE : value;
+    }
+
+    private static void writeToken(ByteBuffer out, int kind, int value) {
+        int token = (value << DepthStreamDecoder.KIND_BITS) | kind;
+        while ((token & ~0x7F) != 0) {
+            out.put((byte) ((token & 0x7F) | 0x80));
+            token >>>= 7;
+        }
+        out.put((byte) token);
+    }
+}
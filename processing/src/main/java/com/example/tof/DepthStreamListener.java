@@ -0,0 +1,7 @@
+package com.example.tof;
+
+// Receives frames decoded by a DepthStreamReceiver on its thread. The samples are reused for the
+// next frame, so copy out anything that is needed later.
+public interface DepthStreamListener {
+    void onFrameReceived(short[] samples, int width, int height, long timestamp);
+}
@@ -0,0 +1,152 @@
+package com.example.tof;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/*  The receiving end of a DepthStreamSender: accepts one connection at a time, decodes its
+    frames and hands them to a DepthStreamListener.
+
+    By default it listens on the loopback interface on a free port, so a stream can be checked
+    end to end in tests without a network. A companion process can use it on a fixed port
+    instead.
+ */
+public class DepthStreamReceiver {
+    private final DepthStreamListener listener;
+    private final ServerSocketChannel server;
+    private final Thread receiver;
+    private volatile SocketChannel connection;
+    private volatile long receivedCount;
+    private volatile long receivedBytes;
+    private volatile IOException receiveError;
+    private volatile boolean closed;
+
+    // Listens on a free loopback port, see getAddress
+    public DepthStreamReceiver(DepthStreamListener listener) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), listener);
+    }
+
+    public DepthStreamReceiver(InetSocketAddress address, DepthStreamListener listener) throws IOException {
+        this.listener = listener;
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runReceiver();
+            }
+        }, "DepthStreamReceiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    // Where senders should connect to
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    public long getReceivedFrameCount() {
+        return receivedCount;
+    }
+
+    // Encoded bytes, headers included
+    public long getReceivedByteCount() {
+        return receivedBytes;
+    }
+
+    // The last error a connection ended with, if any. The receiver keeps accepting new ones.
+    public IOException getReceiveError() {
+        return receiveError;
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        SocketChannel connection = this.connection;
+        if (connection != null) {
+            connection.close();
+        }
+        try {
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runReceiver() {
+        DepthStreamDecoder decoder = new DepthStreamDecoder();
+        ByteBuffer message = ByteBuffer.allocate(0);
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[0];
+        while (!closed) {
+            try (SocketChannel connection = server.accept()) {
+                this.connection = connection;
+                decoder.reset();
+                while (true) {
+                    length.clear();
+                    if (!readFully(connection, length)) {
+                        break;
+                    }
+                    int size = 4 + length.getInt(0);
+                    if (size < DepthStreamDecoder.MESSAGE_HEADER_SIZE) {
+                        throw new IOException("Bad message length " + size);
+                    }
+                    if (message.capacity() < size) {
+                        message = ByteBuffer.allocate(size);
+                    }
+                    message.clear();
+                    length.flip();
+                    message.put(length);
+                    message.limit(size);
+                    if (!readFully(connection, message)) {
+                        throw new EOFException("Connection closed inside a message");
+                    }
+                    message.flip();
+                    int width = message.order(ByteOrder.LITTLE_ENDIAN).getInt(5);
+                    int height = message.getInt(9);
+                    if (samples.length < width * height) {
+                        samples = new short[width * height];
+                    }
+                    long timestamp = decoder.decode(message, samples);
+                    receivedBytes += size;
+                    receivedCount++;
+                    listener.onFrameReceived(samples, width, height, timestamp);
+                }
+            } catch (ClosedChannelException e) {
+                // Closed by close
+            } catch (IOException e) {
+                if (!closed) {
+                    receiveError = e;
+                }
+            } finally {
+                connection = null;
+            }
+        }
+    }
+
+    // Returns false if the connection ended before the first byte
+    private static boolean readFully(SocketChannel connection, ByteBuffer buffer) throws IOException {
+        boolean started = false;
+        while (buffer.hasRemaining()) {
+            if (connection.read(buffer) < 0) {
+                if (started) {
+                    throw new EOFException("Connection closed inside a message");
+                }
+                return false;
+            }
+            started = true;
+        }
+        return true;
+    }
+}
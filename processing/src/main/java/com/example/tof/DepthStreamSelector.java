@@ -0,0 +1,127 @@
+package com.example.tof;
+
+import java.util.List;
+
+/*  Picks a DEPTH16 stream size and frame rate range from what a camera offers.
+
+    Camera gathers the sizes from the StreamConfigurationMap and the AE target fps ranges from
+    the camera characteristics; the choice itself is plain Java so it can be unit tested.
+ */
+public class DepthStreamSelector {
+    public enum Policy {
+        // Most pixels, then highest frame rate
+        MAX_RESOLUTION,
+        // Pixel count nearest the target, then highest frame rate
+        CLOSEST_TO_TARGET_PIXELS,
+        // Highest frame rate, then most pixels
+        HIGHEST_FPS
+    }
+
+    // A size the camera can output and the highest frame rate it can be delivered at, or 0 when
+    // the camera doesn't report a minimum frame duration for it
+    public static class StreamSize {
+        private final int width;
+        private final int height;
+        private final int maxFps;
+
+        public StreamSize(int width, int height, int maxFps) {
+            this.width = width;
+            this.height = height;
+            this.maxFps = maxFps;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getMaxFps() {
+            return maxFps;
+        }
+
+        int getPixels() {
+            return width * height;
+        }
+    }
+
+    private final Policy policy;
+    private final int targetPixels;
+
+    public DepthStreamSelector(Policy policy) {
+        this(policy, DepthStreamConfig.DEFAULT.getWidth() * DepthStreamConfig.DEFAULT.getHeight());
+    }
+
+    // targetPixels is only used by CLOSEST_TO_TARGET_PIXELS
+    public DepthStreamSelector(Policy policy, int targetPixels) {
+        this.policy = policy;
+        this.targetPixels = targetPixels;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    // fpsRanges holds {lower, upper} pairs. Returns null if there are no sizes to choose from.
+    public DepthStreamConfig select(List<StreamSize> sizes, List<int[]> fpsRanges) {
+        StreamSize best = null;
+        for (StreamSize size : sizes) {
+            if (best == null || isBetter(size, best)) {
+                best = size;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        int[] fpsRange = selectFpsRange(fpsRanges, best.getMaxFps());
+        return new DepthStreamConfig(best.getWidth(), best.getHeight(), fpsRange[0], fpsRange[1]);
+    }
+
+    private boolean isBetter(StreamSize candidate, StreamSize best) {
+        switch (policy) {
+            case MAX_RESOLUTION:
+                if (candidate.getPixels() != best.getPixels()) {
+                    return candidate.getPixels() > best.getPixels();
+                }
+                return candidate.getMaxFps() > best.getMaxFps();
+            case CLOSEST_TO_TARGET_PIXELS:
+                long candidateDistance = Math.abs((long) candidate.getPixels() - targetPixels);
+                long bestDistance = Math.abs((long) best.getPixels() - targetPixels);
+                if (candidateDistance != bestDistance) {
+                    return candidateDistance < bestDistance;
+                }
+                return candidate.getMaxFps() > best.getMaxFps();
+            case HIGHEST_FPS:
+                if (candidate.getMaxFps() != best.getMaxFps()) {
+                    return candidate.getMaxFps() > best.getMaxFps();
+                }
+                return candidate.getPixels() > best.getPixels();
+            default:
+                throw new IllegalStateException("Unknown policy " + policy);
+        }
+    }
+
+    // The range with the highest upper bound the stream can keep up with, preferring a lower
+    // lower bound so auto exposure has room to slow down in the dark. A maxFps of 0 or less is
+    // unknown and doesn't rule out any range.
+    static int[] selectFpsRange(List<int[]> fpsRanges, int maxFps) {
+        int[] best = null;
+        for (int[] range : fpsRanges) {
+            if (maxFps > 0 && range[1] > maxFps) {
+                continue;
+            }
+            if (best == null || range[1] > best[1] || (range[1] == best[1] && range[0] < best[0])) {
+                best = range;
+            }
+        }
+        if (best == null && maxFps <= 0) {
+            return new int[] {DepthStreamConfig.DEFAULT.getMinFps(), DepthStreamConfig.DEFAULT.getMaxFps()};
+        }
+        if (best == null) {
+            return new int[] {Math.min(DepthStreamConfig.DEFAULT.getMinFps(), maxFps), maxFps};
+        }
+        return best;
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.tof;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*  Streams raw DEPTH16 frames to another process over TCP, compressed by DepthStreamEncoder.
+
+    Like DepthRecorder, submitFrame only copies the frame into one of a few preallocated direct
+    buffers, so it is cheap enough for the camera callback and never blocks. When every buffer
+    is queued the oldest queued frame is dropped to make room, so a slow receiver gets the newest
+    frames rather than a growing delay.
+
+    Frames are encoded on the sender thread just before they go out, so dropping a frame never
+    breaks the chain of delta frames the receiver sees. The sender thread writes to a
+    non-blocking SocketChannel, waiting on a Selector while the socket's send buffer is full, and
+    reuses one direct buffer for every encoded frame.
+ */
+public class DepthStreamSender {
+    // Frames that can wait for the sender before the oldest is dropped
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+    // How long close waits for queued frames to go out before giving up on them
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    // Queued by close to stop the sender
+    private static final Slot END = new Slot(0);
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+    private final DepthStreamEncoder encoder;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final ArrayBlockingQueue<Slot> queuedSlots;
+    private final ByteBuffer message;
+    private final Thread sender;
+    private final Object dropLock = new Object();
+    private long droppedCount;
+    private volatile long sentCount;
+    private volatile long sentBytes;
+    private volatile IOException sendError;
+    private volatile boolean closed;
+    private volatile boolean aborted;
+
+    public DepthStreamSender(InetSocketAddress address, int width, int height) throws IOException {
+        this(address, width, height, DEFAULT_BUFFER_COUNT);
+    }
+
+    // Connects in the background; connection errors are reported by close
+    public DepthStreamSender(InetSocketAddress address, int width, int height, int bufferCount) throws IOException {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Need at least one buffer, was " + bufferCount);
+        }
+        this.width = width;
+        this.height = height;
+        frameBytes = width * height * 2;
+        encoder = new DepthStreamEncoder(width, height);
+        message = ByteBuffer.allocateDirect(DepthStreamDecoder.maxMessageSize(width, height));
+
+        selector = Selector.open();
+        channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT);
+        } catch (IOException e) {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+
+        freeSlots = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeSlots.add(new Slot(frameBytes));
+        }
+        // Room for every slot plus END, so queueing never fails
+        queuedSlots = new ArrayBlockingQueue<>(bufferCount + 1);
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSender();
+            }
+        }, "DepthStreamSender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Keyframe interval and requests
+    public DepthStreamEncoder getEncoder() {
+        return encoder;
+    }
+
+    // Copies the frame from a DEPTH16 image plane, which is little-endian on every Android device.
+    // The buffer's position and limit are left as they were. Returns false if the frame was
+    // dropped.
+    public boolean submitFrame(ByteBuffer depthPlane, long timestamp) {
+        Slot slot = obtainSlot(depthPlane.capacity() / 2);
+        if (slot == null) {
+            return false;
+        }
+        int position = depthPlane.position();
+        int limit = depthPlane.limit();
+        depthPlane.limit(frameBytes).position(0);
+        slot.data.clear();
+        slot.data.put(depthPlane);
+        depthPlane.limit(limit).position(position);
+        return queue(slot, timestamp);
+    }
+
+    public boolean submitFrame(short[] depthSamples, long timestamp) {
+        Slot slot = obtainSlot(depthSamples.length);
+        if (slot == null) {
+            return false;
+        }
+        ShortBuffer samples = slot.samples;
+        for (int i = 0; i < frameBytes / 2; i++) {
+            samples.put(i, depthSamples[i]);
+        }
+        return queue(slot, timestamp);
+    }
+
+    // Frames written to the socket so far
+    public long getSentFrameCount() {
+        return sentCount;
+    }
+
+    // Encoded bytes written to the socket so far
+    public long getSentByteCount() {
+        return sentBytes;
+    }
+
+    // Frames that didn't fit, were pushed out of the queue by newer ones, or arrived after the
+    // connection failed
+    public long getDroppedFrameCount() {
+        synchronized (dropLock) {
+            return droppedCount;
+        }
+    }
+
+    // Sends the queued frames, giving up on them if the receiver doesn't take them in time, and
+    // closes the connection. Throws the first error the sender ran into, if any.
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queuedSlots.add(END);
+        }
+        try {
+            sender.join(CLOSE_TIMEOUT_MILLIS);
+            if (sender.isAlive()) {
+                aborted = true;
+                selector.wakeup();
+                sender.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+            selector.close();
+        }
+        if (sendError != null) {
+            throw sendError;
+        }
+    }
+
+    private Slot obtainSlot(int sampleCount) {
+        Slot slot = null;
+        boolean replaced = false;
+        // Locked against close, so END is never taken out of the queue
+        synchronized (this) {
+            if (!closed && sendError == null && sampleCount >= width * height) {
+                slot = freeSlots.poll();
+                if (slot == null) {
+                    slot = queuedSlots.poll();
+                    replaced = slot != null;
+                }
+            }
+        }
+        if (slot == null || replaced) {
+            synchronized (dropLock) {
+                droppedCount++;
+            }
+        }
+        return slot;
+    }
+
+    // Returns false if close came in while the frame was being copied
+    private boolean queue(Slot slot, long timestamp) {
+        slot.timestamp = timestamp;
+        // Locked against close, so no frame is queued behind END where it would never be sent
+        synchronized (this) {
+            if (!closed) {
+                queuedSlots.add(slot);
+                return true;
+            }
+        }
+        freeSlots.add(slot);
+        synchronized (dropLock) {
+            droppedCount++;
+        }
+        return false;
+    }
+
+    private void runSender() {
+        try {
+            finishConnect();
+            Slot slot;
+            while ((slot = queuedSlots.take()) != END) {
+                message.clear();
+                encoder.encode(slot.samples, slot.timestamp, message);
+                freeSlots.add(slot);
+                message.flip();
+                write(message);
+                sentBytes += message.limit();
+                sentCount++;
+            }
+        } catch (IOException e) {
+            if (!aborted) {
+                sendError = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        while (!channel.finishConnect()) {
+            selector.select();
+            selector.selectedKeys().clear();
+            if (aborted) {
+                throw new IOException("Closed before connecting");
+            }
+        }
+        channel.keyFor(selector).interestOps(0);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) > 0) {
+                continue;
+            }
+            // The socket's send buffer is full, wait for the receiver to catch up
+            key.interestOps(SelectionKey.OP_WRITE);
+            selector.select();
+            key.interestOps(0);
+            selector.selectedKeys().clear();
+            if (aborted) {
+                throw new IOException("Closed while sending");
+            }
+        }
+    }
+
+    // A frame waiting to be sent
+    private static class Slot {
+        final ByteBuffer data;
+        final ShortBuffer samples;
+        long timestamp;
+
+        Slot(int size) {
+            data = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+            samples = data.asShortBuffer();
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.example.tof;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*  This is a java port of http://blog.ivank.net/fastest-gaussian-blur.html.
+
+    Besides int[] there are byte[] versions for masks stored compactly as unsigned 0-255 values,
+    which DepthFrameProcessor uses. Dividing a box sum by the box width is done with a fixed
+    point reciprocal instead of a float multiply and Math.round. The box width is odd, so a sum
+    is never exactly halfway between two results, and for 0-255 masks and sensible radii the
+    rounding matches the float version exactly.
+ */
+
+public class FastBlur {
+    // Below this many pixels the parallel versions just run the serial blur, since handing rows
+    // out to other threads costs more than it saves. Measured with FastBlurBenchmark.
+    public static final int MIN_PARALLEL_PIXELS = 320 * 240;
+
+    // Rows (or columns) per parallel task are kept at least this big
+    private static final int MIN_LINES_PER_TASK = 16;
+
+    // Box sums are divided by multiplying with round(2^32 / box width) and shifting back
+    private static final int RECIPROCAL_SHIFT = 32;
+    private static final long RECIPROCAL_HALF = 1L << (RECIPROCAL_SHIFT - 1);
+
+    private static ForkJoinPool parallelPool;
+
+    // Fast Gaussian blur
+    public static int[] gaussBlur(int[] input, int width, int height, int radius) {
+        // The input doubles as scratch space, as it always has for these allocating versions
+        int[] output = input.clone();
+        gaussBlur(output, input, width, height, radius);
+        return output;
+    }
+
+    // This is a fast box blur
+    public static int[] boxBlur(int[] input, int width, int height, int radius) {
+        int[] output = input.clone();
+        boxBlur(output, input, width, height, radius);
+        return output;
+    }
+
+    // Allocation free versions. The result is written to output and scratch must be a separate
+    // array of the same size. Input and output may be the same array for an in-place blur.
+    public static void gaussBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius) {
+        boxBlurFast(input, output, scratch, width, height, (boxForGauss(radius, 3, 0) - 1) / 2);
+        boxBlurFast(output, output, scratch, width, height, (boxForGauss(radius, 3, 1) - 1) / 2);
+        boxBlurFast(output, output, scratch, width, height, (boxForGauss(radius, 3, 2) - 1) / 2);
+    }
+
+    public static void boxBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius) {
+        boxBlurFast(input, output, scratch, width, height, boxForGauss(radius, 1, 0));
+    }
+
+    public static void gaussBlur(int[] data, int[] scratch, int width, int height, int radius) {
+        gaussBlur(data, data, scratch, width, height, radius);
+    }
+
+    public static void boxBlur(int[] data, int[] scratch, int width, int height, int radius) {
+        boxBlur(data, data, scratch, width, height, radius);
+    }
+
+    // Compact versions, with the same rules for input, output and scratch
+    public static void gaussBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius) {
+        boxBlurFast(input, output, scratch, width, height, (boxForGauss(radius, 3, 0) - 1) / 2);
+        boxBlurFast(output, output, scratch, width, height, (boxForGauss(radius, 3, 1) - 1) / 2);
+        boxBlurFast(output, output, scratch, width, height, (boxForGauss(radius, 3, 2) - 1) / 2);
+    }
+
+    public static void boxBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius) {
+        boxBlurFast(input, output, scratch, width, height, boxForGauss(radius, 1, 0));
+    }
+
+    // Parallel versions. Rows in the horizontal pass and columns in the vertical pass are
+    // independent, so each pass is split into bands run on the pool. The result is identical to
+    // the serial blur.
+    public static void gaussBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius,
+                                 ForkJoinPool pool) {
+        gaussBlur(input, output, scratch, width, height, radius, pool, MIN_PARALLEL_PIXELS);
+    }
+
+    public static void boxBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius,
+                               ForkJoinPool pool) {
+        boxBlur(input, output, scratch, width, height, radius, pool, MIN_PARALLEL_PIXELS);
+    }
+
+    public static void gaussBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius,
+                                 ForkJoinPool pool, int minParallelPixels) {
+        if (width * height < minParallelPixels) {
+            gaussBlur(input, output, scratch, width, height, radius);
+            return;
+        }
+        boxBlurParallel(input, output, scratch, width, height, (boxForGauss(radius, 3, 0) - 1) / 2, pool);
+        boxBlurParallel(output, output, scratch, width, height, (boxForGauss(radius, 3, 1) - 1) / 2, pool);
+        boxBlurParallel(output, output, scratch, width, height, (boxForGauss(radius, 3, 2) - 1) / 2, pool);
+    }
+
+    public static void boxBlur(int[] input, int[] output, int[] scratch, int width, int height, int radius,
+                               ForkJoinPool pool, int minParallelPixels) {
+        if (width * height < minParallelPixels) {
+            boxBlur(input, output, scratch, width, height, radius);
+            return;
+        }
+        boxBlurParallel(input, output, scratch, width, height, boxForGauss(radius, 1, 0), pool);
+    }
+
+    public static void gaussBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius,
+                                 ForkJoinPool pool) {
+        gaussBlur(input, output, scratch, width, height, radius, pool, MIN_PARALLEL_PIXELS);
+    }
+
+    public static void boxBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius,
+                               ForkJoinPool pool) {
+        boxBlur(input, output, scratch, width, height, radius, pool, MIN_PARALLEL_PIXELS);
+    }
+
+    public static void gaussBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius,
+                                 ForkJoinPool pool, int minParallelPixels) {
+        if (width * height < minParallelPixels) {
+            gaussBlur(input, output, scratch, width, height, radius);
+            return;
+        }
+        boxBlurParallel(input, output, scratch, width, height, (boxForGauss(radius, 3, 0) - 1) / 2, pool);
+        boxBlurParallel(output, output, scratch, width, height, (boxForGauss(radius, 3, 1) - 1) / 2, pool);
+        boxBlurParallel(output, output, scratch, width, height, (boxForGauss(radius, 3, 2) - 1) / 2, pool);
+    }
+
+    public static void boxBlur(byte[] input, byte[] output, byte[] scratch, int width, int height, int radius,
+                               ForkJoinPool pool, int minParallelPixels) {
+        if (width * height < minParallelPixels) {
+            boxBlur(input, output, scratch, width, height, radius);
+            return;
+        }
+        boxBlurParallel(input, output, scratch, width, height, boxForGauss(radius, 1, 0), pool);
+    }
+
+    // A pool with a thread per core shared by everything that blurs in parallel.
+    // ForkJoinPool.commonPool() would do but needs API 24.
+    public static synchronized ForkJoinPool parallelPool() {
+        if (parallelPool == null) {
+            parallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return parallelPool;
+    }
+
+    // Size of box i of the n boxes approximating a gaussian with the given standard deviation.
+    // This is boxesForGauss without allocating the array of sizes.
+    private static int boxForGauss(int sigma, int n, int i) {
+        double wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);  // Ideal averaging filter width
+        int wl = (int)Math.floor(wIdeal);
+        if(wl % 2==0) {
+            wl--;
+        }
+        int wu = wl+2;
+
+        int mIdeal = (12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n)/(-4 * wl - 4);
+        int m = (int)Math.round(mIdeal);
+        // int sigmaActual = Math.sqrt( (m*wl*wl + (n-m)*wu*wu - n)/12 );
+
+        return i < m ? wl : wu;
+    }
+
+    // The horizontal pass reads straight from the input, so there is no need to copy it first
+    private static void boxBlurFast(int[] scl, int[] tcl, int[] scratch, int w, int h, int r) {
+        boxBlurHorizontal(scl, scratch, w, h, r);
+        boxBlurVertical(scratch, tcl, w, h, r);
+    }
+
+    private static void boxBlurFast(byte[] scl, byte[] tcl, byte[] scratch, int w, int h, int r) {
+        boxBlurHorizontal(scl, scratch, w, h, r);
+        boxBlurVertical(scratch, tcl, w, h, r);
+    }
+
+    private static void boxBlurParallel(int[] scl, int[] tcl, int[] scratch, int w, int h, int r, ForkJoinPool pool) {
+        pool.invoke(new IntBlurBand(scl, scratch, w, h, r, 0, h, grain(h, pool), true));
+        pool.invoke(new IntBlurBand(scratch, tcl, w, h, r, 0, w, grain(w, pool), false));
+    }
+
+    private static void boxBlurParallel(byte[] scl, byte[] tcl, byte[] scratch, int w, int h, int r, ForkJoinPool pool) {
+        pool.invoke(new ByteBlurBand(scl, scratch, w, h, r, 0, h, grain(h, pool), true));
+        pool.invoke(new ByteBlurBand(scratch, tcl, w, h, r, 0, w, grain(w, pool), false));
+    }
+
+    private static int grain(int lines, ForkJoinPool pool) {
+        return Math.max(MIN_LINES_PER_TASK, lines / (pool.getParallelism() * 4));
+    }
+
+    // Blurs a band of rows (horizontal pass) or columns (vertical pass), splitting it in half
+    // until bands are small enough to run directly.
+    private abstract static class BlurBand extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int w;
+        final int h;
+        final int r;
+        final int start;
+        final int end;
+        final int grain;
+        final boolean horizontal;
+
+        BlurBand(int w, int h, int r, int start, int end, int grain, boolean horizontal) {
+            this.w = w;
+            this.h = h;
+            this.r = r;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+            this.horizontal = horizontal;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                blur();
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(split(start, middle), split(middle, end));
+        }
+
+        abstract void blur();
+
+        abstract BlurBand split(int start, int end);
+    }
+
+    private static class IntBlurBand extends BlurBand {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] scl;
+        private final int[] tcl;
+
+        IntBlurBand(int[] scl, int[] tcl, int w, int h, int r, int start, int end, int grain, boolean horizontal) {
+            super(w, h, r, start, end, grain, horizontal);
+            this.scl = scl;
+            this.tcl = tcl;
+        }
+
+        @Override
+        void blur() {
+            if (horizontal) {
+                boxBlurHorizontal(scl, tcl, w, r, start, end);
+            } else {
+                boxBlurVertical(scl, tcl, w, h, r, start, end);
+            }
+        }
+
+        @Override
+        BlurBand split(int start, int end) {
+            return new IntBlurBand(scl, tcl, w, h, r, start, end, grain, horizontal);
+        }
+    }
+
+    private static class ByteBlurBand extends BlurBand {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] scl;
+        private final byte[] tcl;
+
+        ByteBlurBand(byte[] scl, byte[] tcl, int w, int h, int r, int start, int end, int grain, boolean horizontal) {
+            super(w, h, r, start, end, grain, horizontal);
+            this.scl = scl;
+            this.tcl = tcl;
+        }
+
+        @Override
+        void blur() {
+            if (horizontal) {
+                boxBlurHorizontal(scl, tcl, w, r, start, end);
+            } else {
+                boxBlurVertical(scl, tcl, w, h, r, start, end);
+            }
+        }
+
+        @Override
+        BlurBand split(int start, int end) {
+            return new ByteBlurBand(scl, tcl, w, h, r, start, end, grain, horizontal);
+        }
+    }
+
+    // This function is annotated with what each line is supposed to do. This is the horizontal
+    // version, with the function beneath just the vertical version of this.
+    private static void boxBlurHorizontal(int[] scl, int[] tcl, int w, int h, int r) {
+        boxBlurHorizontal(scl, tcl, w, r, 0, h);
+    }
+
+    // Blurs rows rowStart (inclusive) to rowEnd (exclusive)
+    private static void boxBlurHorizontal(int[] scl, int[] tcl, int w, int r, int rowStart, int rowEnd) {
+        // radius range on either side of a pixel + the pixel itself
+        long iarr = reciprocal(r);
+
+        for(int i = rowStart; i < rowEnd; i++) {
+            int ti = i * w; //pixel index; will traverse the width of the image for each loop
+            // of the parent "for loop"
+            int li = ti; // trailing pixel index
+            int ri = ti + r; //pixel index of the furthest reach of the radius
+
+            int fv = scl[ti]; // first pixel value of the row
+            int lv = scl[ti + w - 1]; // last pixel value in the row
+            // create a "value accumulator" - we will be calculating the average of pixels
+            // surrounding each one - is faster to add newest value, remove oldest, and
+            // then average. This initial value is for pixels outside image bounds
+            int val = (r + 1) * fv;
+
+            // for length of radius, accumulate the total value of all pixels from current pixel
+            // index and record it into the target channel first pixel
+            for(int j = 0; j < r; j++) {
+                val += scl[ti + j];
+            }
+            // for the next $boxRadius pixels in the row, record pixel value of average of all
+            // pixels within the radius and save average into target channel
+            for(int j = 0 ; j <= r; j++) {
+                val += scl[ri++] - fv;
+                tcl[ti++] = round(val, iarr);
+            }
+            // now that we've completely removed the overflow pixels from the value accumulator,
+            // continue on, adding new values, removing old ones, and averaging the
+            // accumulated value
+            for(int j = r + 1; j < w - r; j++) {
+                val += scl[ri++] - scl[li++];
+                tcl[ti++] = round(val, iarr);
+            }
+            // finish off the row of pixels, duplicating the edge pixel instead of going out of image bounds
+            for(int j = w - r; j < w ; j++) {
+                val += lv - scl[li++];
+                tcl[ti++] = round(val, iarr);
+            }
+        }
+    }
+
+    private static void boxBlurVertical(int[] scl, int[] tcl, int w, int h, int r) {
+        boxBlurVertical(scl, tcl, w, h, r, 0, w);
+    }
+
+    // Blurs columns colStart (inclusive) to colEnd (exclusive)
+    private static void boxBlurVertical(int[] scl, int[] tcl, int w, int h, int r, int colStart, int colEnd) {
+        long iarr = reciprocal(r);
+        for(int i = colStart; i < colEnd; i++) {
+            int ti = i;
+            int li = ti;
+            int ri = ti + r * w;
+            int fv = scl[ti];
+            int lv = scl[ti + w * (h - 1)];
+            int val = (r + 1) * fv;
+            for(int j = 0; j < r; j++) {
+                val += scl[ti + j * w];
+            }
+            for(int j = 0  ; j <= r; j++) {
+                val += scl[ri] - fv;
+                tcl[ti] = round(val, iarr);
+                ri += w;
+                ti += w;
+            }
+            for(int j = r + 1; j < h - r; j++) {
+                val += scl[ri] - scl[li];
+                tcl[ti] = round(val, iarr);
+                li += w;
+                ri += w;
+                ti += w;
+            }
+            for(int j = h - r; j < h; j++) {
+                val += lv - scl[li];
+                tcl[ti] = round(val, iarr);
+                li += w;
+                ti += w;
+            }
+        }
+    }
+
+    // The horizontal and vertical passes again for unsigned bytes, without the annotations
+    private static void boxBlurHorizontal(byte[] scl, byte[] tcl, int w, int h, int r) {
+        boxBlurHorizontal(scl, tcl, w, r, 0, h);
+    }
+
+    private static void boxBlurHorizontal(byte[] scl, byte[] tcl, int w, int r, int rowStart, int rowEnd) {
+        long iarr = reciprocal(r);
+        for(int i = rowStart; i < rowEnd; i++) {
+            int ti = i * w;
+            int li = ti;
+            int ri = ti + r;
+            int fv = scl[ti] & 0xFF;
+            int lv = scl[ti + w - 1] & 0xFF;
+            int val = (r + 1) * fv;
+            for(int j = 0; j < r; j++) {
+                val += scl[ti + j] & 0xFF;
+            }
+            for(int j = 0 ; j <= r; j++) {
+                val += (scl[ri++] & 0xFF) - fv;
+                tcl[ti++] = (byte) round(val, iarr);
+            }
+            for(int j = r + 1; j < w - r; j++) {
+                val += (scl[ri++] & 0xFF) - (scl[li++] & 0xFF);
+                tcl[ti++] = (byte) round(val, iarr);
+            }
+            for(int j = w - r; j < w ; j++) {
+                val += lv - (scl[li++] & 0xFF);
+                tcl[ti++] = (byte) round(val, iarr);
+            }
+        }
+    }
+
+    private static void boxBlurVertical(byte[] scl, byte[] tcl, int w, int h, int r) {
+        boxBlurVertical(scl, tcl, w, h, r, 0, w);
+    }
+
+    private static void boxBlurVertical(byte[] scl, byte[] tcl, int w, int h, int r, int colStart, int colEnd) {
+        long iarr = reciprocal(r);
+        for(int i = colStart; i < colEnd; i++) {
+            int ti = i;
+            int li = ti;
+            int ri = ti + r * w;
+            int fv = scl[ti] & 0xFF;
+            int lv = scl[ti + w * (h - 1)] & 0xFF;
+            int val = (r + 1) * fv;
+            for(int j = 0; j < r; j++) {
+                val += scl[ti + j * w] & 0xFF;
+            }
+            for(int j = 0  ; j <= r; j++) {
+                val += (scl[ri] & 0xFF) - fv;
+                tcl[ti] = (byte) round(val, iarr);
+                ri += w;
+                ti += w;
+            }
+            for(int j = r + 1; j < h - r; j++) {
+                val += (scl[ri] & 0xFF) - (scl[li] & 0xFF);
+                tcl[ti] = (byte) round(val, iarr);
+                li += w;
+                ri += w;
+                ti += w;
+            }
+            for(int j = h - r; j < h; j++) {
+                val += lv - (scl[li] & 0xFF);
+                tcl[ti] = (byte) round(val, iarr);
+                li += w;
+                ti += w;
+            }
+        }
+    }
+
+    // Fixed point 1 / (r + r + 1)
+    private static long reciprocal(int r) {
+        long boxWidth = r + r + 1;
+        return ((1L << RECIPROCAL_SHIFT) + boxWidth / 2) / boxWidth;
+    }
+
+    // val / (r + r + 1) rounded to the nearest integer, given reciprocal(r)
+    private static int round(int val, long iarr) {
+        return (int) ((val * iarr + RECIPROCAL_HALF) >> RECIPROCAL_SHIFT);
+    }
+}
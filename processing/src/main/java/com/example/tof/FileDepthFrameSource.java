@@ -0,0 +1,49 @@
+package com.example.tof;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+// Plays back a file written by DepthRecorder
+public class FileDepthFrameSource extends PlaybackDepthFrameSource implements Closeable {
+    private final DepthRecording recording;
+
+    public FileDepthFrameSource(File path) throws IOException {
+        this(new DepthRecording(path));
+    }
+
+    public FileDepthFrameSource(DepthRecording recording) {
+        this.recording = recording;
+    }
+
+    public DepthRecording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public int getWidth() {
+        return recording.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return recording.getHeight();
+    }
+
+    @Override
+    public int getFrameCount() {
+        return recording.getFrameCount();
+    }
+
+    @Override
+    public long readFrame(int index, short[] samples) throws IOException {
+        return recording.readFrame(index, samples);
+    }
+
+    // Stops playback and closes the file
+    @Override
+    public void close() throws IOException {
+        stop();
+        recording.close();
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.tof;
+
+// Turns processed masks into whatever the render stage draws, such as bitmaps
+public interface FrameConverter<T> {
+    // Creates one of the reusable outputs that convert writes into
+    T createOutput();
+    void convert(ProcessedFrame frame, T output);
+}
@@ -0,0 +1,88 @@
+package com.example.tof;
+
+import java.util.List;
+
+/*  Single slot, latest-wins handoff between two pipeline stages, backed by a fixed set of
+    reusable buffers.
+
+    The producer obtains a free buffer, fills it and publishes it. If the consumer hasn't taken
+    the previously published buffer yet, that stale one is dropped back into the free list
+    instead of queueing up behind the new one, so a slow consumer always works on the newest
+    frame. The consumer recycles each buffer once it is done with it. Nothing is allocated after
+    construction.
+ */
+public class FrameHandoff<T> {
+    private final Object[] freeBuffers;
+    private int freeCount;
+    private T pending;
+    private boolean closed;
+    private long publishedCount;
+    private long droppedCount;
+
+    public FrameHandoff(List<T> buffers) {
+        freeBuffers = buffers.toArray();
+        freeCount = freeBuffers.length;
+    }
+
+    // Returns null if every buffer is in use, which only happens if a consumer holds on to
+    // more buffers than it should.
+    @SuppressWarnings("unchecked")
+    public synchronized T obtain() {
+        if (freeCount == 0) {
+            return null;
+        }
+        T buffer = (T) freeBuffers[--freeCount];
+        freeBuffers[freeCount] = null;
+        return buffer;
+    }
+
+    public synchronized void publish(T buffer) {
+        if (closed) {
+            recycleLocked(buffer);
+            return;
+        }
+        if (pending != null) {
+            recycleLocked(pending);
+            droppedCount++;
+        }
+        pending = buffer;
+        publishedCount++;
+        notifyAll();
+    }
+
+    // Blocks until a buffer is published, returning null once the handoff is closed
+    public synchronized T take() throws InterruptedException {
+        while (pending == null && !closed) {
+            wait();
+        }
+        T buffer = pending;
+        pending = null;
+        return buffer;
+    }
+
+    public synchronized void recycle(T buffer) {
+        recycleLocked(buffer);
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (pending != null) {
+            recycleLocked(pending);
+            pending = null;
+        }
+        notifyAll();
+    }
+
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    // Buffers that were published but replaced by a newer one before the consumer took them
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private void recycleLocked(T buffer) {
+        freeBuffers[freeCount++] = buffer;
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.tof;
+
+public interface FrameRenderer<T> {
+    void render(T output);
+}
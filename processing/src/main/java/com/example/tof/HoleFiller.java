@@ -0,0 +1,171 @@
+package com.example.tof;
+
+import java.util.Arrays;
+
+/*  Fills the holes zero confidence samples leave in a decoded mask, so the blurs and the moving
+    average don't take them for very near depth.
+
+    Each hole takes the value of its nearest valid pixel, by chessboard distance, if that is at
+    most maxDistance away. Distances and values are propagated in two passes over the frame, one
+    forward looking at the neighbours left of and above each pixel and one backward looking right
+    and below, the classic two-pass distance transform, so the cost per pixel is the same for any
+    distance. Holes further from valid pixels than that can take the last valid value the pixel
+    itself had, if it is at most maxAge frames old. Anything left stays 0.
+
+    Buffers are allocated when the frame size changes, and nothing per frame.
+ */
+public class HoleFiller {
+    public static final int DEFAULT_MAX_DISTANCE = 8;
+    public static final int DEFAULT_MAX_AGE = 5;
+
+    private static final int FAR = Integer.MAX_VALUE / 2;
+
+    private volatile int maxDistance = DEFAULT_MAX_DISTANCE;
+    private volatile int maxAge = DEFAULT_MAX_AGE;
+    private int width;
+    private int height;
+    // Chessboard distance to the valid pixel each value came from
+    private int[] distances = new int[0];
+    // The last valid value per pixel, and how many frames ago it was seen
+    private byte[] lastValues = new byte[0];
+    private int[] ages = new int[0];
+
+    // How far in pixels a valid value may be copied into a hole. 0 turns spatial filling off.
+    public void setMaxDistance(int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Distance can't be negative, was " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    // How many frames a pixel's last valid value fills its holes for. 0 turns temporal filling
+    // off.
+    public void setMaxAge(int maxAge) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Age can't be negative, was " + maxAge);
+        }
+        this.maxAge = maxAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    // Copies input to output with the pixels marked in holes (non-zero) filled. Masks hold
+    // unsigned 0-255 values, as DepthFrameProcessor keeps them.
+    public synchronized void fill(byte[] input, byte[] holes, byte[] output, int width, int height) {
+        ensureSize(width, height);
+        int size = width * height;
+        int maxDistance = this.maxDistance;
+        int maxAge = this.maxAge;
+        int[] distances = this.distances;
+        for (int i = 0; i < size; i++) {
+            output[i] = input[i];
+            distances[i] = holes[i] != 0 ? FAR : 0;
+        }
+
+        if (maxDistance > 0) {
+            propagateForward(output, width, height);
+            propagateBackward(output, width, height);
+        }
+
+        byte[] lastValues = this.lastValues;
+        int[] ages = this.ages;
+        for (int i = 0; i < size; i++) {
+            if (holes[i] == 0) {
+                lastValues[i] = input[i];
+                ages[i] = 0;
+                continue;
+            }
+            if (ages[i] < FAR) {
+                ages[i]++;
+            }
+            if (distances[i] > maxDistance) {
+                output[i] = ages[i] <= maxAge ? lastValues[i] : 0;
+            }
+        }
+    }
+
+    // Forgets the last valid values, e.g. when the scene changes completely
+    public synchronized void reset() {
+        Arrays.fill(ages, FAR);
+    }
+
+    private void propagateForward(byte[] values, int width, int height) {
+        int[] distances = this.distances;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = row + x;
+                if (distances[index] == 0) {
+                    continue;
+                }
+                if (x > 0) {
+                    take(values, index, index - 1);
+                }
+                if (y > 0) {
+                    int above = index - width;
+                    if (x > 0) {
+                        take(values, index, above - 1);
+                    }
+                    take(values, index, above);
+                    if (x < width - 1) {
+                        take(values, index, above + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    private void propagateBackward(byte[] values, int width, int height) {
+        int[] distances = this.distances;
+        for (int y = height - 1; y >= 0; y--) {
+            int row = y * width;
+            for (int x = width - 1; x >= 0; x--) {
+                int index = row + x;
+                if (distances[index] == 0) {
+                    continue;
+                }
+                if (x < width - 1) {
+                    take(values, index, index + 1);
+                }
+                if (y < height - 1) {
+                    int below = index + width;
+                    if (x < width - 1) {
+                        take(values, index, below + 1);
+                    }
+                    take(values, index, below);
+                    if (x > 0) {
+                        take(values, index, below - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    // Takes the neighbour's value if the valid pixel it came from is nearer
+    private void take(byte[] values, int index, int neighbour) {
+        int distance = distances[neighbour] + 1;
+        if (distance < distances[index]) {
+            distances[index] = distance;
+            values[index] = values[neighbour];
+        }
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        distances = new int[size];
+        lastValues = new byte[size];
+        ages = new int[size];
+        reset();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.tof;
+
+/*  Summed-area tables of a frame: the sum, sum of squares and number of valid pixels of every
+    rectangle anchored at the top left corner. Any rectangle's statistics then take four lookups
+    each, whatever its size.
+
+    A value of 0 counts as invalid, the same way the decoder marks samples it filtered out, so
+    means and variances only cover the valid pixels.
+
+    Sums are kept as longs: squares of 0-255 mask values already overflow an int at 240x180, and
+    raw ranges (up to 8191 mm) need the headroom at any size. The tables are allocated once and
+    rebuilt in place for every frame with build.
+ */
+public class IntegralImage {
+    private final int width;
+    private final int height;
+    // (width + 1) x (height + 1), with a zero first row and column so queries need no edge checks
+    private final int stride;
+    private final long[] sums;
+    private final long[] squares;
+    private final int[] counts;
+    // Which DEPTH16 confidence codes the decoder keeps, refreshed for every build from samples
+    private final boolean[] confidentCodes = new boolean[8];
+
+    public IntegralImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        stride = width + 1;
+        int size = stride * (height + 1);
+        sums = new long[size];
+        squares = new long[size];
+        counts = new int[size];
+    }
+
+    // Builds the tables from a mask stored as unsigned bytes, such as DepthFrameProcessor's
+    public void build(byte[] mask) {
+        build(mask, null);
+    }
+
+    // Builds the tables from the range (in millimeters) of DEPTH16 samples. Samples without a
+    // range, or whose confidence the decoder's confidence filter drops, are invalid.
+    public void build(short[] depthSamples, DepthDecoder decoder) {
+        float confidenceFilter = decoder.getConfidenceFilter();
+        for (int confidence = 0; confidence < confidentCodes.length; confidence++) {
+            confidentCodes[confidence] = DepthDecoder.isConfident(confidence, confidenceFilter);
+        }
+        build(null, depthSamples);
+    }
+
+    // One of mask and depthSamples is set, and only decides how a pixel's value is read
+    private void build(byte[] mask, short[] depthSamples) {
+        for (int y = 0; y < height; y++) {
+            long rowSum = 0;
+            long rowSquares = 0;
+            int rowCount = 0;
+            int source = y * width;
+            int above = y * stride + 1;
+            int target = above + stride;
+            for (int x = 0; x < width; x++) {
+                long value = mask != null ? mask[source + x] & 0xFF : range(depthSamples[source + x]);
+                rowSum += value;
+                rowSquares += value * value;
+                if (value != 0) {
+                    rowCount++;
+                }
+                sums[target + x] = sums[above + x] + rowSum;
+                squares[target + x] = squares[above + x] + rowSquares;
+                counts[target + x] = counts[above + x] + rowCount;
+            }
+        }
+    }
+
+    // Rectangles run from (x0, y0) up to but not including (x1, y1) and are clipped to the frame
+
+    public int count(int x0, int y0, int x1, int y1) {
+        x0 = clamp(x0, width);
+        x1 = clamp(x1, width);
+        y0 = clamp(y0, height);
+        y1 = clamp(y1, height);
+        if (x1 <= x0 || y1 <= y0) {
+            return 0;
+        }
+        return counts[y1 * stride + x1] - counts[y0 * stride + x1] - counts[y1 * stride + x0]
+                + counts[y0 * stride + x0];
+    }
+
+    public long sum(int x0, int y0, int x1, int y1) {
+        return rectangle(sums, x0, y0, x1, y1);
+    }
+
+    public long sumOfSquares(int x0, int y0, int x1, int y1) {
+        return rectangle(squares, x0, y0, x1, y1);
+    }
+
+    // Mean of the valid pixels, or 0 if there are none
+    public double mean(int x0, int y0, int x1, int y1) {
+        int count = count(x0, y0, x1, y1);
+        return count > 0 ? (double) sum(x0, y0, x1, y1) / count : 0;
+    }
+
+    // Population variance of the valid pixels, or 0 if there are none
+    public double variance(int x0, int y0, int x1, int y1) {
+        int count = count(x0, y0, x1, y1);
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum(x0, y0, x1, y1) / count;
+        double variance = (double) sumOfSquares(x0, y0, x1, y1) / count - mean * mean;
+        // Rounding can leave a tiny negative value for flat regions
+        return Math.max(0, variance);
+    }
+
+    // Mean of the valid pixels in the square of the given radius around (x, y), rounded, or 0 if
+    // there are none. Integer only, for per-pixel use.
+    public int meanAround(int x, int y, int radius) {
+        int x0 = Math.max(0, x - radius);
+        int y0 = Math.max(0, y - radius);
+        int x1 = Math.min(width, x + radius + 1);
+        int y1 = Math.min(height, y + radius + 1);
+        int a = y0 * stride + x0;
+        int b = y0 * stride + x1;
+        int c = y1 * stride + x0;
+        int d = y1 * stride + x1;
+        int count = counts[d] - counts[b] - counts[c] + counts[a];
+        if (count == 0) {
+            return 0;
+        }
+        long sum = sums[d] - sums[b] - sums[c] + sums[a];
+        return (int) ((sum + count / 2) / count);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private long rectangle(long[] table, int x0, int y0, int x1, int y1) {
+        x0 = clamp(x0, width);
+        x1 = clamp(x1, width);
+        y0 = clamp(y0, height);
+        y1 = clamp(y1, height);
+        if (x1 <= x0 || y1 <= y0) {
+            return 0;
+        }
+        return table[y1 * stride + x1] - table[y0 * stride + x1] - table[y1 * stride + x0] + table[y0 * stride + x0];
+    }
+
+    private int range(short sample) {
+        return confidentCodes[(sample >> 13) & 0x7] ? sample & 0x1FFF : 0;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : value > max ? max : value;
+    }
+}
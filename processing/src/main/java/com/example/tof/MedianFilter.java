@@ -0,0 +1,179 @@
+package com.example.tof;
+
+import java.util.Arrays;
+
+/*  Median filter for 0-255 masks. Unlike FastBlur it keeps depth edges sharp: a pixel next to an
+    edge gets a value from one side of it instead of a blend of both.
+
+    Radius 1 (3x3) and 2 (5x5) windows go through fixed sorting networks that only find the
+    median, 19 and 99 compare-exchanges. Larger radii use the constant time histogram median of
+    Perreault and Hebert, which keeps a 256 bin histogram per column and slides a window
+    histogram along each row, so a pixel costs the same for any radius.
+
+    Pixels outside the frame are treated as copies of the nearest edge pixel.
+ */
+public class MedianFilter implements SpatialFilter {
+    // Compare-exchange pairs, leaving the median in the middle element
+    private static final int[] MEDIAN_OF_9 = {
+            1, 2, 4, 5, 7, 8, 0, 1, 3, 4, 6, 7, 1, 2, 4, 5, 7, 8, 0, 3, 5, 8, 4, 7, 3, 6, 1, 4, 2, 5,
+            4, 7, 4, 2, 6, 4, 4, 2};
+    private static final int[] MEDIAN_OF_25 = {
+            0, 1, 3, 4, 2, 4, 2, 3, 6, 7, 5, 7, 5, 6, 9, 10, 8, 10, 8, 9, 12, 13, 11, 13, 11, 12, 15, 16,
+            14, 16, 14, 15, 18, 19, 17, 19, 17, 18, 21, 22, 20, 22, 20, 21, 23, 24, 2, 5, 3, 6, 0, 6,
+            0, 3, 4, 7, 1, 7, 1, 4, 11, 14, 8, 14, 8, 11, 12, 15, 9, 15, 9, 12, 13, 16, 10, 16, 10, 13,
+            20, 23, 17, 23, 17, 20, 21, 24, 18, 24, 18, 21, 19, 22, 8, 17, 9, 18, 0, 18, 0, 9, 10, 19,
+            1, 19, 1, 10, 11, 20, 2, 20, 2, 11, 12, 21, 3, 21, 3, 12, 13, 22, 4, 22, 4, 13, 14, 23,
+            5, 23, 5, 14, 15, 24, 6, 24, 6, 15, 7, 16, 7, 19, 13, 21, 15, 23, 7, 13, 7, 15, 1, 9,
+            3, 11, 5, 17, 11, 17, 9, 17, 4, 10, 6, 12, 7, 14, 4, 6, 4, 7, 12, 14, 10, 14, 6, 7,
+            10, 12, 6, 10, 6, 17, 12, 17, 7, 17, 7, 10, 12, 18, 7, 12, 10, 18, 12, 20, 10, 20, 10, 12};
+
+    private static final int BINS = 256;
+
+    private final int radius;
+    private final boolean histogram;
+    private final int[] window = new int[25];
+    private final int[] rowOffsets = new int[5];
+    // Column histograms followed by the window histogram, grown to fit the frame width
+    private int[] histograms = new int[0];
+
+    // Sorting networks for radius 1 and 2, the histogram median beyond
+    public MedianFilter(int radius) {
+        this(radius, radius > 2);
+    }
+
+    // histogram forces the constant time histogram median for any radius
+    public MedianFilter(int radius, boolean histogram) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be at least 1, was " + radius);
+        }
+        if (!histogram && radius > 2) {
+            throw new IllegalArgumentException("Sorting networks only cover radius 1 and 2, was " + radius);
+        }
+        this.radius = radius;
+        this.histogram = histogram;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public void filter(byte[] input, byte[] output, int width, int height) {
+        if (histogram) {
+            histogramMedian(input, output, width, height);
+        } else {
+            networkMedian(input, output, width, height, radius == 1 ? MEDIAN_OF_9 : MEDIAN_OF_25);
+        }
+    }
+
+    private void networkMedian(byte[] input, byte[] output, int width, int height, int[] network) {
+        int r = radius;
+        int size = 2 * r + 1;
+        int middle = size * size / 2;
+        int[] window = this.window;
+        int[] rowOffsets = this.rowOffsets;
+        for (int y = 0; y < height; y++) {
+            for (int k = 0; k < size; k++) {
+                rowOffsets[k] = clamp(y + k - r, height) * width;
+            }
+            for (int x = 0; x < width; x++) {
+                int n = 0;
+                if (x >= r && x < width - r) {
+                    for (int k = 0; k < size; k++) {
+                        int start = rowOffsets[k] + x - r;
+                        for (int j = 0; j < size; j++) {
+                            window[n++] = input[start + j] & 0xFF;
+                        }
+                    }
+                } else {
+                    for (int k = 0; k < size; k++) {
+                        for (int j = 0; j < size; j++) {
+                            window[n++] = input[rowOffsets[k] + clamp(x + j - r, width)] & 0xFF;
+                        }
+                    }
+                }
+                for (int i = 0; i < network.length; i += 2) {
+                    int a = window[network[i]];
+                    int b = window[network[i + 1]];
+                    if (a > b) {
+                        window[network[i]] = b;
+                        window[network[i + 1]] = a;
+                    }
+                }
+                output[y * width + x] = (byte) window[middle];
+            }
+        }
+    }
+
+    private void histogramMedian(byte[] input, byte[] output, int width, int height) {
+        int r = radius;
+        if (histograms.length < (width + 1) * BINS) {
+            histograms = new int[(width + 1) * BINS];
+        }
+        int[] histograms = this.histograms;
+        int windowStart = width * BINS;
+        // Position of the median in the (2r+1)^2 window
+        int rank = (2 * r + 1) * (2 * r + 1) / 2 + 1;
+
+        Arrays.fill(histograms, 0, windowStart, 0);
+        for (int k = -r; k <= r; k++) {
+            int row = clamp(k, height) * width;
+            for (int x = 0; x < width; x++) {
+                histograms[x * BINS + (input[row + x] & 0xFF)]++;
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(histograms, windowStart, windowStart + BINS, 0);
+            int median = 0;
+            // Pixels in the window with a value below median
+            int below = 0;
+            for (int j = -r; j <= r; j++) {
+                addColumn(histograms, clamp(j, width) * BINS, windowStart, 1, median);
+            }
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    below += addColumn(histograms, clamp(x + r, width) * BINS, windowStart, 1, median);
+                    below -= addColumn(histograms, clamp(x - r - 1, width) * BINS, windowStart, -1, median);
+                }
+                // Walk from the previous median, which is usually close to the new one
+                while (below + histograms[windowStart + median] < rank) {
+                    below += histograms[windowStart + median];
+                    median++;
+                }
+                while (below >= rank) {
+                    median--;
+                    below -= histograms[windowStart + median];
+                }
+                output[y * width + x] = (byte) median;
+            }
+
+            if (y + 1 < height) {
+                int removed = clamp(y - r, height) * width;
+                int added = clamp(y + r + 1, height) * width;
+                for (int x = 0; x < width; x++) {
+                    histograms[x * BINS + (input[removed + x] & 0xFF)]--;
+                    histograms[x * BINS + (input[added + x] & 0xFF)]++;
+                }
+            }
+        }
+    }
+
+    // Adds (sign 1) or removes (sign -1) a column histogram to or from the window histogram.
+    // Returns how many of the column's pixels are below median.
+    private static int addColumn(int[] histograms, int column, int windowStart, int sign, int median) {
+        int below = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            int count = histograms[column + bin];
+            histograms[windowStart + bin] += sign * count;
+            if (bin < median) {
+                below += count;
+            }
+        }
+        return below;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.tof;
+
+import java.nio.ShortBuffer;
+
+/*  Tells when something moves in the depth field, from a per-pixel model of the background,
+    without running the rest of the pipeline.
+
+    Every pixel keeps a running mean and variance of its range, in fixed point with 4 fraction
+    bits and updated in place, each frame moving them 1/2^learningShift of the way to the new
+    sample. A sample further from its mean than threshold standard deviations (never less than
+    minDeviation mm, the sensor noise) is marked in the motion mask. Pixels marked as moving
+    learn more slowly, so someone standing still takes a while to become background. Zero
+    confidence samples are left out, and the first valid sample of a pixel starts its model.
+
+    In low power mode only every stride-th pixel of every stride-th row is looked at, a different
+    one of those grids each frame so every pixel's model keeps up. As soon as enough of them
+    move the detector becomes active and looks at every pixel, until quietFrames frames in a row
+    without motion send it back to low power.
+ */
+public class MotionDetector {
+    public static final int DEFAULT_LEARNING_SHIFT = 6;
+    public static final float DEFAULT_THRESHOLD = 3f;
+    public static final int DEFAULT_MIN_DEVIATION = 25;
+    public static final int DEFAULT_MIN_CHANGED_PIXELS = 64;
+    public static final int DEFAULT_LOW_POWER_STRIDE = 4;
+    // A second at 30 fps
+    public static final int DEFAULT_QUIET_FRAMES = 30;
+
+    public static final byte MOVING = (byte) 255;
+
+    // DEPTH16 range bits
+    private static final int RANGE_MASK = 0x1FFF;
+    private static final int FRACTION_BITS = 4;
+    // How much more slowly moving pixels learn, as a shift
+    private static final int MOVING_LEARNING_SHIFT = 2;
+
+    private final boolean[] validConfidences = new boolean[8];
+    private volatile int learningShift = DEFAULT_LEARNING_SHIFT;
+    // threshold^2 and minDeviation^2, with FRACTION_BITS fraction bits
+    private volatile int thresholdSquared = toFixed(DEFAULT_THRESHOLD * DEFAULT_THRESHOLD);
+    private volatile int minVariance = DEFAULT_MIN_DEVIATION * DEFAULT_MIN_DEVIATION << FRACTION_BITS;
+    private volatile int minChangedPixels = DEFAULT_MIN_CHANGED_PIXELS;
+    private volatile int lowPowerStride = DEFAULT_LOW_POWER_STRIDE;
+    private volatile int quietFrames = DEFAULT_QUIET_FRAMES;
+    private float threshold = DEFAULT_THRESHOLD;
+    private int minDeviation = DEFAULT_MIN_DEVIATION;
+    private int width;
+    private int height;
+    // Range in mm with FRACTION_BITS fraction bits, 0 for a pixel without a model yet
+    private int[] means = new int[0];
+    // In mm^2, with FRACTION_BITS fraction bits
+    private int[] variances = new int[0];
+    private byte[] motionMask = new byte[0];
+    private int changedCount;
+    private boolean motion;
+    private boolean active;
+    private int framesSinceMotion;
+    // Which of the stride^2 low power grids was looked at last
+    private int phase;
+
+    // Each frame the model moves 1/2^learningShift of the way to the new sample
+    public void setLearningShift(int learningShift) {
+        if (learningShift < 0 || learningShift > 16) {
+            throw new IllegalArgumentException("Learning shift must be 0 to 16, was " + learningShift);
+        }
+        this.learningShift = learningShift;
+    }
+
+    public int getLearningShift() {
+        return learningShift;
+    }
+
+    // How many standard deviations from its mean a sample has to be to count as moving
+    public synchronized void setThreshold(float threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive, was " + threshold);
+        }
+        this.threshold = threshold;
+        thresholdSquared = toFixed(threshold * threshold);
+    }
+
+    public synchronized float getThreshold() {
+        return threshold;
+    }
+
+    // The smallest standard deviation in mm a pixel's model is taken to have
+    public synchronized void setMinDeviation(int minDeviation) {
+        if (minDeviation < 1 || minDeviation > 1000) {
+            throw new IllegalArgumentException("Minimum deviation must be 1 to 1000 mm, was " + minDeviation);
+        }
+        this.minDeviation = minDeviation;
+        minVariance = minDeviation * minDeviation << FRACTION_BITS;
+    }
+
+    public synchronized int getMinDeviation() {
+        return minDeviation;
+    }
+
+    // How many pixels of a full frame have to move for the frame to count as motion. In low power
+    // mode that is scaled down to the pixels looked at.
+    public void setMinChangedPixels(int minChangedPixels) {
+        if (minChangedPixels < 1) {
+            throw new IllegalArgumentException("Need at least one changed pixel, was " + minChangedPixels);
+        }
+        this.minChangedPixels = minChangedPixels;
+    }
+
+    public int getMinChangedPixels() {
+        return minChangedPixels;
+    }
+
+    // 1 turns low power mode off, so every pixel is looked at in every frame
+    public void setLowPowerStride(int lowPowerStride) {
+        if (lowPowerStride < 1) {
+            throw new IllegalArgumentException("Stride must be at least 1, was " + lowPowerStride);
+        }
+        this.lowPowerStride = lowPowerStride;
+    }
+
+    public int getLowPowerStride() {
+        return lowPowerStride;
+    }
+
+    // How many frames without motion it takes to go back to low power
+    public void setQuietFrames(int quietFrames) {
+        if (quietFrames < 1) {
+            throw new IllegalArgumentException("Need at least one quiet frame, was " + quietFrames);
+        }
+        this.quietFrames = quietFrames;
+    }
+
+    public int getQuietFrames() {
+        return quietFrames;
+    }
+
+    // Runs a frame through the model. The decoder's confidence filter decides which samples are
+    // valid. Returns true if the frame had motion.
+    public synchronized boolean update(short[] samples, int width, int height, DepthDecoder decoder) {
+        return update(samples, null, width, height, decoder);
+    }
+
+    // Samples are read with absolute gets from 0, so the buffer's position is left alone
+    public synchronized boolean update(ShortBuffer samples, int width, int height, DepthDecoder decoder) {
+        return update(null, samples, width, height, decoder);
+    }
+
+    // MOVING for the pixels that moved in the last frame. In low power mode only the pixels looked
+    // at can be marked.
+    public synchronized byte[] getMotionMask() {
+        return motionMask;
+    }
+
+    // Pixels that moved in the last frame, out of those looked at
+    public synchronized int getChangedPixelCount() {
+        return changedCount;
+    }
+
+    // Whether the last frame had motion
+    public synchronized boolean isMotionDetected() {
+        return motion;
+    }
+
+    // Whether there was motion in the last quietFrames frames, so every pixel is looked at
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    public synchronized boolean isLowPower() {
+        return !active && lowPowerStride > 1;
+    }
+
+    public synchronized int getWidth() {
+        return width;
+    }
+
+    public synchronized int getHeight() {
+        return height;
+    }
+
+    // Forgets the background, e.g. after the camera was moved. The next frames become the new one.
+    public synchronized void reset() {
+        for (int i = 0; i < means.length; i++) {
+            means[i] = 0;
+            motionMask[i] = 0;
+        }
+        changedCount = 0;
+        motion = false;
+        active = false;
+        framesSinceMotion = 0;
+    }
+
+    private boolean update(short[] array, ShortBuffer buffer, int width, int height, DepthDecoder decoder) {
+        int sampleCount = array != null ? array.length : buffer.limit();
+        if (width <= 0 || height <= 0 || sampleCount < width * height) {
+            throw new IllegalArgumentException("Frame of " + width + "x" + height + " doesn't fit " + sampleCount + " samples");
+        }
+        ensureSize(width, height);
+        float confidenceFilter = decoder.getConfidenceFilter();
+        for (int confidence = 0; confidence < validConfidences.length; confidence++) {
+            validConfidences[confidence] = DepthDecoder.isConfident(confidence, confidenceFilter);
+        }
+
+        int stride = active ? 1 : lowPowerStride;
+        int startX = 0;
+        int startY = 0;
+        if (stride > 1) {
+            // Only the last grid can have marks, the mask was cleared on entering low power
+            clearGrid(stride, width, height);
+            phase = (phase + 1) % (stride * stride);
+            startX = phase % stride;
+            startY = phase / stride;
+        }
+        int changed = 0;
+        for (int y = startY; y < height; y += stride) {
+            int row = y * width;
+            for (int x = startX; x < width; x += stride) {
+                int index = row + x;
+                int sample = (array != null ? array[index] : buffer.get(index)) & 0xFFFF;
+                if (updatePixel(index, sample)) {
+                    changed++;
+                }
+            }
+        }
+
+        changedCount = changed;
+        motion = changed >= Math.max(1, minChangedPixels / (stride * stride));
+        if (motion) {
+            framesSinceMotion = 0;
+            active = true;
+        } else if (active && ++framesSinceMotion >= quietFrames) {
+            active = false;
+            clearMask();
+        }
+        return motion;
+    }
+
+    // Returns true if the pixel moved
+    private boolean updatePixel(int index, int sample) {
+        int range = sample & RANGE_MASK;
+        if (range == 0 || !validConfidences[sample >>> 13]) {
+            motionMask[index] = 0;
+            return false;
+        }
+        int value = range << FRACTION_BITS;
+        int mean = means[index];
+        if (mean == 0) {
+            means[index] = value;
+            variances[index] = minVariance;
+            motionMask[index] = 0;
+            return false;
+        }
+        int variance = variances[index];
+        int difference = value - mean;
+        // Both sides have 2 * FRACTION_BITS fraction bits
+        long distance = (long) difference * difference;
+        boolean moving = distance > (long) thresholdSquared * Math.max(variance, minVariance);
+        int shift = moving ? learningShift + MOVING_LEARNING_SHIFT : learningShift;
+        means[index] = mean + (difference >> shift);
+        variances[index] = variance + (((int) (distance >> FRACTION_BITS) - variance) >> shift);
+        motionMask[index] = moving ? MOVING : 0;
+        return moving;
+    }
+
+    private void clearGrid(int stride, int width, int height) {
+        int startX = phase % stride;
+        for (int y = phase / stride; y < height; y += stride) {
+            int row = y * width;
+            for (int x = startX; x < width; x += stride) {
+                motionMask[row + x] = 0;
+            }
+        }
+    }
+
+    private void clearMask() {
+        for (int i = 0; i < motionMask.length; i++) {
+            motionMask[i] = 0;
+        }
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        means = new int[size];
+        variances = new int[size];
+        motionMask = new byte[size];
+        reset();
+    }
+
+    private static int toFixed(float value) {
+        return Math.round(value * (1 << FRACTION_BITS));
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tof;
+
+// Told when a MotionDetector becomes active or goes back to low power, on the thread that ran it.
+// The detector's mask is only valid for the duration of the call.
+public interface MotionListener {
+    void onMotionChanged(MotionDetector detector, boolean active, long timestamp);
+}
@@ -0,0 +1,14 @@
+package com.example.tof;
+
+// A source of nanosecond timestamps, so code that measures time can be given a different time
+// base, or a simulated one in tests
+public interface NanoClock {
+    NanoClock SYSTEM = new NanoClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    long nanoTime();
+}
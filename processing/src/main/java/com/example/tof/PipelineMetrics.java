@@ -0,0 +1,84 @@
+package com.example.tof;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/*  Latency histograms for each step a depth frame goes through, plus the time from the sensor
+    timestamp to the frame being rendered.
+
+    Recording is lock-free and allocation-free (see LatencyHistogram), so this is meant to stay
+    on in production. DepthPipeline and DepthFrameProcessor record into it, as does the camera's
+    image callback for ACQUIRE, and writeReport dumps p50/p99/max for every step.
+ */
+public class PipelineMetrics {
+    public enum Step {
+        // The camera thread's whole image callback: acquiring the image, handing it to the
+        // recorder, sender and motion detector, submitting it and closing it
+        ACQUIRE,
+        // Copying the frame out of the camera's buffer
+        CAPTURE,
+        DECODE,
+        TEMPORAL_FILTER,
+        NOISE_REDUCTION_BLUR,
+        MOVING_AVERAGE_BLUR,
+        POINT_CLOUD,
+        // Turning processed masks into output, e.g. bitmaps
+        CONVERSION,
+        RENDER,
+        // Sensor timestamp to the end of rendering
+        END_TO_END
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Step.values().length];
+    private final NanoClock timestampClock;
+
+    public PipelineMetrics() {
+        this(NanoClock.SYSTEM);
+    }
+
+    // timestampClock must run on the same time base as the frame timestamps, for example
+    // SystemClock::elapsedRealtimeNanos for camera frames with a realtime timestamp source
+    public PipelineMetrics(NanoClock timestampClock) {
+        this.timestampClock = timestampClock;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public LatencyHistogram get(Step step) {
+        return histograms[step.ordinal()];
+    }
+
+    // Records the time since startNanos, a System.nanoTime() value
+    public void recordSince(Step step, long startNanos) {
+        histograms[step.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void recordEndToEnd(long frameTimestamp) {
+        histograms[Step.END_TO_END.ordinal()].record(timestampClock.nanoTime() - frameTimestamp);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    // One line per step that has recordings, with times in milliseconds
+    public void writeReport(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%-22s %8s %9s %9s %9s%n", "step", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Step step : Step.values()) {
+            LatencyHistogram histogram = get(step);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.US, "%-22s %8d %9.3f %9.3f %9.3f%n", step.name().toLowerCase(Locale.US),
+                    histogram.getCount(), toMillis(histogram.getPercentile(0.5)),
+                    toMillis(histogram.getPercentile(0.99)), toMillis(histogram.getMax())));
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
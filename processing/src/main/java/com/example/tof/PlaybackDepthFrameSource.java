@@ -0,0 +1,146 @@
+package com.example.tof;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*  A source of a fixed sequence of frames that can be read in any order, played into a pipeline
+    on a thread of its own.
+
+    With Pacing.ORIGINAL frames are submitted at the intervals of their timestamps, as the camera
+    would deliver them. With AS_FAST_AS_POSSIBLE they are submitted back to back, so the pipeline
+    drops whatever it can't keep up with. Frames keep the timestamps readFrame gives them, shifted
+    on every loop so they keep increasing when looping. Each loop starts one average frame
+    interval after the last frame of the previous one, or DEFAULT_FRAME_INTERVAL_NANOS after it
+    when the frames don't span any time, as a single frame doesn't.
+
+    For results that don't depend on thread timing, read the frames with readFrame and hand them
+    to a DepthFrameProcessor directly.
+ */
+public abstract class PlaybackDepthFrameSource implements DepthFrameSource {
+    public enum Pacing {
+        ORIGINAL,
+        AS_FAST_AS_POSSIBLE
+    }
+
+    // 30 fps
+    public static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+    private volatile Pacing pacing = Pacing.ORIGINAL;
+    private volatile boolean looping;
+    private volatile boolean stopped;
+    private volatile IOException error;
+    private Thread thread;
+
+    public abstract int getFrameCount();
+
+    // Fills samples with the frame and returns its timestamp in nanoseconds. The same index must
+    // always give the same frame.
+    public abstract long readFrame(int index, short[] samples) throws IOException;
+
+    public void setPacing(Pacing pacing) {
+        this.pacing = pacing;
+    }
+
+    public Pacing getPacing() {
+        return pacing;
+    }
+
+    // Starts over from the first frame after the last one, until stopped
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    @Override
+    public synchronized void start(final DepthPipeline<?> pipeline) {
+        if (thread != null && thread.isAlive()) {
+            throw new IllegalStateException("Already playing");
+        }
+        pipeline.resize(getWidth(), getHeight());
+        stopped = false;
+        error = null;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                play(pipeline);
+            }
+        }, "DepthPlayback");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        stopped = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits for the last frame to be submitted (never, when looping). Throws the error that
+    // ended playback early, if any.
+    public void awaitFinished() throws InterruptedException, IOException {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void play(DepthPipeline<?> pipeline) {
+        int frameCount = getFrameCount();
+        if (frameCount == 0) {
+            return;
+        }
+        short[] samples = new short[getWidth() * getHeight()];
+        try {
+            long firstTimestamp = readFrame(0, samples);
+            long loopLength = 0;
+            long startNanos = System.nanoTime();
+            do {
+                long lastTimestamp = firstTimestamp;
+                for (int i = 0; i < frameCount && !stopped; i++) {
+                    long timestamp = readFrame(i, samples);
+                    lastTimestamp = timestamp;
+                    timestamp += loopLength;
+                    if (pacing == Pacing.ORIGINAL) {
+                        long delay = startNanos + (timestamp - firstTimestamp) - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                    }
+                    pipeline.submitFrame(samples, timestamp);
+                }
+                // The next loop starts one average frame interval after the last frame
+                long interval = frameCount > 1 ? (lastTimestamp - firstTimestamp) / (frameCount - 1) : 0;
+                if (interval <= 0) {
+                    interval = DEFAULT_FRAME_INTERVAL_NANOS;
+                }
+                loopLength += lastTimestamp - firstTimestamp + interval;
+            } while (looping && !stopped);
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
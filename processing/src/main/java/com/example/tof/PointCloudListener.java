@@ -0,0 +1,7 @@
+package com.example.tof;
+
+// Receives each frame's point cloud on the pipeline's processing thread. The projector's points
+// are only valid for the duration of the call.
+public interface PointCloudListener {
+    void onPointCloudAvailable(PointCloudProjector projector, long timestamp);
+}
@@ -0,0 +1,236 @@
+package com.example.tof;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/*  Unprojects DEPTH16 frames into XYZ points in meters, in the camera's frame: x to the right,
+    y down and z along the optical axis.
+
+    The ray through every pixel, ((x - cx) / fx, (y - cy) / fy, 1), depends only on the
+    intrinsics, so it is worked out once per frame size. Like DepthDecoder, every possible sample
+    is turned into a depth in meters (0 for invalid samples) by a 65536 entry table. A point then
+    costs a table lookup and one multiply per axis.
+
+    Points go into a direct FloatBuffer that is reused for every frame, three floats per point,
+    ready to hand to OpenGL. Output can be thinned out by only taking every stride-th pixel in
+    each direction, and/or by keeping only the first point that lands in each cube of a voxel grid.
+ */
+public class PointCloudProjector {
+    // Samples whose confidence is at or below this are dropped, as in DepthDecoder
+    public static final float DEFAULT_MIN_CONFIDENCE = DepthDecoder.DEFAULT_CONFIDENCE_FILTER;
+
+    private static final int TABLE_SIZE = 1 << 16;
+    private static final float METERS_PER_MILLIMETER = 0.001f;
+    // Voxel coordinates are packed into a long with this many bits each
+    private static final int VOXEL_BITS = 21;
+    private static final long VOXEL_MASK = (1L << VOXEL_BITS) - 1;
+
+    private final CameraIntrinsics intrinsics;
+    private final int width;
+    private final int height;
+    private final float[] rayX;
+    private final float[] rayY;
+    private final FloatBuffer points;
+    private int pointCount;
+
+    private volatile float[] depthTable;
+    private float minConfidence;
+    private volatile int stride = 1;
+    private volatile float voxelSize;
+
+    // Open addressing set of the voxels taken this frame. A slot is only in use if its stamp
+    // matches the current frame, so it never has to be cleared.
+    private final long[] voxelKeys;
+    private final int[] voxelStamps;
+    private int voxelStamp;
+
+    public PointCloudProjector(CameraIntrinsics intrinsics) {
+        this.intrinsics = intrinsics;
+        width = intrinsics.getWidth();
+        height = intrinsics.getHeight();
+
+        rayX = new float[width];
+        for (int x = 0; x < width; x++) {
+            rayX[x] = (x - intrinsics.getCx()) / intrinsics.getFx();
+        }
+        rayY = new float[height];
+        for (int y = 0; y < height; y++) {
+            rayY[y] = (y - intrinsics.getCy()) / intrinsics.getFy();
+        }
+
+        int size = width * height;
+        points = ByteBuffer.allocateDirect(size * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        points.limit(0);
+
+        int voxelCapacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+        voxelKeys = new long[voxelCapacity];
+        voxelStamps = new int[voxelCapacity];
+
+        setMinConfidence(DEFAULT_MIN_CONFIDENCE);
+    }
+
+    // A projector for another frame size with the same lens and settings
+    public PointCloudProjector withSize(int width, int height) {
+        PointCloudProjector projector = new PointCloudProjector(intrinsics.scaledTo(width, height));
+        projector.setMinConfidence(getMinConfidence());
+        projector.setStride(stride);
+        projector.setVoxelSize(voxelSize);
+        return projector;
+    }
+
+    public synchronized void setMinConfidence(float minConfidence) {
+        this.minConfidence = minConfidence;
+        float[] table = new float[TABLE_SIZE];
+        for (int sample = 0; sample < TABLE_SIZE; sample++) {
+            table[sample] = depthMeters((short) sample, minConfidence);
+        }
+        depthTable = table;
+    }
+
+    public synchronized float getMinConfidence() {
+        return minConfidence;
+    }
+
+    // Only every stride-th pixel of every stride-th row is projected. 1 projects every pixel.
+    public void setStride(int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Stride must be at least 1, was " + stride);
+        }
+        this.stride = stride;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    // Edge length in meters of the voxel grid used to thin out points, or 0 to keep every point
+    public void setVoxelSize(float voxelSize) {
+        if (voxelSize < 0) {
+            throw new IllegalArgumentException("Voxel size can't be negative, was " + voxelSize);
+        }
+        this.voxelSize = voxelSize;
+    }
+
+    public float getVoxelSize() {
+        return voxelSize;
+    }
+
+    // Depth in meters of a DEPTH16 sample, or 0 if it has no range or too little confidence
+    public static float depthMeters(short sample, float minConfidence) {
+        int depthRange = sample & 0x1FFF;
+        int depthConfidence = (sample >> 13) & 0x7;
+        float depthPercentage = depthConfidence == 0 ? 1.f : (depthConfidence - 1) / 7.f;
+        if (depthRange == 0 || depthPercentage <= minConfidence) {
+            return 0;
+        }
+        return depthRange * METERS_PER_MILLIMETER;
+    }
+
+    public void project(short[] depthSamples) {
+        float[] table = depthTable;
+        int stride = this.stride;
+        float voxelSize = this.voxelSize;
+        startFrame();
+        int count = 0;
+        for (int y = 0; y < height; y += stride) {
+            float ry = rayY[y];
+            int row = y * width;
+            for (int x = 0; x < width; x += stride) {
+                float z = table[depthSamples[row + x] & 0xFFFF];
+                if (z != 0) {
+                    count = addPoint(count, rayX[x] * z, ry * z, z, voxelSize);
+                }
+            }
+        }
+        finishFrame(count);
+    }
+
+    public void project(ShortBuffer depthBuffer) {
+        float[] table = depthTable;
+        int stride = this.stride;
+        float voxelSize = this.voxelSize;
+        startFrame();
+        int count = 0;
+        for (int y = 0; y < height; y += stride) {
+            float ry = rayY[y];
+            int row = y * width;
+            for (int x = 0; x < width; x += stride) {
+                float z = table[depthBuffer.get(row + x) & 0xFFFF];
+                if (z != 0) {
+                    count = addPoint(count, rayX[x] * z, ry * z, z, voxelSize);
+                }
+            }
+        }
+        finishFrame(count);
+    }
+
+    private void startFrame() {
+        points.clear();
+        if (++voxelStamp == 0) {
+            // Stamps wrapped around, so old ones could look current again
+            Arrays.fill(voxelStamps, 0);
+            voxelStamp = 1;
+        }
+    }
+
+    private int addPoint(int count, float x, float y, float z, float voxelSize) {
+        if (voxelSize > 0 && !claimVoxel(x, y, z, voxelSize)) {
+            return count;
+        }
+        int index = count * 3;
+        points.put(index, x);
+        points.put(index + 1, y);
+        points.put(index + 2, z);
+        return count + 1;
+    }
+
+    // True if no earlier point of this frame fell into the point's voxel
+    private boolean claimVoxel(float x, float y, float z, float voxelSize) {
+        long key = (((long) Math.floor(x / voxelSize) & VOXEL_MASK) << (2 * VOXEL_BITS))
+                | (((long) Math.floor(y / voxelSize) & VOXEL_MASK) << VOXEL_BITS)
+                | ((long) Math.floor(z / voxelSize) & VOXEL_MASK);
+        int mask = voxelKeys.length - 1;
+        // Fibonacci hashing spreads neighbouring voxels across the table
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (voxelStamps[slot] == voxelStamp) {
+            if (voxelKeys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        voxelStamps[slot] = voxelStamp;
+        voxelKeys[slot] = key;
+        return true;
+    }
+
+    private void finishFrame(int count) {
+        pointCount = count;
+        points.limit(count * 3);
+        points.position(0);
+    }
+
+    // x, y, z of each point from the last frame, between position 0 and the limit. Overwritten by
+    // the next project call.
+    public FloatBuffer getPoints() {
+        return points;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public CameraIntrinsics getIntrinsics() {
+        return intrinsics;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.tof;
+
+// A snapshot of the masks DepthFrameProcessor computed for one frame, kept as unsigned bytes like
+// the processor's own.
+public class ProcessedFrame {
+    private final int width;
+    private final int height;
+    // Indexed by DepthStage ordinal
+    private final byte[][] masks;
+    private int stages;
+    private long timestamp;
+
+    public ProcessedFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        masks = new byte[DepthStage.count()][];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = new byte[width * height];
+        }
+    }
+
+    // Copies only the stages the processor computed for its last frame
+    public void set(DepthFrameProcessor processor, long timestamp) {
+        stages = processor.getComputedStages();
+        for (int i = 0; i < masks.length; i++) {
+            DepthStage stage = DepthStage.fromOrdinal(i);
+            if (stage.isIn(stages)) {
+                System.arraycopy(processor.getMask(stage), 0, masks[i], 0, masks[i].length);
+            }
+        }
+        this.timestamp = timestamp;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // The stages this frame holds, as a DepthStage bit mask
+    public int getStages() {
+        return stages;
+    }
+
+    public boolean hasStage(DepthStage stage) {
+        return stage.isIn(stages);
+    }
+
+    // Read values with (mask[i] & 0xFF)
+    public byte[] getMask(DepthStage stage) {
+        return masks[stage.ordinal()];
+    }
+
+    public byte[] getRawMask() {
+        return getMask(DepthStage.RAW);
+    }
+
+    public byte[] getNoiseReduceMask() {
+        return getMask(DepthStage.NOISE_REDUCTION);
+    }
+
+    public byte[] getAveragedMask() {
+        return getMask(DepthStage.MOVING_AVERAGE);
+    }
+
+    public byte[] getBlurredAverage() {
+        return getMask(DepthStage.BLURRED_MOVING_AVERAGE);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
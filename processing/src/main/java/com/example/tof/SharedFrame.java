@@ -0,0 +1,115 @@
+package com.example.tof;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*  One stage's mask for one frame, shared by any number of consumers without copying.
+
+    Frames come from a SharedFramePool and are reference counted: a consumer that keeps a frame
+    beyond the call that delivered it calls retain, and release once it is done. When the last
+    reference is released the frame goes back to its pool to be reused, so its contents must not
+    be read after that.
+ */
+public class SharedFrame {
+    private final SharedFramePool pool;
+    private final int width;
+    private final int height;
+    private final byte[] data;
+    private final ByteBuffer readOnlyData;
+    private final AtomicInteger referenceCount = new AtomicInteger();
+    private DepthStage stage;
+    private long timestamp;
+    // When the pool handed the frame out, for leak tracking
+    long acquiredAt;
+
+    SharedFrame(SharedFramePool pool, int width, int height) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        data = new byte[width * height];
+        readOnlyData = ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    void set(DepthStage stage, byte[] mask, long timestamp) {
+        System.arraycopy(mask, 0, data, 0, data.length);
+        this.stage = stage;
+        this.timestamp = timestamp;
+    }
+
+    // Called by the pool when handing the frame out
+    void open(long now) {
+        acquiredAt = now;
+        referenceCount.set(1);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public DepthStage getStage() {
+        return stage;
+    }
+
+    // The sensor timestamp of the frame the mask was computed from
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // The mask value of a pixel, 0-255
+    public int get(int index) {
+        return data[index] & 0xFF;
+    }
+
+    public int get(int x, int y) {
+        return data[y * width + x] & 0xFF;
+    }
+
+    // A read-only view of the mask. The view is shared by every consumer, so read it with
+    // absolute gets only and leave its position alone.
+    public ByteBuffer getData() {
+        checkReferenced();
+        return readOnlyData;
+    }
+
+    public void copyTo(byte[] mask) {
+        checkReferenced();
+        System.arraycopy(data, 0, mask, 0, data.length);
+    }
+
+    public int getReferenceCount() {
+        return referenceCount.get();
+    }
+
+    // Keeps the frame from being reused until a matching release. Returns the frame for chaining.
+    public SharedFrame retain() {
+        while (true) {
+            int count = referenceCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame was already returned to its pool");
+            }
+            if (referenceCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    public void release() {
+        int count = referenceCount.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            referenceCount.incrementAndGet();
+            throw new IllegalStateException("Frame released more often than it was retained");
+        }
+    }
+
+    private void checkReferenced() {
+        if (referenceCount.get() <= 0) {
+            throw new IllegalStateException("Frame was already returned to its pool");
+        }
+    }
+}
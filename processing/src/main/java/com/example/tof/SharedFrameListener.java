@@ -0,0 +1,8 @@
+package com.example.tof;
+
+// Receives a subscribed stage's mask on the pipeline's processing thread. Every listener of a stage
+// gets the same frame. It stays valid for the duration of the call; to keep it longer, call
+// retain and release it when done.
+public interface SharedFrameListener {
+    void onFrameAvailable(SharedFrame frame);
+}
@@ -0,0 +1,100 @@
+package com.example.tof;
+
+/*  A fixed number of SharedFrames of one size. Frames are all allocated up front and never
+    replaced, so handing them out creates no garbage.
+
+    acquire returns null when every frame is in use rather than growing the pool, and counts it,
+    so a consumer that holds on to frames for too long shows up as exhaustion instead of as
+    memory growth. Frames held for longer than a given time can be counted as leaks.
+ */
+public class SharedFramePool {
+    private final int width;
+    private final int height;
+    private final NanoClock clock;
+    private final SharedFrame[] frames;
+    private final SharedFrame[] freeFrames;
+    private int freeCount;
+    private long acquiredCount;
+    private long exhaustedCount;
+
+    public SharedFramePool(int width, int height, int capacity) {
+        this(width, height, capacity, NanoClock.SYSTEM);
+    }
+
+    // The clock is used to tell how long frames have been held, see getLeakedCount
+    public SharedFramePool(int width, int height, int capacity, NanoClock clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pool needs at least one frame, was " + capacity);
+        }
+        this.width = width;
+        this.height = height;
+        this.clock = clock;
+        frames = new SharedFrame[capacity];
+        freeFrames = new SharedFrame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new SharedFrame(this, width, height);
+            freeFrames[i] = frames[i];
+        }
+        freeCount = capacity;
+    }
+
+    // Returns a frame holding one reference, or null if every frame is in use
+    public synchronized SharedFrame acquire() {
+        if (freeCount == 0) {
+            exhaustedCount++;
+            return null;
+        }
+        SharedFrame frame = freeFrames[--freeCount];
+        freeFrames[freeCount] = null;
+        frame.open(clock.nanoTime());
+        acquiredCount++;
+        return frame;
+    }
+
+    synchronized void recycle(SharedFrame frame) {
+        freeFrames[freeCount++] = frame;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    public synchronized int getAvailableCount() {
+        return freeCount;
+    }
+
+    // Frames currently held by somebody
+    public synchronized int getOutstandingCount() {
+        return frames.length - freeCount;
+    }
+
+    public synchronized long getAcquiredCount() {
+        return acquiredCount;
+    }
+
+    // Times acquire found no free frame
+    public synchronized long getExhaustedCount() {
+        return exhaustedCount;
+    }
+
+    // Frames that have been held for longer than maxHoldNanos, most likely because a consumer
+    // retained them and never released them
+    public synchronized int getLeakedCount(long maxHoldNanos) {
+        long now = clock.nanoTime();
+        int leaked = 0;
+        for (SharedFrame frame : frames) {
+            if (frame.getReferenceCount() > 0 && now - frame.acquiredAt > maxHoldNanos) {
+                leaked++;
+            }
+        }
+        return leaked;
+    }
+}
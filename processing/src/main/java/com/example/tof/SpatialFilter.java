@@ -0,0 +1,9 @@
+package com.example.tof;
+
+// A filter over one frame of 0-255 mask values, like the blurs of the noise reduction stages.
+// Masks are unsigned bytes, as DepthFrameProcessor keeps them. Implementations allocate nothing
+// per frame once they have seen a frame size, and aren't safe to use from several threads at
+// once.
+public interface SpatialFilter {
+    void filter(byte[] input, byte[] output, int width, int height);
+}
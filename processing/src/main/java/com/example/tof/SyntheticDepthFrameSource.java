@@ -0,0 +1,264 @@
+package com.example.tof;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*  Renders DEPTH16 frames of a scene made of planes and moving spheres, seen through a pinhole
+    camera with the given intrinsics.
+
+    Every pixel's ray is intersected with each shape and takes the range of the nearest hit, or
+    no range when nothing is hit within the 13 bits a sample can hold. Gaussian range noise and
+    dropouts (samples flagged with the lowest confidence) can be added on top.
+
+    A frame depends only on the seed and its index, so any frame can be rendered again exactly,
+    in any order, making runs repeatable across tests and benchmarks. Rendering allocates nothing.
+ */
+public class SyntheticDepthFrameSource extends PlaybackDepthFrameSource {
+    public static final int DEFAULT_FRAME_COUNT = 300;
+    public static final float DEFAULT_FPS = 30f;
+
+    private static final int MAX_RANGE_MILLIMETERS = 0x1FFF;
+    // Confidence code 1 decodes to 0%, which every confidence filter rejects
+    private static final int LOW_CONFIDENCE = 1 << 13;
+
+    private final CameraIntrinsics intrinsics;
+    private final long seed;
+    private final float[] rayX;
+    private final float[] rayY;
+    private final List<Shape> shapes = new ArrayList<>();
+    private volatile int frameCount = DEFAULT_FRAME_COUNT;
+    private volatile float fps = DEFAULT_FPS;
+    private volatile float noiseMillimeters;
+    private volatile float dropoutProbability;
+
+    public SyntheticDepthFrameSource(CameraIntrinsics intrinsics, long seed) {
+        this.intrinsics = intrinsics;
+        this.seed = seed;
+        rayX = new float[intrinsics.getWidth()];
+        for (int x = 0; x < rayX.length; x++) {
+            rayX[x] = (x - intrinsics.getCx()) / intrinsics.getFx();
+        }
+        rayY = new float[intrinsics.getHeight()];
+        for (int y = 0; y < rayY.length; y++) {
+            rayY[y] = (y - intrinsics.getCy()) / intrinsics.getFy();
+        }
+    }
+
+    // A plane of the points p with normal . p = distance, in meters in the camera's frame (x to
+    // the right, y down, z forward). (0, 0, 1) and 1 is a wall a meter in front of the camera.
+    public synchronized SyntheticDepthFrameSource addPlane(float normalX, float normalY, float normalZ, float distance) {
+        float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+        if (length == 0) {
+            throw new IllegalArgumentException("The normal of a plane can't be zero");
+        }
+        shapes.add(new Plane(normalX / length, normalY / length, normalZ / length, distance / length));
+        return this;
+    }
+
+    // A sphere at (x, y, z) meters in the first frame, moving by (vx, vy, vz) meters per second
+    public synchronized SyntheticDepthFrameSource addSphere(float x, float y, float z, float radius,
+            float vx, float vy, float vz) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Radius must be positive, was " + radius);
+        }
+        shapes.add(new Sphere(x, y, z, radius, vx, vy, vz));
+        return this;
+    }
+
+    public void setFrameCount(int frameCount) {
+        this.frameCount = frameCount;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void setFps(float fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive, was " + fps);
+        }
+        this.fps = fps;
+    }
+
+    public float getFps() {
+        return fps;
+    }
+
+    // Standard deviation of the range noise
+    public void setNoise(float noiseMillimeters) {
+        this.noiseMillimeters = noiseMillimeters;
+    }
+
+    public float getNoise() {
+        return noiseMillimeters;
+    }
+
+    // Chance (0-1) of each sample being flagged as low confidence
+    public void setDropoutProbability(float dropoutProbability) {
+        this.dropoutProbability = dropoutProbability;
+    }
+
+    public float getDropoutProbability() {
+        return dropoutProbability;
+    }
+
+    public CameraIntrinsics getIntrinsics() {
+        return intrinsics;
+    }
+
+    @Override
+    public int getWidth() {
+        return intrinsics.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return intrinsics.getHeight();
+    }
+
+    public long getTimestamp(int index) {
+        return (long) (index * 1e9 / fps);
+    }
+
+    @Override
+    public synchronized long readFrame(int index, short[] samples) {
+        int width = getWidth();
+        int height = getHeight();
+        long timestamp = getTimestamp(index);
+        float seconds = timestamp / 1e9f;
+        float noise = noiseMillimeters;
+        float dropout = dropoutProbability;
+        // Seeded per frame, so frames don't depend on which were rendered before
+        long random = mix(seed ^ mix(index + 1));
+        int shapeCount = shapes.size();
+        for (int y = 0; y < height; y++) {
+            float ry = rayY[y];
+            for (int x = 0; x < width; x++) {
+                float rx = rayX[x];
+                float nearest = Float.POSITIVE_INFINITY;
+                for (int i = 0; i < shapeCount; i++) {
+                    nearest = Math.min(nearest, shapes.get(i).intersect(rx, ry, seconds));
+                }
+
+                int sample = 0;
+                if (nearest != Float.POSITIVE_INFINITY) {
+                    float range = nearest * 1000f;
+                    if (noise > 0) {
+                        // The sum of four uniform values is close enough to a normal distribution
+                        float sum = 0;
+                        for (int j = 0; j < 4; j++) {
+                            random = xorshift(random);
+                            sum += uniform(random);
+                        }
+                        range += (sum - 2f) * 1.7320508f * noise;
+                    }
+                    int millimeters = Math.round(range);
+                    if (millimeters > 0 && millimeters <= MAX_RANGE_MILLIMETERS) {
+                        sample = millimeters;
+                        if (dropout > 0) {
+                            random = xorshift(random);
+                            if (uniform(random) < dropout) {
+                                sample |= LOW_CONFIDENCE;
+                            }
+                        }
+                    }
+                }
+                samples[y * width + x] = (short) sample;
+            }
+        }
+        return timestamp;
+    }
+
+    private static long xorshift(long x) {
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        return x;
+    }
+
+    // SplitMix64's finalizer, to turn neighbouring seeds into unrelated states
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        x = x ^ (x >>> 31);
+        return x != 0 ? x : 1;
+    }
+
+    // 0 (inclusive) to 1 (exclusive) from the top 24 bits
+    private static float uniform(long random) {
+        return (random >>> 40) / (float) (1 << 24);
+    }
+
+    private abstract static class Shape {
+        // Distance along the ray (rx, ry, 1) to the nearest hit in front of the camera, which is
+        // also the hit's z, or infinity
+        abstract float intersect(float rx, float ry, float seconds);
+    }
+
+    private static class Plane extends Shape {
+        private final float nx;
+        private final float ny;
+        private final float nz;
+        private final float distance;
+
+        Plane(float nx, float ny, float nz, float distance) {
+            this.nx = nx;
+            this.ny = ny;
+            this.nz = nz;
+            this.distance = distance;
+        }
+
+        @Override
+        float intersect(float rx, float ry, float seconds) {
+            float denominator = nx * rx + ny * ry + nz;
+            if (denominator == 0) {
+                return Float.POSITIVE_INFINITY;
+            }
+            float t = distance / denominator;
+            return t > 0 ? t : Float.POSITIVE_INFINITY;
+        }
+    }
+
+    private static class Sphere extends Shape {
+        private final float x;
+        private final float y;
+        private final float z;
+        private final float radius;
+        private final float vx;
+        private final float vy;
+        private final float vz;
+
+        Sphere(float x, float y, float z, float radius, float vx, float vy, float vz) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.radius = radius;
+            this.vx = vx;
+            this.vy = vy;
+            this.vz = vz;
+        }
+
+        @Override
+        float intersect(float rx, float ry, float seconds) {
+            float cx = x + vx * seconds;
+            float cy = y + vy * seconds;
+            float cz = z + vz * seconds;
+            // |t * r - c|^2 = radius^2, solved for the smaller t
+            float a = rx * rx + ry * ry + 1;
+            float b = rx * cx + ry * cy + cz;
+            float c = cx * cx + cy * cy + cz * cz - radius * radius;
+            float discriminant = b * b - a * c;
+            if (discriminant < 0) {
+                return Float.POSITIVE_INFINITY;
+            }
+            float root = (float) Math.sqrt(discriminant);
+            float t = (b - root) / a;
+            if (t <= 0) {
+                // The camera is inside the sphere, so it sees the far side
+                t = (b + root) / a;
+            }
+            return t > 0 ? t : Float.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.tof;
+
+import java.util.Arrays;
+
+/*  Smooths decoded depth over time to suppress ToF flicker.
+
+    WINDOW mode averages the last N raw frames. The frames are kept in a ring of byte[] next to
+    a per-pixel running sum, so each frame adds the newest sample and subtracts the one leaving
+    the window. The cost per pixel is the same for any N.
+
+    EMA mode keeps an exponential moving average per pixel in 24.8 fixed point, which needs no
+    history at all.
+
+    Either mode can weight samples by their DEPTH16 confidence (see confidenceWeight), so low
+    confidence samples count for less and zero confidence samples don't count at all.
+ */
+public class TemporalFilter {
+    public enum Mode {
+        WINDOW,
+        EMA
+    }
+
+    public static final int DEFAULT_WINDOW_SIZE = 3;
+    // Weight of the newest frame in EMA mode, out of 256
+    public static final int DEFAULT_EMA_ALPHA = 64;
+    // Largest value confidenceWeight returns
+    public static final int MAX_CONFIDENCE_WEIGHT = 7;
+
+    private static final int EMA_SHIFT = 8;
+
+    private final int size;
+    private Mode mode = Mode.WINDOW;
+    private boolean confidenceWeighted;
+    private int windowSize;
+    private int emaAlpha;
+
+    // WINDOW mode: ring of the last windowSize frames and their weights, plus running sums
+    private byte[][] frames;
+    private byte[][] frameWeights;
+    private int ringHead;
+    private int ringCount;
+    private int[] sums;
+    private int[] weightSums;
+
+    // EMA mode: value << EMA_SHIFT per pixel, and whether a frame has been seen yet
+    private int[] emaState;
+    private boolean emaStarted;
+    // emaAlpha scaled by each possible confidence weight
+    private final int[] weightedAlphas = new int[MAX_CONFIDENCE_WEIGHT + 1];
+
+    public TemporalFilter(int width, int height) {
+        this(width, height, DEFAULT_WINDOW_SIZE);
+    }
+
+    public TemporalFilter(int width, int height, int windowSize) {
+        size = width * height;
+        sums = new int[size];
+        weightSums = new int[size];
+        emaState = new int[size];
+        setEmaAlpha(DEFAULT_EMA_ALPHA);
+        setWindowSize(windowSize);
+    }
+
+    // A filter for another frame size with the same settings, starting with an empty history
+    public synchronized TemporalFilter withSize(int width, int height) {
+        TemporalFilter filter = new TemporalFilter(width, height, windowSize);
+        filter.setMode(mode);
+        filter.setEmaAlpha(emaAlpha);
+        filter.setConfidenceWeighted(confidenceWeighted);
+        return filter;
+    }
+
+    // 0-7 weight for a raw DEPTH16 sample, following the confidence encoding extractRange uses:
+    // 0 means full confidence and 1-7 mean 0/7 to 6/7 confidence
+    public static int confidenceWeight(short sample) {
+        int depthConfidence = (sample >> 13) & 0x7;
+        return depthConfidence == 0 ? MAX_CONFIDENCE_WEIGHT : depthConfidence - 1;
+    }
+
+    public synchronized void setMode(Mode mode) {
+        if (this.mode != mode) {
+            this.mode = mode;
+            reset();
+        }
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    // Changing the window size reallocates the history, so do it when setting up rather than
+    // every frame
+    public synchronized void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1, was " + windowSize);
+        }
+        this.windowSize = windowSize;
+        frames = new byte[windowSize][size];
+        frameWeights = confidenceWeighted ? new byte[windowSize][size] : null;
+        reset();
+    }
+
+    public synchronized int getWindowSize() {
+        return windowSize;
+    }
+
+    // alpha out of 256: 256 follows the newest frame exactly, smaller values smooth more
+    public synchronized void setEmaAlpha(int alpha) {
+        if (alpha < 1 || alpha > 1 << EMA_SHIFT) {
+            throw new IllegalArgumentException("EMA alpha must be 1 to 256, was " + alpha);
+        }
+        emaAlpha = alpha;
+        for (int weight = 0; weight <= MAX_CONFIDENCE_WEIGHT; weight++) {
+            weightedAlphas[weight] = alpha * weight / MAX_CONFIDENCE_WEIGHT;
+        }
+    }
+
+    public synchronized int getEmaAlpha() {
+        return emaAlpha;
+    }
+
+    public synchronized void setConfidenceWeighted(boolean confidenceWeighted) {
+        if (this.confidenceWeighted != confidenceWeighted) {
+            this.confidenceWeighted = confidenceWeighted;
+            frameWeights = confidenceWeighted ? new byte[windowSize][size] : null;
+            reset();
+        }
+    }
+
+    public synchronized boolean isConfidenceWeighted() {
+        return confidenceWeighted;
+    }
+
+    public synchronized void reset() {
+        ringHead = 0;
+        ringCount = 0;
+        emaStarted = false;
+        Arrays.fill(sums, 0);
+        Arrays.fill(weightSums, 0);
+        // Until the ring fills up, the running sums rely on unused slots being zero
+        for (byte[] frame : frames) {
+            Arrays.fill(frame, (byte) 0);
+        }
+        if (frameWeights != null) {
+            for (byte[] weights : frameWeights) {
+                Arrays.fill(weights, (byte) 0);
+            }
+        }
+    }
+
+    // Adds a frame of decoded 0-255 values, stored as unsigned bytes, and writes the filtered
+    // result to output. weights holds a confidenceWeight per pixel and is only read when confidence
+    // weighting is on.
+    public synchronized void filter(byte[] values, byte[] weights, byte[] output) {
+        if (mode == Mode.EMA) {
+            filterEma(values, confidenceWeighted ? weights : null, output);
+        } else if (confidenceWeighted) {
+            filterWindowWeighted(values, weights, output);
+        } else {
+            filterWindow(values, output);
+        }
+    }
+
+    private void filterWindow(byte[] values, byte[] output) {
+        byte[] slot = frames[ringHead];
+        boolean full = ringCount == windowSize;
+        int count = full ? windowSize : ringCount + 1;
+        int[] sums = this.sums;
+        for (int i = 0; i < size; i++) {
+            int value = values[i] & 0xFF;
+            // The slot holds the frame leaving the window once the ring is full, zeros before that
+            int sum = sums[i] + value - (slot[i] & 0xFF);
+            sums[i] = sum;
+            slot[i] = (byte) value;
+            output[i] = (byte) (sum / count);
+        }
+        advanceRing();
+    }
+
+    private void filterWindowWeighted(byte[] values, byte[] weights, byte[] output) {
+        byte[] slot = frames[ringHead];
+        byte[] slotWeights = frameWeights[ringHead];
+        int[] sums = this.sums;
+        int[] weightSums = this.weightSums;
+        for (int i = 0; i < size; i++) {
+            int value = values[i] & 0xFF;
+            int weight = weights[i];
+            int sum = sums[i] + weight * value - slotWeights[i] * (slot[i] & 0xFF);
+            int weightSum = weightSums[i] + weight - slotWeights[i];
+            sums[i] = sum;
+            weightSums[i] = weightSum;
+            slot[i] = (byte) value;
+            slotWeights[i] = (byte) weight;
+            output[i] = (byte) (weightSum > 0 ? sum / weightSum : 0);
+        }
+        advanceRing();
+    }
+
+    private void advanceRing() {
+        ringHead = ringHead + 1 == windowSize ? 0 : ringHead + 1;
+        if (ringCount < windowSize) {
+            ringCount++;
+        }
+    }
+
+    private void filterEma(byte[] values, byte[] weights, byte[] output) {
+        int[] state = emaState;
+        if (!emaStarted) {
+            // Start from the first frame rather than fading in from zero
+            for (int i = 0; i < size; i++) {
+                state[i] = (values[i] & 0xFF) << EMA_SHIFT;
+            }
+            emaStarted = true;
+        } else if (weights == null) {
+            int alpha = emaAlpha;
+            for (int i = 0; i < size; i++) {
+                int current = state[i];
+                state[i] = current + ((alpha * (((values[i] & 0xFF) << EMA_SHIFT) - current)) >> EMA_SHIFT);
+            }
+        } else {
+            int[] weightedAlphas = this.weightedAlphas;
+            for (int i = 0; i < size; i++) {
+                // Less confident samples move the average less, zero confidence not at all
+                int weightedAlpha = weightedAlphas[weights[i]];
+                int current = state[i];
+                state[i] = current + ((weightedAlpha * (((values[i] & 0xFF) << EMA_SHIFT) - current)) >> EMA_SHIFT);
+            }
+        }
+        int half = 1 << (EMA_SHIFT - 1);
+        for (int i = 0; i < size; i++) {
+            output[i] = (byte) ((state[i] + half) >> EMA_SHIFT);
+        }
+    }
+}
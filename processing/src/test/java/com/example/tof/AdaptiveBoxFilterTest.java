@@ -0,0 +1,60 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBoxFilterTest {
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 45;
+
+    @Test
+    public void filter_averagesTheValidPixelsInEachPixelsOwnRadius() {
+        Random random = new Random(9);
+        byte[] input = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) (random.nextInt(6) == 0 ? 0 : 1 + random.nextInt(255));
+        }
+        byte[] output = new byte[input.length];
+
+        new AdaptiveBoxFilter(1, 5).filter(input, output, WIDTH, HEIGHT);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = input[y * WIDTH + x] & 0xFF;
+                if (value == 0) {
+                    assertEquals(0, output[y * WIDTH + x]);
+                    continue;
+                }
+                int radius = Math.round(1 + 4 * (value - 1) / 254f);
+                long sum = 0;
+                int count = 0;
+                for (int sy = Math.max(0, y - radius); sy <= Math.min(HEIGHT - 1, y + radius); sy++) {
+                    for (int sx = Math.max(0, x - radius); sx <= Math.min(WIDTH - 1, x + radius); sx++) {
+                        int neighbour = input[sy * WIDTH + sx] & 0xFF;
+                        if (neighbour != 0) {
+                            sum += neighbour;
+                            count++;
+                        }
+                    }
+                }
+                assertEquals((sum + count / 2) / count, output[y * WIDTH + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void filter_withZeroRadiiLeavesTheMaskAlone() {
+        byte[] input = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        byte[] output = new byte[input.length];
+
+        new AdaptiveBoxFilter(0, 0).filter(input, output, WIDTH, HEIGHT);
+
+        assertArrayEquals(input, output);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AutoRangeTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void update_spreadsTheDepthsInViewOverTheWholeMask() {
+        AutoRange autoRange = new AutoRange();
+        DepthDecoder decoder = new DepthDecoder();
+
+        assertTrue(autoRange.update(ramp(2000, 3000), decoder));
+
+        // The percentiles cut off a little at either end
+        assertEquals(2000, autoRange.getNear(), 40);
+        assertEquals(3000, autoRange.getFar(), 40);
+        assertEquals(0, decoder.decode((short) autoRange.getNear()));
+        assertEquals(255, decoder.decode((short) autoRange.getFar()));
+        assertEquals(128, decoder.decode((short) 2500), 10);
+    }
+
+    @Test
+    public void update_keepsTheRangeForSmallChanges() {
+        AutoRange autoRange = new AutoRange();
+        DepthDecoder decoder = new DepthDecoder();
+        autoRange.update(ramp(1000, 1500), decoder);
+        float rangeMin = decoder.getRangeMin();
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse(autoRange.update(ramp(1020, 1520), decoder));
+        }
+        assertEquals(rangeMin, decoder.getRangeMin(), 0);
+
+        // The old depths decay out of the histogram over a few frames
+        int changes = 0;
+        for (int i = 0; i < 40; i++) {
+            if (autoRange.update(ramp(1400, 1900), decoder)) {
+                changes++;
+            }
+        }
+        assertTrue(changes > 0);
+        assertEquals(1400, autoRange.getNear(), 60);
+    }
+
+    @Test
+    public void update_ignoresSamplesTheDecoderFiltersOut() {
+        AutoRange autoRange = new AutoRange();
+        DepthDecoder decoder = new DepthDecoder();
+        short[] samples = ramp(3000, 3500);
+        for (int i = 0; i < samples.length; i += 2) {
+            // Confidence code 1 is below the default confidence filter
+            samples[i] = (short) (1 << 13 | 500);
+        }
+
+        autoRange.update(samples, decoder);
+
+        assertEquals(3000, autoRange.getNear(), 40);
+    }
+
+    @Test
+    public void update_keepsAMinimumSpanForFlatScenes() {
+        AutoRange autoRange = new AutoRange();
+        DepthDecoder decoder = new DepthDecoder();
+
+        autoRange.update(ramp(1200, 1200), decoder);
+
+        assertEquals(AutoRange.DEFAULT_MIN_SPAN, autoRange.getFar() - autoRange.getNear());
+    }
+
+    @Test
+    public void process_fitsTheRangeBeforeDecoding() {
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        processor.setAutoRange(new AutoRange());
+
+        processor.process(ramp(4000, 6000), DepthStage.RAW.mask());
+
+        int min = 255;
+        int max = 0;
+        for (byte value : processor.getRawMask()) {
+            min = Math.min(min, value & 0xFF);
+            max = Math.max(max, value & 0xFF);
+        }
+        assertEquals(0, min);
+        assertEquals(255, max);
+        // A copy for a new size keeps fitting the range
+        assertNotNull(processor.withSize(32, 24).getAutoRange());
+    }
+
+    // Depth rising evenly from the left edge to the right one
+    private static short[] ramp(int from, int to) {
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                samples[y * WIDTH + x] = (short) (from + (to - from) * x / (WIDTH - 1));
+            }
+        }
+        return samples;
+    }
+}
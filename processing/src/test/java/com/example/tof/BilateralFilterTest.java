@@ -0,0 +1,60 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BilateralFilterTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void filter_smoothsNoiseButNotTheEdgeBetweenSurfaces() {
+        Random random = new Random(3);
+        byte[] input = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int surface = x < WIDTH / 2 ? 60 : 180;
+                input[y * WIDTH + x] = (byte) (surface + random.nextInt(11) - 5);
+            }
+        }
+        byte[] output = new byte[input.length];
+
+        new BilateralFilter(2, 1.5f, 12f).filter(input, output, WIDTH, HEIGHT);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            // Right next to the edge each side keeps its own depth
+            assertEquals(60, output[y * WIDTH + WIDTH / 2 - 1] & 0xFF, 5);
+            assertEquals(180, output[y * WIDTH + WIDTH / 2] & 0xFF, 5);
+        }
+        assertTrue(deviation(output, 60, 0, WIDTH / 2 - 3) < deviation(input, 60, 0, WIDTH / 2 - 3) / 2);
+        assertTrue(deviation(output, 180, WIDTH / 2 + 3, WIDTH) < deviation(input, 180, WIDTH / 2 + 3, WIDTH) / 2);
+    }
+
+    @Test
+    public void filter_leavesAFlatMaskAlone() {
+        byte[] input = new byte[WIDTH * HEIGHT];
+        java.util.Arrays.fill(input, (byte) 123);
+        byte[] output = new byte[input.length];
+
+        new BilateralFilter(3, 2f, 20f).filter(input, output, WIDTH, HEIGHT);
+
+        assertArrayEquals(input, output);
+    }
+
+    // Root mean square distance from the expected value over a range of columns
+    private static double deviation(byte[] mask, int expected, int fromX, int toX) {
+        double sum = 0;
+        int count = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = fromX; x < toX; x++) {
+                double difference = (mask[y * WIDTH + x] & 0xFF) - expected;
+                sum += difference * difference;
+                count++;
+            }
+        }
+        return Math.sqrt(sum / count);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class BlobDetectorTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+
+    @Test
+    public void detect_measuresEachBlob() {
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        fill(mask, 10, 5, 19, 14, 100);
+        fill(mask, 40, 30, 69, 39, 200);
+        // Outside the band
+        fill(mask, 0, 50, 9, 59, 30);
+
+        BlobDetector detector = new BlobDetector();
+        detector.setBand(50, 255);
+        detector.setMinArea(1);
+        detector.detect(mask, WIDTH, HEIGHT);
+
+        assertEquals(2, detector.getBlobCount());
+        Blob large = detector.getBlob(0);
+        assertEquals(300, large.getArea());
+        assertEquals(40, large.getMinX());
+        assertEquals(30, large.getMinY());
+        assertEquals(69, large.getMaxX());
+        assertEquals(39, large.getMaxY());
+        assertEquals(54.5f, large.getCentroidX(), 1e-4f);
+        assertEquals(34.5f, large.getCentroidY(), 1e-4f);
+        assertEquals(200f, large.getMeanDepth(), 1e-4f);
+        Blob small = detector.getBlob(1);
+        assertEquals(100, small.getArea());
+        assertEquals(14.5f, small.getCentroidX(), 1e-4f);
+        assertEquals(9.5f, small.getCentroidY(), 1e-4f);
+        assertEquals(100f, small.getMeanDepth(), 1e-4f);
+    }
+
+    @Test
+    public void detect_joinsBranchesThatMeetFurtherDown() {
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        // A U and a W whose arms only join at the bottom, plus a diagonal line
+        fill(mask, 5, 5, 6, 20, 100);
+        fill(mask, 15, 5, 16, 20, 100);
+        fill(mask, 5, 21, 16, 22, 100);
+        fill(mask, 30, 5, 30, 20, 100);
+        fill(mask, 35, 5, 35, 20, 100);
+        fill(mask, 40, 5, 40, 20, 100);
+        fill(mask, 30, 21, 40, 21, 100);
+        for (int i = 0; i < 10; i++) {
+            mask[(40 + i) * WIDTH + 50 + i] = 100;
+        }
+
+        BlobDetector detector = new BlobDetector();
+        detector.setMinArea(1);
+        detector.detect(mask, WIDTH, HEIGHT);
+
+        assertEquals(3, detector.getBlobCount());
+        assertEquals(32 + 32 + 24, detector.getBlob(0).getArea());
+        assertEquals(5, detector.getBlob(0).getMinX());
+        assertEquals(16, detector.getBlob(0).getMaxX());
+        assertEquals(16 * 3 + 11, detector.getBlob(1).getArea());
+        assertEquals(10, detector.getBlob(2).getArea());
+    }
+
+    @Test
+    public void detect_matchesFloodFillOnNoise() {
+        Random random = new Random(15);
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) (random.nextInt(5) < 2 ? 0 : 1 + random.nextInt(255));
+        }
+
+        BlobDetector detector = new BlobDetector(1000);
+        detector.setBand(60, 220);
+        detector.setMinArea(3);
+        detector.detect(mask, WIDTH, HEIGHT);
+
+        int[] areas = floodFillAreas(mask, 60, 220, 3);
+        assertEquals(areas.length, detector.getBlobCount());
+        for (int i = 0; i < areas.length; i++) {
+            assertEquals(areas[i], detector.getBlob(i).getArea());
+        }
+    }
+
+    @Test
+    public void detect_keepsIdsWhileBlobsMove() {
+        BlobDetector detector = new BlobDetector();
+        detector.setMinArea(1);
+        int firstId = -1;
+        int secondId = -1;
+        for (int frame = 0; frame < 10; frame++) {
+            byte[] mask = new byte[WIDTH * HEIGHT];
+            fill(mask, 5 + frame * 2, 10, 14 + frame * 2, 19, 100);
+            fill(mask, 60 - frame * 2, 40, 69 - frame * 2, 44, 100);
+            detector.detect(mask, WIDTH, HEIGHT);
+
+            assertEquals(2, detector.getBlobCount());
+            if (frame == 0) {
+                firstId = detector.getBlob(0).getId();
+                secondId = detector.getBlob(1).getId();
+                assertNotEquals(firstId, secondId);
+            }
+            assertEquals(firstId, detector.getBlob(0).getId());
+            assertEquals(secondId, detector.getBlob(1).getId());
+            assertEquals(frame, detector.getBlob(0).getAge());
+        }
+    }
+
+    @Test
+    public void detect_givesANewIdToABlobThatJumpsTooFar() {
+        BlobDetector detector = new BlobDetector();
+        detector.setMinArea(1);
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        fill(mask, 0, 0, 4, 4, 100);
+        detector.detect(mask, WIDTH, HEIGHT);
+        int id = detector.getBlob(0).getId();
+
+        mask = new byte[WIDTH * HEIGHT];
+        fill(mask, 70, 50, 74, 54, 100);
+        detector.detect(mask, WIDTH, HEIGHT);
+
+        assertNotEquals(id, detector.getBlob(0).getId());
+        assertEquals(0, detector.getBlob(0).getAge());
+    }
+
+    @Test
+    public void detect_keepsOnlyTheLargestBlobs() {
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < 6; i++) {
+            fill(mask, i * 12, 0, i * 12 + i, 0, 100);
+        }
+
+        BlobDetector detector = new BlobDetector(3);
+        detector.setMinArea(1);
+        detector.detect(mask, WIDTH, HEIGHT);
+
+        assertEquals(3, detector.getBlobCount());
+        assertEquals(6, detector.getBlob(0).getArea());
+        assertEquals(5, detector.getBlob(1).getArea());
+        assertEquals(4, detector.getBlob(2).getArea());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBand_rejectsZero() {
+        new BlobDetector().setBand(0, 100);
+    }
+
+    @Test
+    public void detect_allocatesNothingPerFrameAfterWarmUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        Random random = new Random(3);
+        byte[][] masks = new byte[4][WIDTH * HEIGHT];
+        for (byte[] mask : masks) {
+            random.nextBytes(mask);
+        }
+        BlobDetector detector = new BlobDetector();
+        detector.setMinArea(2);
+        for (int i = 0; i < 2000; i++) {
+            detector.detect(masks[i % masks.length], WIDTH, HEIGHT);
+        }
+
+        // Calibrate for whatever reading the counter itself costs
+        long calibrationStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - calibrationStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            detector.detect(masks[i % masks.length], WIDTH, HEIGHT);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        assertEquals(0, allocated);
+    }
+
+    private static void fill(byte[] mask, int minX, int minY, int maxX, int maxY, int value) {
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                mask[y * WIDTH + x] = (byte) value;
+            }
+        }
+    }
+
+    // Areas of the 8-connected regions within the band, largest first
+    private static int[] floodFillAreas(byte[] mask, int bandMin, int bandMax, int minArea) {
+        boolean[] seen = new boolean[mask.length];
+        int[] areas = new int[mask.length];
+        int count = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int start = 0; start < mask.length; start++) {
+            if (seen[start] || !inBand(mask[start], bandMin, bandMax)) {
+                continue;
+            }
+            seen[start] = true;
+            queue.add(start);
+            int area = 0;
+            while (!queue.isEmpty()) {
+                int index = queue.poll();
+                area++;
+                int x = index % WIDTH;
+                int y = index / WIDTH;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (nx < 0 || ny < 0 || nx >= WIDTH || ny >= HEIGHT) {
+                            continue;
+                        }
+                        int neighbour = ny * WIDTH + nx;
+                        if (!seen[neighbour] && inBand(mask[neighbour], bandMin, bandMax)) {
+                            seen[neighbour] = true;
+                            queue.add(neighbour);
+                        }
+                    }
+                }
+            }
+            if (area >= minArea) {
+                areas[count++] = area;
+            }
+        }
+        int[] result = Arrays.copyOf(areas, count);
+        Arrays.sort(result);
+        for (int i = 0; i < count / 2; i++) {
+            int swap = result[i];
+            result[i] = result[count - 1 - i];
+            result[count - 1 - i] = swap;
+        }
+        return result;
+    }
+
+    private static boolean inBand(byte value, int bandMin, int bandMax) {
+        int unsigned = value & 0xFF;
+        return unsigned >= bandMin && unsigned <= bandMax;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureSchedulerTest {
+    private static final List<int[]> FPS_RANGES = Arrays.asList(
+            new int[] {15, 15}, new int[] {15, 30}, new int[] {30, 30});
+    private static final long MILLIS = 1000000L;
+
+    // Advanced by hand, so every interval is exactly as long as the test says
+    private long now;
+    private final NanoClock clock = new NanoClock() {
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void startsAtTheFastestRange() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.BALANCED, FPS_RANGES, clock);
+
+        // The wider of the two 30 fps ranges, like DepthStreamSelector
+        assertArrayEquals(new int[] {15, 30}, scheduler.getFpsRange());
+        assertFalse(scheduler.isAcquireLatest());
+        assertEquals(3, scheduler.getImageBufferCount());
+    }
+
+    @Test
+    public void recordFrame_slowsDownAsSoonAsProcessingFallsBehind() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.EVERY_FRAME, FPS_RANGES, clock);
+
+        // 40 ms only keeps up with 20 fps, and 15 is the fastest range below that
+        assertEquals(1, runFrames(scheduler, 31, 40, 33));
+        assertArrayEquals(new int[] {15, 15}, scheduler.getFpsRange());
+        assertEquals(40 * MILLIS, scheduler.getAverageProcessingNanos());
+        // Every image is still read
+        assertFalse(scheduler.isAcquireLatest());
+        assertEquals(4, scheduler.getImageBufferCount());
+    }
+
+    @Test
+    public void recordFrame_speedsUpOnlyAfterSeveralIntervals() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.EVERY_FRAME, FPS_RANGES, clock);
+        runFrames(scheduler, 31, 40, 33);
+
+        // Two intervals of fast frames aren't enough yet
+        assertEquals(0, runFrames(scheduler, 2 * 16, 10, 66));
+        assertArrayEquals(new int[] {15, 15}, scheduler.getFpsRange());
+
+        assertEquals(1, runFrames(scheduler, 16, 10, 66));
+        assertArrayEquals(new int[] {15, 30}, scheduler.getFpsRange());
+    }
+
+    @Test
+    public void recordFrame_waitsForEnoughFrames() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.EVERY_FRAME, FPS_RANGES, clock);
+
+        // A few slow frames over more than an interval
+        assertEquals(0, runFrames(scheduler, 4, 400, 400));
+        assertEquals(0, scheduler.getAverageProcessingNanos());
+        assertEquals(1, runFrames(scheduler, 1, 400, 400));
+    }
+
+    @Test
+    public void balanced_readsTheNewestImageWhileBehind() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.BALANCED, FPS_RANGES, clock);
+
+        runFrames(scheduler, 31, 50, 33);
+        assertTrue(scheduler.isAcquireLatest());
+        assertArrayEquals(new int[] {15, 15}, scheduler.getFpsRange());
+
+        // Keeping up at 15 fps, though not fast enough for 30 yet
+        runFrames(scheduler, 16, 45, 66);
+        assertFalse(scheduler.isAcquireLatest());
+        assertArrayEquals(new int[] {15, 15}, scheduler.getFpsRange());
+    }
+
+    @Test
+    public void lowestLatency_keepsTheFrameRateAndReadsTheNewestImage() {
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.LOWEST_LATENCY, FPS_RANGES, clock);
+
+        assertEquals(0, runFrames(scheduler, 90, 50, 33));
+        assertArrayEquals(new int[] {15, 30}, scheduler.getFpsRange());
+        assertTrue(scheduler.isAcquireLatest());
+    }
+
+    @Test
+    public void rangesFor_keepsTheRangesTheStreamCanDeliver() {
+        DepthStreamConfig config = new DepthStreamConfig(240, 180, 15, 15);
+        List<int[]> ranges = CaptureScheduler.rangesFor(config, FPS_RANGES);
+
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[] {15, 15}, ranges.get(0));
+    }
+
+    @Test
+    public void rangesFor_handlesAStreamWithoutAKnownFrameRate() {
+        // A size without a minimum frame duration, as Camera reports it
+        List<DepthStreamSelector.StreamSize> sizes = Collections.singletonList(
+                new DepthStreamSelector.StreamSize(240, 180, 0));
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.CLOSEST_TO_TARGET_PIXELS)
+                .select(sizes, FPS_RANGES);
+        CaptureScheduler scheduler = new CaptureScheduler(CaptureScheduler.Policy.BALANCED,
+                CaptureScheduler.rangesFor(config, FPS_RANGES), clock);
+        assertArrayEquals(new int[] {15, 30}, scheduler.getFpsRange());
+
+        // A config that doesn't know its range either gets every range, or the default one
+        DepthStreamConfig unknown = new DepthStreamConfig(240, 180, 0, 0);
+        assertEquals(FPS_RANGES.size(), CaptureScheduler.rangesFor(unknown, FPS_RANGES).size());
+        scheduler = new CaptureScheduler(CaptureScheduler.Policy.BALANCED,
+                CaptureScheduler.rangesFor(unknown, Collections.<int[]>emptyList()), clock);
+        assertArrayEquals(new int[] {DepthStreamConfig.DEFAULT.getMinFps(), DepthStreamConfig.DEFAULT.getMaxFps()},
+                scheduler.getFpsRange());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoRanges() {
+        new CaptureScheduler(CaptureScheduler.Policy.BALANCED, Collections.<int[]>emptyList(), clock);
+    }
+
+    // Frames arriving every intervalMillis and each taking processingMillis, so an evaluation
+    // interval takes 31 frames at 33 ms and 16 at 66 ms. Returns how often the fps range changed.
+    private int runFrames(CaptureScheduler scheduler, int frames, long processingMillis, long intervalMillis) {
+        int changes = 0;
+        for (int i = 0; i < frames; i++) {
+            now += intervalMillis * MILLIS;
+            if (scheduler.recordFrame(processingMillis * MILLIS)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
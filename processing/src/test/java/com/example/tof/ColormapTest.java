@@ -0,0 +1,49 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColormapTest {
+
+    @Test
+    public void green_matchesOriginalColor() {
+        for (int value = 0; value < Colormap.SIZE; value++) {
+            // Color.argb(255, 0, value, 0)
+            int expected = (255 << 24) | (value << 8);
+            assertEquals(expected, Colormap.GREEN.toArgb(value));
+        }
+    }
+
+    @Test
+    public void grayscale_hasEqualChannels() {
+        for (int value = 0; value < Colormap.SIZE; value++) {
+            int color = Colormap.GRAYSCALE.toArgb(value);
+            assertEquals(value, color & 0xFF);
+            assertEquals(value, (color >> 8) & 0xFF);
+            assertEquals(value, (color >> 16) & 0xFF);
+        }
+    }
+
+    @Test
+    public void allColormaps_areOpaque() {
+        for (Colormap colormap : Colormap.values()) {
+            for (int value = 0; value < Colormap.SIZE; value++) {
+                assertEquals(0xFF, colormap.toArgb(value) >>> 24);
+            }
+        }
+    }
+
+    @Test
+    public void toArgb_convertsWholeMask() {
+        int[] mask = {0, 64, 128, 255};
+        int[] pixels = new int[mask.length];
+        Colormap.JET.toArgb(mask, pixels);
+        for (int i = 0; i < mask.length; i++) {
+            assertEquals(Colormap.JET.toArgb(mask[i]), pixels[i]);
+        }
+        // Jet runs from dark blue to dark red
+        assertEquals(0, (pixels[0] >> 16) & 0xFF);
+        assertEquals(0, pixels[3] & 0xFF);
+    }
+}
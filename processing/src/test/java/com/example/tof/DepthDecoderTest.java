@@ -0,0 +1,53 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DepthDecoderTest {
+
+    @Test
+    public void table_matchesFormulaForEverySample() {
+        DepthDecoder decoder = new DepthDecoder();
+        assertMatchesFormula(decoder, DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX,
+                DepthDecoder.DEFAULT_CONFIDENCE_FILTER);
+    }
+
+    @Test
+    public void setRange_rebuildsTable() {
+        DepthDecoder decoder = new DepthDecoder();
+        byte[] before = decoder.getTable();
+        decoder.setRange(100.0f, 3000.0f);
+        assertNotSame(before, decoder.getTable());
+        assertMatchesFormula(decoder, 100.0f, 3000.0f, DepthDecoder.DEFAULT_CONFIDENCE_FILTER);
+    }
+
+    @Test
+    public void setConfidenceFilter_rebuildsTable() {
+        DepthDecoder decoder = new DepthDecoder();
+        decoder.setConfidenceFilter(0.5f);
+        assertMatchesFormula(decoder, DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX, 0.5f);
+    }
+
+    @Test
+    public void decode_filtersLowConfidence() {
+        DepthDecoder decoder = new DepthDecoder();
+        // Confidence bits of 1 mean 0% confidence
+        short lowConfidence = (short) ((1 << 13) | 1500);
+        assertEquals(0, decoder.decode(lowConfidence));
+        // Confidence bits of 0 mean 100% confidence
+        short highConfidence = (short) 1500;
+        assertTrue(decoder.decode(highConfidence) > 0);
+    }
+
+    private static void assertMatchesFormula(DepthDecoder decoder, float rangeMin, float rangeMax,
+                                             float confidenceFilter) {
+        byte[] table = decoder.getTable();
+        assertEquals(1 << 16, table.length);
+        for (int sample = 0; sample < 1 << 16; sample++) {
+            int expected = DepthDecoder.extractRange((short) sample, rangeMin, rangeMax, confidenceFilter);
+            assertEquals("sample " + sample, expected, table[sample] & 0xFF);
+            assertEquals("sample " + sample, expected, decoder.decode((short) sample));
+        }
+    }
+}
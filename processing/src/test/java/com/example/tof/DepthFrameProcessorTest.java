@@ -0,0 +1,111 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class DepthFrameProcessorTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 180;
+
+    @Test
+    public void process_allocatesNothingPerFrameAfterWarmUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        short[][] frames = new short[4][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = randomFrame(i);
+        }
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        // Recording metrics has to stay allocation-free too
+        processor.setMetrics(new PipelineMetrics());
+        for (int i = 0; i < 2000; i++) {
+            processor.process(frames[i % frames.length]);
+        }
+
+        // Calibrate for whatever reading the counter itself costs
+        long calibrationStart = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - calibrationStart;
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            processor.process(frames[i % frames.length]);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void process_averagesTheLastThreeRawFrames() {
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        byte[][] raw = new byte[4][];
+        for (int i = 0; i < raw.length; i++) {
+            processor.process(randomFrame(10 + i));
+            raw[i] = processor.getRawMask().clone();
+        }
+
+        byte[] averaged = processor.getAveragedMask();
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            // The first frame has left the window
+            int sum = (raw[1][index] & 0xFF) + (raw[2][index] & 0xFF) + (raw[3][index] & 0xFF);
+            assertEquals(sum / 3, averaged[index] & 0xFF);
+        }
+    }
+
+    @Test
+    public void process_computesOnlyRequestedStagesAndDependencies() {
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        processor.process(randomFrame(3), DepthStage.BLURRED_MOVING_AVERAGE.mask());
+
+        int expected = DepthStage.RAW.mask() | DepthStage.MOVING_AVERAGE.mask()
+                | DepthStage.BLURRED_MOVING_AVERAGE.mask();
+        assertEquals(expected, processor.getComputedStages());
+        assertArrayEquals(new byte[WIDTH * HEIGHT], processor.getNoiseReduceMask());
+        assertFalse(java.util.Arrays.equals(new byte[WIDTH * HEIGHT], processor.getBlurredAverage()));
+    }
+
+    @Test
+    public void process_rawOnlySkipsMovingAverage() {
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        processor.process(randomFrame(4), DepthStage.RAW.mask());
+
+        assertEquals(DepthStage.RAW.mask(), processor.getComputedStages());
+        assertArrayEquals(new byte[WIDTH * HEIGHT], processor.getAveragedMask());
+        assertArrayEquals(new byte[WIDTH * HEIGHT], processor.getBlurredAverage());
+    }
+
+    @Test
+    public void setSpatialFilter_replacesTheBoxBlurOfAStage() {
+        short[] samples = randomFrame(7);
+        DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+        MedianFilter median = new MedianFilter(2);
+        processor.setSpatialFilter(DepthStage.NOISE_REDUCTION, median);
+
+        processor.process(samples);
+
+        byte[] expected = new byte[WIDTH * HEIGHT];
+        median.filter(processor.getRawMask(), expected, WIDTH, HEIGHT);
+        assertArrayEquals(expected, processor.getNoiseReduceMask());
+        assertNull(processor.getSpatialFilter(DepthStage.BLURRED_MOVING_AVERAGE));
+        // Carried over to other frame sizes
+        assertSame(median, processor.withSize(80, 60).getSpatialFilter(DepthStage.NOISE_REDUCTION));
+    }
+
+    static short[] randomFrame(long seed) {
+        Random random = new Random(seed);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) random.nextInt(1 << 16);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.tof;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DepthPipelineTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 36;
+
+    private DepthPipeline<long[]> pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void everyFrameIsRenderedWhenStagesKeepUp() throws InterruptedException {
+        RecordingRenderer renderer = new RecordingRenderer(0);
+        pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT), new TimestampConverter(), renderer);
+        pipeline.start();
+
+        FakeFrameSource source = new FakeFrameSource();
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(pipeline.submitFrame(source.nextFrame(), i));
+            assertTrue(renderer.awaitTimestamp(i, 5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(20, renderer.getRenderedTimestamps().size());
+        assertEquals(0, pipeline.getDroppedFrameCount());
+    }
+
+    @Test
+    public void slowStageDropsStaleFramesAndRendersTheLatest() throws InterruptedException {
+        RecordingRenderer renderer = new RecordingRenderer(20);
+        pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT), new TimestampConverter(), renderer);
+        pipeline.start();
+
+        FakeFrameSource source = new FakeFrameSource();
+        int frameCount = 100;
+        for (int i = 1; i <= frameCount; i++) {
+            assertTrue(pipeline.submitFrame(source.nextFrame(), i));
+            Thread.sleep(1);
+        }
+        assertTrue(renderer.awaitTimestamp(frameCount, 5, TimeUnit.SECONDS));
+
+        List<Long> rendered = renderer.getRenderedTimestamps();
+        assertTrue(rendered.size() < frameCount);
+        assertEquals(frameCount - rendered.size(), pipeline.getDroppedFrameCount());
+        assertTrue(pipeline.getRenderDroppedCount() > 0);
+        // Frames are never rendered out of order
+        for (int i = 1; i < rendered.size(); i++) {
+            assertTrue(rendered.get(i) > rendered.get(i - 1));
+        }
+    }
+
+    @Test
+    public void headlessPipelineOnlyComputesSubscribedStages() throws InterruptedException {
+        DepthPipeline<Void> headless = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT));
+        final List<Integer> deliveredStages = new ArrayList<>();
+        headless.subscribe(DepthStage.NOISE_REDUCTION, new DepthStageListener() {
+            @Override
+            public void onStageAvailable(DepthStage stage, ProcessedFrame frame) {
+                synchronized (deliveredStages) {
+                    assertEquals(DepthStage.NOISE_REDUCTION, stage);
+                    deliveredStages.add(frame.getStages());
+                    deliveredStages.notifyAll();
+                }
+            }
+        });
+        assertEquals(DepthStage.RAW.mask() | DepthStage.NOISE_REDUCTION.mask(), headless.getRequiredStages());
+        headless.start();
+        try {
+            headless.submitFrame(new FakeFrameSource().nextFrame(), 1);
+            synchronized (deliveredStages) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (deliveredStages.isEmpty() && System.currentTimeMillis() < deadline) {
+                    deliveredStages.wait(100);
+                }
+                assertEquals(1, deliveredStages.size());
+                assertEquals(DepthStage.RAW.mask() | DepthStage.NOISE_REDUCTION.mask(), (int) deliveredStages.get(0));
+            }
+        } finally {
+            headless.stop();
+        }
+    }
+
+    @Test
+    public void sharedFrameListenersShareOneFrameUntilTheLastRelease() throws InterruptedException {
+        DepthPipeline<Void> headless = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT));
+        final List<SharedFrame> kept = new ArrayList<>();
+        final List<SharedFrame> seen = new ArrayList<>();
+        headless.subscribe(DepthStage.MOVING_AVERAGE, new SharedFrameListener() {
+            @Override
+            public void onFrameAvailable(SharedFrame frame) {
+                synchronized (kept) {
+                    kept.add(frame.retain());
+                }
+            }
+        });
+        headless.subscribe(DepthStage.MOVING_AVERAGE, new SharedFrameListener() {
+            @Override
+            public void onFrameAvailable(SharedFrame frame) {
+                synchronized (kept) {
+                    seen.add(frame);
+                    kept.notifyAll();
+                }
+            }
+        });
+        assertEquals(DepthStage.RAW.mask() | DepthStage.MOVING_AVERAGE.mask(), headless.getRequiredStages());
+        headless.start();
+        try {
+            headless.submitFrame(new FakeFrameSource().nextFrame(), 7);
+            synchronized (kept) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (seen.isEmpty() && System.currentTimeMillis() < deadline) {
+                    kept.wait(100);
+                }
+                assertEquals(1, seen.size());
+                assertSame(kept.get(0), seen.get(0));
+            }
+        } finally {
+            headless.stop();
+        }
+
+        SharedFrame frame = kept.get(0);
+        assertEquals(DepthStage.MOVING_AVERAGE, frame.getStage());
+        assertEquals(7, frame.getTimestamp());
+        assertEquals(1, frame.getReferenceCount());
+        byte[] expected = headless.getProcessor().getAveragedMask();
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals(expected[i], frame.getData().get(i));
+        }
+        assertEquals(1, headless.getSharedFramePool().getOutstandingCount());
+        frame.release();
+        assertEquals(0, headless.getSharedFramePool().getOutstandingCount());
+    }
+
+    @Test
+    public void nothingIsConvertedWithoutConvertedStages() throws InterruptedException {
+        RecordingRenderer renderer = new RecordingRenderer(0);
+        pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT), new TimestampConverter(), renderer);
+        pipeline.setConvertedStages(DepthStage.NONE);
+        assertEquals(DepthStage.NONE, pipeline.getRequiredStages());
+        pipeline.start();
+
+        pipeline.submitFrame(new FakeFrameSource().nextFrame(), 1);
+        assertFalse(renderer.awaitTimestamp(1, 200, TimeUnit.MILLISECONDS));
+
+        pipeline.setConvertedStages(DepthStage.MOVING_AVERAGE.mask());
+        pipeline.submitFrame(new FakeFrameSource().nextFrame(), 2);
+        assertTrue(renderer.awaitTimestamp(2, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void resizeSwitchesEveryStageToTheNewSize() throws InterruptedException {
+        RecordingRenderer renderer = new RecordingRenderer(0);
+        pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT), new TimestampConverter(), renderer);
+        pipeline.start();
+        assertTrue(pipeline.submitFrame(new FakeFrameSource().nextFrame(), 1));
+        assertTrue(renderer.awaitTimestamp(1, 5, TimeUnit.SECONDS));
+
+        pipeline.resize(WIDTH * 2, HEIGHT * 2);
+        assertEquals(WIDTH * 2, pipeline.getProcessor().getWidth());
+        // Frames of the old size no longer fit
+        assertFalse(pipeline.submitFrame(new FakeFrameSource().nextFrame(), 2));
+        assertTrue(pipeline.submitFrame(new short[WIDTH * HEIGHT * 4], 3));
+        assertTrue(renderer.awaitTimestamp(3, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void everyStageRecordsItsLatency() throws InterruptedException, java.io.IOException {
+        RecordingRenderer renderer = new RecordingRenderer(0);
+        pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT), new TimestampConverter(), renderer);
+        // Frame timestamps are 1-10, so with the clock stuck at 1000 the end to end latency is
+        // 990-999 ns
+        pipeline.setMetrics(new PipelineMetrics(new NanoClock() {
+            @Override
+            public long nanoTime() {
+                return 1000;
+            }
+        }));
+        final long[] pointClouds = new long[1];
+        pipeline.setPointCloud(new PointCloudProjector(CameraIntrinsics.fromFieldOfView(75f, WIDTH, HEIGHT)),
+                new PointCloudListener() {
+                    @Override
+                    public void onPointCloudAvailable(PointCloudProjector projector, long timestamp) {
+                        assertEquals(WIDTH * HEIGHT, projector.getPointCount());
+                        pointClouds[0]++;
+                    }
+                });
+        pipeline.start();
+
+        FakeFrameSource source = new FakeFrameSource();
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(pipeline.submitFrame(source.nextFrame(), i));
+            assertTrue(renderer.awaitTimestamp(i, 5, TimeUnit.SECONDS));
+        }
+        pipeline.stop();
+
+        assertEquals(10, pointClouds[0]);
+        PipelineMetrics metrics = pipeline.getMetrics();
+        for (PipelineMetrics.Step step : PipelineMetrics.Step.values()) {
+            // Only the camera's image callback records ACQUIRE
+            int expected = step == PipelineMetrics.Step.ACQUIRE ? 0 : 10;
+            assertEquals(step.name(), expected, metrics.get(step).getCount());
+        }
+        assertEquals(999, metrics.get(PipelineMetrics.Step.END_TO_END).getMax());
+        assertTrue(metrics.get(PipelineMetrics.Step.END_TO_END).getPercentile(0.5) >= 990);
+
+        StringBuilder report = new StringBuilder();
+        pipeline.writeMetricsReport(report);
+        assertTrue(report.toString(), report.toString().contains("temporal_filter"));
+        assertTrue(report.toString(), report.toString().contains("dropped capture=0"));
+    }
+
+    // Produces frames from a small rotating set of synthetic DEPTH16 samples
+    private static class FakeFrameSource {
+        private final short[][] frames = new short[3][];
+        private int next;
+
+        FakeFrameSource() {
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = new short[WIDTH * HEIGHT];
+                for (int j = 0; j < frames[i].length; j++) {
+                    frames[i][j] = (short) (400 + 100 * i + j % 50);
+                }
+            }
+        }
+
+        short[] nextFrame() {
+            return frames[next++ % frames.length];
+        }
+    }
+
+    private static class TimestampConverter implements FrameConverter<long[]> {
+        @Override
+        public long[] createOutput() {
+            return new long[1];
+        }
+
+        @Override
+        public void convert(ProcessedFrame frame, long[] output) {
+            output[0] = frame.getTimestamp();
+        }
+    }
+
+    private static class RecordingRenderer implements FrameRenderer<long[]> {
+        private final long renderMillis;
+        private final List<Long> renderedTimestamps = new ArrayList<>();
+
+        RecordingRenderer(long renderMillis) {
+            this.renderMillis = renderMillis;
+        }
+
+        @Override
+        public void render(long[] output) {
+            try {
+                Thread.sleep(renderMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                renderedTimestamps.add(output[0]);
+                notifyAll();
+            }
+        }
+
+        synchronized boolean awaitTimestamp(long timestamp, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (renderedTimestamps.isEmpty() || renderedTimestamps.get(renderedTimestamps.size() - 1) < timestamp) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        synchronized List<Long> getRenderedTimestamps() {
+            return new ArrayList<>(renderedTimestamps);
+        }
+    }
+}
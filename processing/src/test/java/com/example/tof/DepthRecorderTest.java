@@ -0,0 +1,137 @@
+package com.example.tof;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthRecorderTest {
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 18;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recording_readsBackEveryFrameAcrossChunks() throws IOException {
+        File path = folder.newFile("session.depth");
+        short[][] frames = new short[23][];
+        DepthRecorder recorder = new DepthRecorder(path, WIDTH, HEIGHT, new DepthDecoder(), 5, frames.length);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = randomFrame(i);
+            assertTrue(recorder.submitFrame(frames[i], 1000L * i));
+        }
+        recorder.close();
+        assertEquals(frames.length, recorder.getRecordedFrameCount());
+        assertEquals(0, recorder.getDroppedFrameCount());
+
+        try (DepthRecording recording = new DepthRecording(path)) {
+            assertEquals(WIDTH, recording.getWidth());
+            assertEquals(HEIGHT, recording.getHeight());
+            assertEquals(frames.length, recording.getFrameCount());
+            short[] samples = new short[WIDTH * HEIGHT];
+            // Out of order, to seek around
+            for (int i = frames.length - 1; i >= 0; i -= 2) {
+                assertEquals(1000L * i, recording.readFrame(i, samples));
+                assertArrayEquals(frames[i], samples);
+            }
+            assertEquals(7000L, recording.getTimestamp(7));
+        }
+    }
+
+    @Test
+    public void recording_isTrimmedToTheLastFrame() throws IOException {
+        File path = folder.newFile("session.depth");
+        DepthRecorder recorder = new DepthRecorder(path, WIDTH, HEIGHT, new DepthDecoder(), 4, 8);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(recorder.submitFrame(randomFrame(i), i));
+        }
+        recorder.close();
+
+        long chunkSize = DepthRecording.chunkSize(WIDTH, HEIGHT, 4);
+        long partialChunk = DepthRecording.CHUNK_HEADER_SIZE + 4 * DepthRecording.INDEX_ENTRY_SIZE
+                + 2 * WIDTH * HEIGHT * 2;
+        assertEquals(DepthRecording.FILE_HEADER_SIZE + chunkSize + partialChunk, path.length());
+    }
+
+    @Test
+    public void recording_keepsTheDecoderSettingsOfEachFrame() throws IOException {
+        File path = folder.newFile("session.depth");
+        DepthDecoder decoder = new DepthDecoder();
+        DepthRecorder recorder = new DepthRecorder(path, WIDTH, HEIGHT, decoder, 4, 2);
+        recordAndWait(recorder, randomFrame(0), 0);
+        decoder.setRange(300, 900);
+        decoder.setConfidenceFilter(0.5f);
+        recordAndWait(recorder, randomFrame(1), 1);
+        recorder.close();
+
+        try (DepthRecording recording = new DepthRecording(path)) {
+            assertEquals(DepthDecoder.DEFAULT_RANGE_MIN, recording.getRangeMin(0), 0);
+            assertEquals(DepthDecoder.DEFAULT_RANGE_MAX, recording.getRangeMax(0), 0);
+            assertEquals(DepthDecoder.DEFAULT_CONFIDENCE_FILTER, recording.getConfidenceFilter(0), 0);
+            assertEquals(300, recording.getRangeMin(1), 0);
+            assertEquals(900, recording.getRangeMax(1), 0);
+            assertEquals(0.5f, recording.getConfidenceFilter(1), 0);
+        }
+    }
+
+    @Test
+    public void submitFrame_copiesImagePlanesWithoutMovingThem() throws IOException {
+        File path = folder.newFile("session.depth");
+        short[] frame = randomFrame(3);
+        ByteBuffer plane = ByteBuffer.allocateDirect(frame.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        plane.asShortBuffer().put(frame);
+        plane.position(10);
+
+        DepthRecorder recorder = new DepthRecorder(path, WIDTH, HEIGHT, new DepthDecoder());
+        assertTrue(recorder.submitFrame(plane, 42));
+        recorder.close();
+
+        assertEquals(10, plane.position());
+        assertEquals(plane.capacity(), plane.limit());
+        try (DepthRecording recording = new DepthRecording(path)) {
+            short[] samples = new short[WIDTH * HEIGHT];
+            assertEquals(42, recording.readFrame(0, samples));
+            assertArrayEquals(frame, samples);
+        }
+    }
+
+    @Test
+    public void submitFrame_dropsFramesThatAreTooSmallOrLate() throws IOException {
+        File path = folder.newFile("session.depth");
+        DepthRecorder recorder = new DepthRecorder(path, WIDTH, HEIGHT, new DepthDecoder());
+        assertFalse(recorder.submitFrame(new short[WIDTH], 0));
+        recorder.close();
+        assertFalse(recorder.submitFrame(randomFrame(0), 1));
+
+        assertEquals(2, recorder.getDroppedFrameCount());
+        try (DepthRecording recording = new DepthRecording(path)) {
+            assertEquals(0, recording.getFrameCount());
+        }
+    }
+
+    // Waits for the frame to be written, so it is stored with the decoder settings of the moment
+    private static void recordAndWait(DepthRecorder recorder, short[] frame, long timestamp) {
+        long recorded = recorder.getRecordedFrameCount();
+        assertTrue(recorder.submitFrame(frame, timestamp));
+        while (recorder.getRecordedFrameCount() == recorded) {
+            Thread.yield();
+        }
+    }
+
+    private static short[] randomFrame(long seed) {
+        Random random = new Random(seed);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) random.nextInt(1 << 16);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class DepthStreamCodecTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void decode_restoresEveryFrameExceptTheRangeOfInvalidSamples() throws IOException {
+        SyntheticDepthFrameSource scene = TestScenes.scene(WIDTH, HEIGHT, 9, 5, 0.1f);
+        DepthStreamEncoder encoder = new DepthStreamEncoder(WIDTH, HEIGHT);
+        encoder.setKeyframeInterval(4);
+        DepthStreamDecoder decoder = new DepthStreamDecoder();
+        ByteBuffer message = ByteBuffer.allocate(DepthStreamDecoder.maxMessageSize(WIDTH, HEIGHT));
+        short[] samples = new short[WIDTH * HEIGHT];
+        short[] decoded = new short[WIDTH * HEIGHT];
+
+        for (int frame = 0; frame < 10; frame++) {
+            long timestamp = scene.readFrame(frame, samples);
+            message.clear();
+            int size = encoder.encode(ShortBuffer.wrap(samples), timestamp, message);
+            assertEquals(size, message.position());
+            message.flip();
+
+            assertEquals(timestamp, decoder.decode(message, decoded));
+            assertFalse(message.hasRemaining());
+            assertEquals(frame % 4 == 0, decoder.isKeyframe());
+            assertEquals(WIDTH, decoder.getWidth());
+            for (int i = 0; i < samples.length; i++) {
+                if (((samples[i] >> 13) & 0x7) == 1) {
+                    assertEquals(DepthStreamDecoder.INVALID_SAMPLE, decoded[i]);
+                } else {
+                    assertEquals(samples[i], decoded[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encode_compressesAStaticSceneToAlmostNothing() {
+        SyntheticDepthFrameSource scene = new SyntheticDepthFrameSource(
+                CameraIntrinsics.fromFieldOfView(75, WIDTH, HEIGHT), 3);
+        scene.addPlane(0.1f, 0, 1, 1.3f);
+        DepthStreamEncoder encoder = new DepthStreamEncoder(WIDTH, HEIGHT);
+        ByteBuffer message = ByteBuffer.allocate(DepthStreamDecoder.maxMessageSize(WIDTH, HEIGHT));
+        short[] samples = new short[WIDTH * HEIGHT];
+
+        int keyframe = encoder.encode(ShortBuffer.wrap(samples), scene.readFrame(0, samples), message);
+        message.clear();
+        int delta = encoder.encode(ShortBuffer.wrap(samples), scene.readFrame(1, samples), message);
+
+        // Smooth depth costs about a byte per pixel against its neighbour, and one run token
+        // against itself
+        assertTrue(keyframe < WIDTH * HEIGHT * 1.2);
+        assertEquals(DepthStreamDecoder.MESSAGE_HEADER_SIZE + 2, delta);
+    }
+
+    @Test
+    public void encode_runLengthCodesInvalidAreas() {
+        DepthStreamEncoder encoder = new DepthStreamEncoder(WIDTH, HEIGHT);
+        ByteBuffer message = ByteBuffer.allocate(DepthStreamDecoder.maxMessageSize(WIDTH, HEIGHT));
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < samples.length; i++) {
+            // Zero confidence with varying range
+            samples[i] = (short) (1 << 13 | (i % 3000));
+        }
+
+        int size = encoder.encode(ShortBuffer.wrap(samples), 0, message);
+
+        // A single run for the whole frame
+        assertEquals(DepthStreamDecoder.MESSAGE_HEADER_SIZE + 2, size);
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsADeltaFrameWithoutAKeyframe() throws IOException {
+        DepthStreamEncoder encoder = new DepthStreamEncoder(WIDTH, HEIGHT);
+        ByteBuffer message = ByteBuffer.allocate(DepthStreamDecoder.maxMessageSize(WIDTH, HEIGHT));
+        short[] samples = new short[WIDTH * HEIGHT];
+        encoder.encode(ShortBuffer.wrap(samples), 0, message);
+        message.clear();
+        encoder.encode(ShortBuffer.wrap(samples), 1, message);
+        message.flip();
+
+        new DepthStreamDecoder().decode(message, samples);
+    }
+
+    @Test
+    public void maxMessageSize_holdsTheWorstCase() throws IOException {
+        DepthStreamEncoder encoder = new DepthStreamEncoder(WIDTH, HEIGHT);
+        encoder.setKeyframeInterval(1);
+        ByteBuffer message = ByteBuffer.allocate(DepthStreamDecoder.maxMessageSize(WIDTH, HEIGHT));
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < samples.length; i++) {
+            // The largest differences between neighbours that aren't zero confidence
+            samples[i] = (short) (i % 2 == 0 ? 0xFFFF : 0);
+        }
+
+        encoder.encode(ShortBuffer.wrap(samples), 0, message);
+
+        message.flip();
+        short[] decoded = new short[WIDTH * HEIGHT];
+        new DepthStreamDecoder().decode(message, decoded);
+        assertArrayEquals(samples, decoded);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DepthStreamSelectorTest {
+    private static final List<DepthStreamSelector.StreamSize> SIZES = Arrays.asList(
+            new DepthStreamSelector.StreamSize(240, 180, 30),
+            new DepthStreamSelector.StreamSize(320, 240, 30),
+            new DepthStreamSelector.StreamSize(640, 480, 15),
+            new DepthStreamSelector.StreamSize(160, 120, 60));
+    private static final List<int[]> FPS_RANGES = Arrays.asList(
+            new int[] {15, 15}, new int[] {15, 30}, new int[] {30, 30}, new int[] {30, 60});
+
+    @Test
+    public void maxResolution_picksMostPixels() {
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.MAX_RESOLUTION)
+                .select(SIZES, FPS_RANGES);
+        assertEquals(640, config.getWidth());
+        assertEquals(480, config.getHeight());
+        // Ranges above what the size can deliver are skipped
+        assertEquals(15, config.getMinFps());
+        assertEquals(15, config.getMaxFps());
+    }
+
+    @Test
+    public void closestToTarget_defaultsToTheOriginalSize() {
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.CLOSEST_TO_TARGET_PIXELS)
+                .select(SIZES, FPS_RANGES);
+        assertEquals(240, config.getWidth());
+        assertEquals(180, config.getHeight());
+        // The highest fitting upper bound, with the widest range
+        assertEquals(15, config.getMinFps());
+        assertEquals(30, config.getMaxFps());
+    }
+
+    @Test
+    public void closestToTarget_usesTargetPixels() {
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.CLOSEST_TO_TARGET_PIXELS, 300000)
+                .select(SIZES, FPS_RANGES);
+        assertEquals(640, config.getWidth());
+    }
+
+    @Test
+    public void highestFps_picksFastestSize() {
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.HIGHEST_FPS)
+                .select(SIZES, FPS_RANGES);
+        assertEquals(160, config.getWidth());
+        assertEquals(30, config.getMinFps());
+        assertEquals(60, config.getMaxFps());
+    }
+
+    @Test
+    public void missingFpsRanges_fallBackToStreamLimit() {
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.MAX_RESOLUTION)
+                .select(SIZES, Collections.<int[]>emptyList());
+        assertEquals(15, config.getMinFps());
+        assertEquals(15, config.getMaxFps());
+    }
+
+    @Test
+    public void unknownMaxFps_allowsEveryRange() {
+        List<DepthStreamSelector.StreamSize> sizes = Collections.singletonList(
+                new DepthStreamSelector.StreamSize(240, 180, 0));
+        DepthStreamConfig config = new DepthStreamSelector(DepthStreamSelector.Policy.MAX_RESOLUTION)
+                .select(sizes, FPS_RANGES);
+        assertEquals(30, config.getMinFps());
+        assertEquals(60, config.getMaxFps());
+
+        // Without any ranges either, the default one rather than an upper bound of 0
+        config = new DepthStreamSelector(DepthStreamSelector.Policy.MAX_RESOLUTION)
+                .select(sizes, Collections.<int[]>emptyList());
+        assertEquals(DepthStreamConfig.DEFAULT.getMinFps(), config.getMinFps());
+        assertEquals(DepthStreamConfig.DEFAULT.getMaxFps(), config.getMaxFps());
+    }
+
+    @Test
+    public void noSizes_returnsNull() {
+        assertNull(new DepthStreamSelector(DepthStreamSelector.Policy.MAX_RESOLUTION)
+                .select(Collections.<DepthStreamSelector.StreamSize>emptyList(), FPS_RANGES));
+    }
+}
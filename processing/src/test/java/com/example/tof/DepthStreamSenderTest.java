@@ -0,0 +1,119 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DepthStreamSenderTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 36;
+
+    @Test
+    public void frames_arriveDecodedAtALoopbackReceiver() throws Exception {
+        FrameCollector collector = new FrameCollector();
+        DepthStreamReceiver receiver = new DepthStreamReceiver(collector);
+        SyntheticDepthFrameSource scene = TestScenes.scene(WIDTH, HEIGHT, 4, 3, 0.05f);
+        List<short[]> sent = new ArrayList<>();
+        try {
+            // Enough buffers that nothing is dropped, so every frame can be compared
+            DepthStreamSender sender = new DepthStreamSender(receiver.getAddress(), WIDTH, HEIGHT, 40);
+            sender.getEncoder().setKeyframeInterval(10);
+            for (int i = 0; i < 40; i++) {
+                short[] samples = new short[WIDTH * HEIGHT];
+                assertTrue(sender.submitFrame(samples, scene.readFrame(i, samples)));
+                sent.add(samples);
+            }
+            sender.close();
+            assertEquals(40, sender.getSentFrameCount());
+            assertEquals(0, sender.getDroppedFrameCount());
+            // Noise keeps most differences at a byte, against two for raw DEPTH16
+            assertTrue(sender.getSentByteCount() < 40L * WIDTH * HEIGHT * 2 * 6 / 10);
+
+            collector.await(40);
+            assertEquals(sender.getSentByteCount(), receiver.getReceivedByteCount());
+        } finally {
+            receiver.close();
+        }
+
+        assertNull(receiver.getReceiveError());
+        synchronized (collector) {
+            for (int i = 0; i < 40; i++) {
+                assertEquals(scene.getTimestamp(i), (long) collector.timestamps.get(i));
+                short[] expected = sent.get(i);
+                short[] actual = collector.frames.get(i);
+                for (int j = 0; j < expected.length; j++) {
+                    if (((expected[j] >> 13) & 0x7) != 1) {
+                        assertEquals(expected[j], actual[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void submitFrame_dropsTheOldestFrameWhenBackedUp() throws Exception {
+        // A listening socket nobody accepts on, so the sender stalls once the socket's buffers
+        // are full
+        try (ServerSocket stalled = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            DepthStreamSender sender = new DepthStreamSender(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), stalled.getLocalPort()), 320, 240, 2);
+            // Noise keeps every frame large
+            SyntheticDepthFrameSource scene = new SyntheticDepthFrameSource(
+                    CameraIntrinsics.fromFieldOfView(75, 320, 240), 1);
+            scene.addPlane(0, 0, 1, 1f);
+            scene.setNoise(200);
+            short[] samples = new short[320 * 240];
+            for (int i = 0; i < 200; i++) {
+                // Newer frames always get in
+                assertTrue(sender.submitFrame(samples, scene.readFrame(i % 8, samples)));
+            }
+            assertTrue(sender.getDroppedFrameCount() > 0);
+            assertTrue(sender.getSentFrameCount() < 200);
+            // Gives up on the stalled receiver instead of hanging
+            sender.close();
+        }
+    }
+
+    @Test
+    public void close_reportsAFailedConnection() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        DepthStreamSender sender = new DepthStreamSender(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), WIDTH, HEIGHT);
+        try {
+            sender.close();
+            fail("Nothing was listening");
+        } catch (IOException expected) {
+            // Connection refused
+        }
+    }
+
+    private static class FrameCollector implements DepthStreamListener {
+        final List<short[]> frames = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public synchronized void onFrameReceived(short[] samples, int width, int height, long timestamp) {
+            frames.add(samples.clone());
+            timestamps.add(timestamp);
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (frames.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, frames.size());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class FastBlurTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void boxBlur_bufferOverloadMatchesAllocating() {
+        int[] input = randomMask(1);
+        int[] expected = FastBlur.boxBlur(input.clone(), WIDTH, HEIGHT, 1);
+
+        int[] output = new int[input.length];
+        int[] source = input.clone();
+        FastBlur.boxBlur(source, output, new int[input.length], WIDTH, HEIGHT, 1);
+        assertArrayEquals(expected, output);
+        // Unlike the allocating version, the input is left alone
+        assertArrayEquals(input, source);
+    }
+
+    @Test
+    public void boxBlur_inPlaceMatchesAllocating() {
+        int[] input = randomMask(2);
+        int[] expected = FastBlur.boxBlur(input.clone(), WIDTH, HEIGHT, 1);
+
+        FastBlur.boxBlur(input, new int[input.length], WIDTH, HEIGHT, 1);
+        assertArrayEquals(expected, input);
+    }
+
+    @Test
+    public void gaussBlur_bufferOverloadsMatchAllocating() {
+        for (int radius = 1; radius <= 4; radius++) {
+            int[] input = randomMask(radius);
+            int[] expected = FastBlur.gaussBlur(input.clone(), WIDTH, HEIGHT, radius);
+
+            int[] output = new int[input.length];
+            FastBlur.gaussBlur(input.clone(), output, new int[input.length], WIDTH, HEIGHT, radius);
+            assertArrayEquals(expected, output);
+
+            int[] inPlace = input.clone();
+            FastBlur.gaussBlur(inPlace, new int[input.length], WIDTH, HEIGHT, radius);
+            assertArrayEquals(expected, inPlace);
+        }
+    }
+
+    @Test
+    public void boxBlur_matchesNaiveClampedAverage() {
+        int[] input = randomMask(3);
+        int[] output = new int[input.length];
+        FastBlur.boxBlur(input, output, new int[input.length], WIDTH, HEIGHT, 1);
+        // A box blur of "radius" 1 is approximated with a single box of width 5
+        assertArrayEquals(naiveBoxBlur(input, WIDTH, HEIGHT, 5), output);
+    }
+
+    @Test
+    public void parallelBlurs_areBitIdenticalToSerial() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[][] sizes = {{WIDTH, HEIGHT}, {240, 180}, {333, 97}, {640, 480}};
+            for (int[] size : sizes) {
+                int w = size[0];
+                int h = size[1];
+                for (int radius = 1; radius <= 6; radius++) {
+                    int[] input = randomMask(radius, w * h);
+
+                    int[] serial = new int[input.length];
+                    int[] parallel = new int[input.length];
+                    FastBlur.boxBlur(input, serial, new int[input.length], w, h, radius);
+                    // A threshold of 0 forces the parallel path even for small images
+                    FastBlur.boxBlur(input, parallel, new int[input.length], w, h, radius, pool, 0);
+                    assertArrayEquals(serial, parallel);
+
+                    FastBlur.gaussBlur(input, serial, new int[input.length], w, h, radius);
+                    FastBlur.gaussBlur(input, parallel, new int[input.length], w, h, radius, pool, 0);
+                    assertArrayEquals(serial, parallel);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelBlur_fallsBackToSerialForSmallImages() {
+        int[] input = randomMask(4);
+        int[] serial = new int[input.length];
+        int[] parallel = new int[input.length];
+        FastBlur.boxBlur(input, serial, new int[input.length], WIDTH, HEIGHT, 2);
+        FastBlur.boxBlur(input, parallel, new int[input.length], WIDTH, HEIGHT, 2, FastBlur.parallelPool());
+        assertArrayEquals(serial, parallel);
+    }
+
+    @Test
+    public void boxBlur_roundsLikeTheFloatVersionForEveryRadius() {
+        for (int radius = 1; radius <= 6; radius++) {
+            int[] input = randomMask(radius);
+            int[] output = new int[input.length];
+            FastBlur.boxBlur(input, output, new int[input.length], WIDTH, HEIGHT, radius);
+            assertArrayEquals("radius " + radius, naiveBoxBlur(input, WIDTH, HEIGHT, boxRadius(radius)), output);
+        }
+    }
+
+    @Test
+    public void byteBlurs_matchTheIntBlurs() {
+        for (int radius = 1; radius <= 6; radius++) {
+            int[] input = randomMask(radius);
+            int[] expected = new int[input.length];
+            byte[] output = new byte[input.length];
+
+            FastBlur.boxBlur(input, expected, new int[input.length], WIDTH, HEIGHT, radius);
+            FastBlur.boxBlur(toBytes(input), output, new byte[input.length], WIDTH, HEIGHT, radius);
+            assertArrayEquals(toBytes(expected), output);
+
+            FastBlur.gaussBlur(input, expected, new int[input.length], WIDTH, HEIGHT, radius);
+            FastBlur.gaussBlur(toBytes(input), output, new byte[input.length], WIDTH, HEIGHT, radius);
+            assertArrayEquals(toBytes(expected), output);
+        }
+    }
+
+    @Test
+    public void parallelByteBlur_isBitIdenticalToSerial() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int radius = 1; radius <= 6; radius++) {
+                byte[] input = toBytes(randomMask(radius, 333 * 97));
+                byte[] serial = new byte[input.length];
+                byte[] parallel = new byte[input.length];
+                FastBlur.boxBlur(input, serial, new byte[input.length], 333, 97, radius);
+                FastBlur.boxBlur(input, parallel, new byte[input.length], 333, 97, radius, pool, 0);
+                assertArrayEquals(serial, parallel);
+                FastBlur.gaussBlur(input, serial, new byte[input.length], 333, 97, radius);
+                FastBlur.gaussBlur(input, parallel, new byte[input.length], 333, 97, radius, pool, 0);
+                assertArrayEquals(serial, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The radius of the single box boxBlur approximates a radius with
+    private static int boxRadius(int radius) {
+        double wIdeal = Math.sqrt(12 * radius * radius + 1);
+        int wl = (int) Math.floor(wIdeal);
+        if (wl % 2 == 0) {
+            wl--;
+        }
+        int m = (12 * radius * radius - wl * wl - 4 * wl - 3) / (-4 * wl - 4);
+        return 0 < m ? wl : wl + 2;
+    }
+
+    static int[] randomMask(long seed) {
+        return randomMask(seed, WIDTH * HEIGHT);
+    }
+
+    static byte[] toBytes(int[] mask) {
+        byte[] bytes = new byte[mask.length];
+        for (int i = 0; i < mask.length; i++) {
+            bytes[i] = (byte) mask[i];
+        }
+        return bytes;
+    }
+
+    static int[] randomMask(long seed, int size) {
+        Random random = new Random(seed);
+        int[] mask = new int[size];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = random.nextInt(256);
+        }
+        return mask;
+    }
+
+    // Separable box blur that repeats the edge pixels, computed the slow way
+    static int[] naiveBoxBlur(int[] input, int w, int h, int r) {
+        float iarr = 1 / ((float)r + (float)r + 1);
+        int[] horizontal = new int[input.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int sum = 0;
+                for (int k = -r; k <= r; k++) {
+                    sum += input[y * w + Math.min(w - 1, Math.max(0, x + k))];
+                }
+                horizontal[y * w + x] = Math.round(sum * iarr);
+            }
+        }
+        int[] output = new int[input.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int sum = 0;
+                for (int k = -r; k <= r; k++) {
+                    sum += horizontal[Math.min(h - 1, Math.max(0, y + k)) * w + x];
+                }
+                output[y * w + x] = Math.round(sum * iarr);
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.tof;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FileDepthFrameSourceTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 36;
+    private static final int FRAME_COUNT = 12;
+    private static final Long LAST_TIMESTAMP = (FRAME_COUNT - 1) * 10_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void playback_runsARecordingThroughAHeadlessPipeline() throws Exception {
+        File path = record(folder.newFile("scene.depth"));
+        DepthPipeline<Void> pipeline = new DepthPipeline<>(new DepthFrameProcessor(24, 18));
+        final List<Long> timestamps = new ArrayList<>();
+        pipeline.subscribe(DepthStage.BLURRED_MOVING_AVERAGE, new DepthStageListener() {
+            @Override
+            public void onStageAvailable(DepthStage stage, ProcessedFrame frame) {
+                synchronized (timestamps) {
+                    timestamps.add(frame.getTimestamp());
+                    timestamps.notifyAll();
+                }
+            }
+        });
+        pipeline.start();
+
+        try (FileDepthFrameSource source = new FileDepthFrameSource(path)) {
+            long start = System.nanoTime();
+            source.start(pipeline);
+            source.awaitFinished();
+            // Twelve frames at 100 fps take at least 110 ms to play in real time
+            assertTrue(System.nanoTime() - start >= 110_000_000L);
+            assertEquals(WIDTH, pipeline.getWidth());
+            assertEquals(HEIGHT, pipeline.getHeight());
+            // The last frame is always processed, even if earlier ones were dropped
+            long deadline = System.currentTimeMillis() + 5000;
+            synchronized (timestamps) {
+                while (!timestamps.contains(LAST_TIMESTAMP) && System.currentTimeMillis() < deadline) {
+                    timestamps.wait(100);
+                }
+            }
+        } finally {
+            pipeline.stop();
+        }
+
+        synchronized (timestamps) {
+            assertFalse(timestamps.isEmpty());
+            assertEquals(LAST_TIMESTAMP, timestamps.get(timestamps.size() - 1));
+            for (int i = 1; i < timestamps.size(); i++) {
+                assertTrue(timestamps.get(i) > timestamps.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void readFrame_matchesTheSyntheticFramesThatWereRecorded() throws IOException {
+        SyntheticDepthFrameSource scene = scene();
+        File path = record(folder.newFile("scene.depth"));
+        short[] expected = new short[WIDTH * HEIGHT];
+        short[] actual = new short[WIDTH * HEIGHT];
+
+        try (FileDepthFrameSource source = new FileDepthFrameSource(path)) {
+            assertEquals(FRAME_COUNT, source.getFrameCount());
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                assertEquals(scene.readFrame(i, expected), source.readFrame(i, actual));
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void processing_isRepeatableAcrossRuns() throws IOException {
+        File path = record(folder.newFile("scene.depth"));
+        assertArrayEquals(processAll(path), processAll(path));
+    }
+
+    // The blurred moving average after every frame of the recording
+    private static byte[] processAll(File path) throws IOException {
+        try (FileDepthFrameSource source = new FileDepthFrameSource(path)) {
+            DepthFrameProcessor processor = new DepthFrameProcessor(WIDTH, HEIGHT);
+            ProcessedFrame result = new ProcessedFrame(WIDTH, HEIGHT);
+            short[] samples = new short[WIDTH * HEIGHT];
+            for (int i = 0; i < source.getFrameCount(); i++) {
+                long timestamp = source.readFrame(i, samples);
+                processor.process(samples);
+                result.set(processor, timestamp);
+            }
+            return result.getBlurredAverage().clone();
+        }
+    }
+
+    private static SyntheticDepthFrameSource scene() {
+        SyntheticDepthFrameSource scene = TestScenes.scene(WIDTH, HEIGHT, 5, 5, 0.05f);
+        scene.setFps(100);
+        scene.setFrameCount(FRAME_COUNT);
+        return scene;
+    }
+
+    private static File record(File path) throws IOException {
+        return TestScenes.record(path, scene(), 5);
+    }
+}
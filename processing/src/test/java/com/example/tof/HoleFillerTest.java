@@ -0,0 +1,140 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HoleFillerTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 12;
+
+    @Test
+    public void fill_takesTheNearestValidValue() {
+        byte[] input = new byte[WIDTH * HEIGHT];
+        byte[] holes = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                // Left half at 50, right half at 200, with a hole down the middle
+                if (x >= 6 && x < 10) {
+                    holes[y * WIDTH + x] = 1;
+                } else {
+                    input[y * WIDTH + x] = (byte) (x < 8 ? 50 : 200);
+                }
+            }
+        }
+        byte[] output = new byte[WIDTH * HEIGHT];
+
+        new HoleFiller().fill(input, holes, output, WIDTH, HEIGHT);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            assertEquals(50, output[y * WIDTH + 6]);
+            assertEquals(50, output[y * WIDTH + 7]);
+            assertEquals(200, output[y * WIDTH + 8] & 0xFF);
+            assertEquals(200, output[y * WIDTH + 9] & 0xFF);
+            assertEquals(input[y * WIDTH + 3], output[y * WIDTH + 3]);
+        }
+    }
+
+    @Test
+    public void fill_matchesABruteForceNearestNeighbourDistance() {
+        Random random = new Random(5);
+        byte[] input = new byte[WIDTH * HEIGHT];
+        byte[] holes = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < input.length; i++) {
+            holes[i] = (byte) (random.nextInt(10) < 8 ? 1 : 0);
+            input[i] = (byte) (holes[i] != 0 ? 0 : 1 + random.nextInt(255));
+        }
+        HoleFiller filler = new HoleFiller();
+        filler.setMaxDistance(2);
+        filler.setMaxAge(0);
+        byte[] output = new byte[WIDTH * HEIGHT];
+
+        filler.fill(input, holes, output, WIDTH, HEIGHT);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int nearest = nearestValidDistance(holes, x, y);
+                int value = output[y * WIDTH + x] & 0xFF;
+                if (nearest > 2) {
+                    assertEquals(0, value);
+                } else {
+                    // Ties may go either way, but the value must come from a valid pixel that near
+                    assertTrue(hasValidValueAt(input, holes, x, y, nearest, value));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fill_usesTheLastValidValueForLargeHoles() {
+        byte[] input = new byte[WIDTH * HEIGHT];
+        byte[] holes = new byte[WIDTH * HEIGHT];
+        byte[] output = new byte[WIDTH * HEIGHT];
+        HoleFiller filler = new HoleFiller();
+        filler.setMaxDistance(0);
+        filler.setMaxAge(2);
+        Arrays.fill(input, (byte) 120);
+        filler.fill(input, holes, output, WIDTH, HEIGHT);
+
+        Arrays.fill(input, (byte) 0);
+        Arrays.fill(holes, (byte) 1);
+        filler.fill(input, holes, output, WIDTH, HEIGHT);
+        assertEquals(120, output[0]);
+        filler.fill(input, holes, output, WIDTH, HEIGHT);
+        assertEquals(120, output[0]);
+        // Too old now
+        filler.fill(input, holes, output, WIDTH, HEIGHT);
+        assertEquals(0, output[0]);
+    }
+
+    @Test
+    public void process_keepsHolesOutOfTheMovingAverage() {
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < samples.length; i++) {
+            // Every third sample has zero confidence
+            samples[i] = (short) (i % 3 == 0 ? 1 << 13 | 1000 : 1000);
+        }
+        DepthFrameProcessor plain = new DepthFrameProcessor(WIDTH, HEIGHT);
+        DepthFrameProcessor filled = new DepthFrameProcessor(WIDTH, HEIGHT);
+        filled.setHoleFiller(new HoleFiller());
+
+        plain.process(samples);
+        filled.process(samples);
+
+        int expected = new DepthDecoder().decode((short) 1000);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(expected, filled.getAveragedMask()[i] & 0xFF);
+            assertEquals(expected, filled.getBlurredAverage()[i] & 0xFF);
+            // The raw stage still shows the holes
+            assertEquals(plain.getRawMask()[i], filled.getRawMask()[i]);
+        }
+        assertEquals(0, plain.getAveragedMask()[0]);
+    }
+
+    private static int nearestValidDistance(byte[] holes, int x, int y) {
+        int nearest = Integer.MAX_VALUE;
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                if (holes[j * WIDTH + i] == 0) {
+                    nearest = Math.min(nearest, Math.max(Math.abs(i - x), Math.abs(j - y)));
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private static boolean hasValidValueAt(byte[] input, byte[] holes, int x, int y, int distance, int value) {
+        for (int j = Math.max(0, y - distance); j <= Math.min(HEIGHT - 1, y + distance); j++) {
+            for (int i = Math.max(0, x - distance); i <= Math.min(WIDTH - 1, x + distance); i++) {
+                if (holes[j * WIDTH + i] == 0 && (input[j * WIDTH + i] & 0xFF) == value
+                        && Math.max(Math.abs(i - x), Math.abs(j - y)) == distance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
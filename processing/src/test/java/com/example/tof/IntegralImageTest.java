@@ -0,0 +1,112 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntegralImageTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 180;
+
+    @Test
+    public void queries_matchSummingTheRectangle() {
+        Random random = new Random(5);
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < mask.length; i++) {
+            // About a fifth of the pixels are invalid
+            mask[i] = (byte) (random.nextInt(5) == 0 ? 0 : random.nextInt(256));
+        }
+        IntegralImage integralImage = new IntegralImage(WIDTH, HEIGHT);
+        integralImage.build(mask);
+
+        for (int i = 0; i < 200; i++) {
+            int x0 = random.nextInt(WIDTH);
+            int y0 = random.nextInt(HEIGHT);
+            int x1 = x0 + 1 + random.nextInt(WIDTH - x0);
+            int y1 = y0 + 1 + random.nextInt(HEIGHT - y0);
+            long sum = 0;
+            long squares = 0;
+            int count = 0;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    int value = mask[y * WIDTH + x] & 0xFF;
+                    sum += value;
+                    squares += value * value;
+                    count += value != 0 ? 1 : 0;
+                }
+            }
+            assertEquals(count, integralImage.count(x0, y0, x1, y1));
+            assertEquals(sum, integralImage.sum(x0, y0, x1, y1));
+            assertEquals(squares, integralImage.sumOfSquares(x0, y0, x1, y1));
+            double mean = (double) sum / count;
+            assertEquals(mean, integralImage.mean(x0, y0, x1, y1), 1e-9);
+            assertEquals((double) squares / count - mean * mean, integralImage.variance(x0, y0, x1, y1), 1e-6);
+        }
+    }
+
+    @Test
+    public void queries_clipRectanglesToTheFrame() {
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        Arrays.fill(mask, (byte) 10);
+        IntegralImage integralImage = new IntegralImage(WIDTH, HEIGHT);
+        integralImage.build(mask);
+
+        assertEquals(WIDTH * HEIGHT, integralImage.count(-5, -5, WIDTH + 5, HEIGHT + 5));
+        assertEquals(0, integralImage.count(10, 10, 10, 20));
+        assertEquals(0, integralImage.mean(20, 20, 10, 10), 0);
+        assertEquals(0, integralImage.variance(0, 0, WIDTH, HEIGHT), 0);
+        // The window is cut off by the corner
+        assertEquals(10, integralImage.meanAround(0, 0, 3));
+    }
+
+    @Test
+    public void build_doesNotOverflowOnLargeFrames() {
+        int width = 1280;
+        int height = 960;
+        short[] samples = new short[width * height];
+        // Maximum range at full confidence
+        Arrays.fill(samples, (short) 0x1FFF);
+        IntegralImage integralImage = new IntegralImage(width, height);
+
+        integralImage.build(samples, new DepthDecoder());
+
+        long pixels = (long) width * height;
+        assertEquals(pixels * 8191, integralImage.sum(0, 0, width, height));
+        assertEquals(pixels * 8191 * 8191, integralImage.sumOfSquares(0, 0, width, height));
+        assertEquals(8191, integralImage.mean(0, 0, width, height), 0);
+    }
+
+    @Test
+    public void build_skipsDepthSamplesWithoutRangeOrConfidence() {
+        short[] samples = new short[WIDTH * HEIGHT];
+        Arrays.fill(samples, (short) 1000);
+        samples[0] = 0;
+        // Confidence bits of 1 mean 0% confidence
+        samples[1] = (short) ((1 << 13) | 3000);
+        IntegralImage integralImage = new IntegralImage(WIDTH, HEIGHT);
+
+        integralImage.build(samples, new DepthDecoder());
+
+        assertEquals(WIDTH * HEIGHT - 2, integralImage.count(0, 0, WIDTH, HEIGHT));
+        assertEquals(1000, integralImage.mean(0, 0, 4, 4), 0);
+    }
+
+    @Test
+    public void build_followsTheDecodersConfidenceFilter() {
+        short[] samples = new short[WIDTH * HEIGHT];
+        Arrays.fill(samples, (short) 1000);
+        // Confidence bits of 3 mean 2/7 confidence
+        samples[0] = (short) ((3 << 13) | 3000);
+        IntegralImage integralImage = new IntegralImage(WIDTH, HEIGHT);
+
+        integralImage.build(samples, new DepthDecoder(DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX, 0.1f));
+        assertEquals(WIDTH * HEIGHT, integralImage.count(0, 0, WIDTH, HEIGHT));
+
+        integralImage.build(samples, new DepthDecoder(DepthDecoder.DEFAULT_RANGE_MIN, DepthDecoder.DEFAULT_RANGE_MAX, 0.5f));
+        assertEquals(WIDTH * HEIGHT - 1, integralImage.count(0, 0, WIDTH, HEIGHT));
+        assertEquals(1000, integralImage.mean(0, 0, 4, 4), 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketIndex_coversEveryValueWithBucketsAtMostASixteenthWide() {
+        long previousUpper = -1;
+        for (int i = 0; i < 400; i++) {
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            long lower = previousUpper + 1;
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            assertTrue(upper - lower <= Math.max(0, lower / 16));
+            previousUpper = upper;
+        }
+    }
+
+    @Test
+    public void getPercentile_isWithinOneBucketOfTheExactValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean());
+        assertEquals(500000, histogram.getPercentile(0.5), 500000 / 16);
+        assertEquals(990000, histogram.getPercentile(0.99), 990000 / 16);
+        assertEquals(1000000, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void record_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void record_countsEveryValueFromConcurrentThreads() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(10002, histogram.getMax());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(123);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+}
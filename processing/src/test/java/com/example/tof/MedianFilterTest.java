@@ -0,0 +1,88 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MedianFilterTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void sortingNetworks_matchASortedWindow() {
+        byte[] input = randomMask(1);
+        for (int radius = 1; radius <= 2; radius++) {
+            byte[] output = new byte[input.length];
+            new MedianFilter(radius).filter(input, output, WIDTH, HEIGHT);
+            assertArrayEquals("radius " + radius, bruteForceMedian(input, radius), output);
+        }
+    }
+
+    @Test
+    public void histogramMedian_matchesASortedWindowForAnyRadius() {
+        byte[] input = randomMask(2);
+        for (int radius : new int[]{1, 2, 3, 6, 15}) {
+            byte[] output = new byte[input.length];
+            new MedianFilter(radius, true).filter(input, output, WIDTH, HEIGHT);
+            assertArrayEquals("radius " + radius, bruteForceMedian(input, radius), output);
+        }
+    }
+
+    @Test
+    public void filter_keepsADepthEdgeSharpAndRemovesSpeckles() {
+        byte[] input = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                input[y * WIDTH + x] = (byte) (x < WIDTH / 2 ? 40 : 200);
+            }
+        }
+        byte[] expected = input.clone();
+        // Isolated dropouts and spikes
+        input[5 * WIDTH + 5] = 0;
+        input[10 * WIDTH + 30] = (byte) 255;
+
+        for (MedianFilter filter : new MedianFilter[]{new MedianFilter(1), new MedianFilter(2), new MedianFilter(4)}) {
+            byte[] output = new byte[input.length];
+            filter.filter(input, output, WIDTH, HEIGHT);
+            assertArrayEquals("radius " + filter.getRadius(), expected, output);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNetworksBeyondRadiusTwo() {
+        new MedianFilter(3, false);
+    }
+
+    private static byte[] randomMask(long seed) {
+        Random random = new Random(seed);
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) random.nextInt(256);
+        }
+        return mask;
+    }
+
+    private static byte[] bruteForceMedian(byte[] input, int radius) {
+        int size = 2 * radius + 1;
+        int[] window = new int[size * size];
+        byte[] output = new byte[input.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int n = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int sy = Math.min(HEIGHT - 1, Math.max(0, y + dy));
+                        int sx = Math.min(WIDTH - 1, Math.max(0, x + dx));
+                        window[n++] = input[sy * WIDTH + sx] & 0xFF;
+                    }
+                }
+                Arrays.sort(window);
+                output[y * WIDTH + x] = (byte) window[window.length / 2];
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int WALL = 1500;
+
+    private final Random random = new Random(7);
+    private final DepthDecoder decoder = new DepthDecoder();
+
+    @Test
+    public void update_learnsAStaticSceneAsBackground() {
+        MotionDetector detector = new MotionDetector();
+        detector.setLowPowerStride(1);
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse(detector.update(wall(), WIDTH, HEIGHT, decoder));
+            assertEquals(0, detector.getChangedPixelCount());
+        }
+        assertFalse(detector.isActive());
+    }
+
+    @Test
+    public void update_marksThePixelsThatMoved() {
+        MotionDetector detector = new MotionDetector();
+        detector.setLowPowerStride(1);
+        for (int i = 0; i < 20; i++) {
+            detector.update(wall(), WIDTH, HEIGHT, decoder);
+        }
+
+        short[] frame = wall();
+        addBox(frame, 10, 10, 20, 15, 900);
+        assertTrue(detector.update(frame, WIDTH, HEIGHT, decoder));
+
+        assertEquals(20 * 15, detector.getChangedPixelCount());
+        byte[] mask = detector.getMotionMask();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inBox = x >= 10 && x < 30 && y >= 10 && y < 25;
+                assertEquals(inBox ? MotionDetector.MOVING : 0, mask[y * WIDTH + x]);
+            }
+        }
+        assertTrue(detector.isActive());
+    }
+
+    @Test
+    public void update_looksAtEveryPixelOnlyWhileThereIsMotion() {
+        MotionDetector detector = new MotionDetector();
+        detector.setQuietFrames(5);
+        // Every pixel's model gets a few samples in low power
+        for (int i = 0; i < 4 * 16; i++) {
+            detector.update(wall(), WIDTH, HEIGHT, decoder);
+        }
+        assertTrue(detector.isLowPower());
+
+        short[] frame = wall();
+        addBox(frame, 8, 8, 32, 32, 800);
+        assertTrue(detector.update(frame, WIDTH, HEIGHT, decoder));
+        // 1 in 16 pixels of the box were looked at
+        assertEquals(32 * 32 / 16, detector.getChangedPixelCount());
+        assertFalse(detector.isLowPower());
+
+        assertTrue(detector.update(frame, WIDTH, HEIGHT, decoder));
+        assertEquals(32 * 32, detector.getChangedPixelCount());
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(detector.isLowPower());
+            assertFalse(detector.update(wall(), WIDTH, HEIGHT, decoder));
+        }
+        assertTrue(detector.isLowPower());
+        for (byte value : detector.getMotionMask()) {
+            assertEquals(0, value);
+        }
+    }
+
+    @Test
+    public void update_ignoresSamplesTheDecoderFiltersOut() {
+        MotionDetector detector = new MotionDetector();
+        detector.setLowPowerStride(1);
+        for (int i = 0; i < 20; i++) {
+            detector.update(wall(), WIDTH, HEIGHT, decoder);
+        }
+
+        short[] frame = wall();
+        for (int i = 0; i < frame.length; i += 2) {
+            // Confidence code 1 is below the default confidence filter
+            frame[i] = (short) (1 << 13 | 300);
+        }
+        assertFalse(detector.update(frame, WIDTH, HEIGHT, decoder));
+        assertEquals(0, detector.getChangedPixelCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_rejectsFramesSmallerThanTheSize() {
+        new MotionDetector().update(new short[WIDTH * HEIGHT - 1], WIDTH, HEIGHT, decoder);
+    }
+
+    // A flat wall with a few mm of noise
+    private short[] wall() {
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (WALL + random.nextInt(21) - 10);
+        }
+        return samples;
+    }
+
+    private static void addBox(short[] samples, int left, int top, int width, int height, int depth) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                samples[y * WIDTH + x] = (short) depth;
+            }
+        }
+    }
+}
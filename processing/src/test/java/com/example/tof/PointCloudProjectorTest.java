@@ -0,0 +1,168 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PointCloudProjectorTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    private static final CameraIntrinsics INTRINSICS = new CameraIntrinsics(WIDTH, HEIGHT, 70f, 72f, 41f, 29.5f);
+
+    @Test
+    public void project_placesAFlatWallAtItsDepth() {
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 1500;
+        }
+
+        projector.project(frame);
+
+        assertEquals(WIDTH * HEIGHT, projector.getPointCount());
+        FloatBuffer points = projector.getPoints();
+        assertEquals(WIDTH * HEIGHT * 3, points.remaining());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int index = (y * WIDTH + x) * 3;
+                assertEquals((x - 41f) / 70f * 1.5f, points.get(index), 1e-5f);
+                assertEquals((y - 29.5f) / 72f * 1.5f, points.get(index + 1), 1e-5f);
+                assertEquals(1.5f, points.get(index + 2), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void project_putsEveryPointOfATiltedPlaneOnThatPlane() {
+        // 0.3x - 0.2y + z = 1.2, in meters
+        float a = 0.3f;
+        float b = -0.2f;
+        float d = 1.2f;
+        short[] samples = new short[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float rayX = (x - INTRINSICS.getCx()) / INTRINSICS.getFx();
+                float rayY = (y - INTRINSICS.getCy()) / INTRINSICS.getFy();
+                float z = d / (a * rayX + b * rayY + 1);
+                samples[y * WIDTH + x] = (short) Math.round(z * 1000);
+            }
+        }
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+
+        // Through a ShortBuffer, as frames arrive from the camera
+        projector.project(ShortBuffer.wrap(samples));
+
+        assertEquals(WIDTH * HEIGHT, projector.getPointCount());
+        FloatBuffer points = projector.getPoints();
+        for (int i = 0; i < projector.getPointCount(); i++) {
+            float x = points.get(i * 3);
+            float y = points.get(i * 3 + 1);
+            float z = points.get(i * 3 + 2);
+            // Depth is rounded to whole millimeters
+            assertEquals(d, a * x + b * y + z, 0.001f);
+        }
+    }
+
+    @Test
+    public void project_skipsSamplesWithoutRangeOrConfidence() {
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 1000;
+        }
+        frame[0] = 0;
+        // Confidence bits of 1 mean 0% confidence
+        frame[1] = (short) ((1 << 13) | 1000);
+        // 6/7 confidence passes the default filter
+        frame[2] = (short) ((7 << 13) | 1000);
+
+        projector.project(frame);
+
+        assertEquals(WIDTH * HEIGHT - 2, projector.getPointCount());
+        // The first point comes from pixel 2
+        assertEquals((2 - 41f) / 70f, projector.getPoints().get(0), 1e-5f);
+    }
+
+    @Test
+    public void setStride_projectsEveryStrideThPixel() {
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+        projector.setStride(3);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 800;
+        }
+
+        projector.project(frame);
+
+        // 27 columns (0, 3 ... 78) and 20 rows
+        assertEquals(27 * 20, projector.getPointCount());
+        assertEquals((3 - 41f) / 70f * 0.8f, projector.getPoints().get(3), 1e-5f);
+    }
+
+    @Test
+    public void setVoxelSize_keepsOnePointPerVoxel() {
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+        projector.setVoxelSize(0.05f);
+        short[] frame = new short[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 1000;
+        }
+
+        // Twice, to make sure the voxels taken by the first frame are forgotten
+        projector.project(frame);
+        int firstCount = projector.getPointCount();
+        projector.project(frame);
+
+        assertEquals(firstCount, projector.getPointCount());
+        assertTrue(projector.getPointCount() < WIDTH * HEIGHT / 4);
+        Set<String> voxels = new HashSet<>();
+        FloatBuffer points = projector.getPoints();
+        for (int i = 0; i < projector.getPointCount(); i++) {
+            String voxel = (int) Math.floor(points.get(i * 3) / 0.05f) + ","
+                    + (int) Math.floor(points.get(i * 3 + 1) / 0.05f);
+            assertTrue(voxel, voxels.add(voxel));
+        }
+        // The wall spans about 1.14m x 0.83m
+        assertEquals(24 * 17, voxels.size(), 24);
+    }
+
+    @Test
+    public void withSize_scalesTheIntrinsics() {
+        PointCloudProjector projector = new PointCloudProjector(INTRINSICS);
+        projector.setStride(2);
+
+        PointCloudProjector larger = projector.withSize(WIDTH * 2, HEIGHT * 2);
+
+        assertEquals(140f, larger.getIntrinsics().getFx(), 1e-4f);
+        assertEquals(59f, larger.getIntrinsics().getCy(), 1e-4f);
+        assertEquals(2, larger.getStride());
+    }
+
+    @Test
+    public void fromCalibration_scalesFromTheActiveArray() {
+        float[] calibration = {1000f, 1000f, 320f, 240f, 0f};
+
+        CameraIntrinsics intrinsics = CameraIntrinsics.fromCalibration(calibration, 640, 480, 240, 180);
+
+        assertEquals(375f, intrinsics.getFx(), 1e-4f);
+        assertEquals(120f, intrinsics.getCx(), 1e-4f);
+        assertEquals(90f, intrinsics.getCy(), 1e-4f);
+        assertNull(CameraIntrinsics.fromCalibration(null, 640, 480, 240, 180));
+        assertNull(CameraIntrinsics.fromCalibration(new float[5], 640, 480, 240, 180));
+    }
+
+    @Test
+    public void fromFieldOfView_centersThePrincipalPoint() {
+        CameraIntrinsics intrinsics = CameraIntrinsics.fromFieldOfView(90f, 240, 180);
+
+        assertEquals(120f, intrinsics.getFx(), 1e-3f);
+        assertEquals(120f, intrinsics.getFy(), 1e-3f);
+        assertEquals(120f, intrinsics.getCx(), 0f);
+        assertEquals(90f, intrinsics.getCy(), 0f);
+    }
+}
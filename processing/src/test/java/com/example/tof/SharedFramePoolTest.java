@@ -0,0 +1,100 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharedFramePoolTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    @Test
+    public void acquire_reusesFramesOnceTheLastReferenceIsReleased() {
+        SharedFramePool pool = new SharedFramePool(WIDTH, HEIGHT, 1);
+        SharedFrame frame = pool.acquire();
+        assertEquals(1, frame.getReferenceCount());
+
+        frame.retain();
+        frame.release();
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getOutstandingCount());
+
+        frame.release();
+        assertEquals(0, pool.getOutstandingCount());
+        assertSame(frame, pool.acquire());
+        assertEquals(1, frame.getReferenceCount());
+    }
+
+    @Test
+    public void acquire_countsExhaustion() {
+        SharedFramePool pool = new SharedFramePool(WIDTH, HEIGHT, 2);
+        assertNotNull(pool.acquire());
+        assertNotNull(pool.acquire());
+
+        assertNull(pool.acquire());
+        assertNull(pool.acquire());
+
+        assertEquals(2, pool.getExhaustedCount());
+        assertEquals(2, pool.getAcquiredCount());
+        assertEquals(0, pool.getAvailableCount());
+    }
+
+    @Test
+    public void set_copiesTheMaskIntoAReadOnlyView() {
+        SharedFramePool pool = new SharedFramePool(WIDTH, HEIGHT, 1);
+        byte[] mask = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) (20 * i);
+        }
+        SharedFrame frame = pool.acquire();
+
+        frame.set(DepthStage.RAW, mask, 42);
+
+        assertEquals(42, frame.getTimestamp());
+        assertEquals(DepthStage.RAW, frame.getStage());
+        assertEquals(0, frame.get(0));
+        assertEquals(100, frame.get(1, 1));
+        // Values are stored as unsigned bytes
+        assertEquals(220, frame.get(11));
+        assertTrue(frame.getData().isReadOnly());
+        byte[] copy = new byte[WIDTH * HEIGHT];
+        frame.copyTo(copy);
+        assertEquals((byte) 220, copy[11]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void release_throwsWhenReleasedTooOften() {
+        SharedFrame frame = new SharedFramePool(WIDTH, HEIGHT, 1).acquire();
+        frame.release();
+        frame.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retain_throwsOnceTheFrameIsBackInThePool() {
+        SharedFrame frame = new SharedFramePool(WIDTH, HEIGHT, 1).acquire();
+        frame.release();
+        frame.retain();
+    }
+
+    @Test
+    public void getLeakedCount_countsFramesHeldTooLong() {
+        final long[] now = {0};
+        SharedFramePool pool = new SharedFramePool(WIDTH, HEIGHT, 3, new NanoClock() {
+            @Override
+            public long nanoTime() {
+                return now[0];
+            }
+        });
+        SharedFrame held = pool.acquire();
+        SharedFrame released = pool.acquire();
+        now[0] = 500;
+        pool.acquire();
+        released.release();
+        now[0] = 1500;
+
+        // Only the frame still held since time 0
+        assertEquals(1, pool.getLeakedCount(1000));
+        held.release();
+        assertEquals(0, pool.getLeakedCount(1000));
+    }
+}
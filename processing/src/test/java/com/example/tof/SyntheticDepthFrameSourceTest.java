@@ -0,0 +1,146 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyntheticDepthFrameSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final CameraIntrinsics INTRINSICS = new CameraIntrinsics(WIDTH, HEIGHT, 50, 50, 32, 24);
+
+    @Test
+    public void readFrame_rendersAWallAtItsDistance() {
+        SyntheticDepthFrameSource source = new SyntheticDepthFrameSource(INTRINSICS, 1);
+        source.addPlane(0, 0, 1, 1.5f);
+        short[] samples = new short[WIDTH * HEIGHT];
+
+        source.readFrame(0, samples);
+
+        for (short sample : samples) {
+            assertEquals(1500, sample);
+        }
+    }
+
+    @Test
+    public void readFrame_putsASphereInFrontOfTheWall() {
+        SyntheticDepthFrameSource source = new SyntheticDepthFrameSource(INTRINSICS, 1);
+        source.addPlane(0, 0, 1, 2f).addSphere(0, 0, 1f, 0.2f, 0, 0, 0);
+        short[] samples = new short[WIDTH * HEIGHT];
+
+        source.readFrame(0, samples);
+
+        // The nearest point of the sphere is straight ahead
+        assertEquals(800, samples[24 * WIDTH + 32]);
+        assertEquals(2000, samples[0]);
+    }
+
+    @Test
+    public void readFrame_movesSpheresWithTime() {
+        SyntheticDepthFrameSource source = new SyntheticDepthFrameSource(INTRINSICS, 1);
+        source.setFps(10);
+        source.addSphere(0, 0, 1f, 0.1f, 0, 0, 1f);
+        short[] samples = new short[WIDTH * HEIGHT];
+
+        assertEquals(500_000_000L, source.readFrame(5, samples));
+
+        assertEquals(1400, samples[24 * WIDTH + 32]);
+        // Nothing to hit at the edges
+        assertEquals(0, samples[0]);
+    }
+
+    @Test
+    public void readFrame_isRepeatableForTheSameSeedAndIndex() {
+        short[] first = new short[WIDTH * HEIGHT];
+        short[] again = new short[WIDTH * HEIGHT];
+        short[] other = new short[WIDTH * HEIGHT];
+        SyntheticDepthFrameSource source = noisySource(7);
+
+        source.readFrame(3, first);
+        source.readFrame(4, other);
+        noisySource(7).readFrame(3, again);
+
+        assertArrayEquals(first, again);
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    @Test
+    public void readFrame_addsNoiseAndDropouts() {
+        SyntheticDepthFrameSource source = noisySource(3);
+        short[] samples = new short[WIDTH * HEIGHT];
+
+        source.readFrame(0, samples);
+
+        int dropouts = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        DepthDecoder decoder = new DepthDecoder();
+        for (short sample : samples) {
+            int range = sample & 0x1FFF;
+            sum += range;
+            sumOfSquares += range * (double) range;
+            if (((sample >> 13) & 0x7) != 0) {
+                dropouts++;
+                assertEquals(0, decoder.decode(sample));
+            }
+        }
+        double mean = sum / samples.length;
+        double deviation = Math.sqrt(sumOfSquares / samples.length - mean * mean);
+        assertEquals(1000, mean, 2);
+        assertEquals(10, deviation, 1);
+        assertEquals(0.2, dropouts / (double) samples.length, 0.03);
+    }
+
+    @Test
+    public void playback_keepsTimestampsIncreasingWhenLoopingASingleFrame() throws Exception {
+        SyntheticDepthFrameSource source = new SyntheticDepthFrameSource(INTRINSICS, 1);
+        source.addPlane(0, 0, 1, 1f);
+        source.setFrameCount(1);
+        source.setLooping(true);
+        DepthPipeline<Void> pipeline = new DepthPipeline<>(new DepthFrameProcessor(WIDTH, HEIGHT));
+        final List<Long> timestamps = new ArrayList<>();
+        pipeline.subscribe(DepthStage.BLURRED_MOVING_AVERAGE, new DepthStageListener() {
+            @Override
+            public void onStageAvailable(DepthStage stage, ProcessedFrame frame) {
+                synchronized (timestamps) {
+                    timestamps.add(frame.getTimestamp());
+                    timestamps.notifyAll();
+                }
+            }
+        });
+        pipeline.start();
+
+        try {
+            source.start(pipeline);
+            long deadline = System.currentTimeMillis() + 5000;
+            synchronized (timestamps) {
+                while (timestamps.size() < 3 && System.currentTimeMillis() < deadline) {
+                    timestamps.wait(100);
+                }
+            }
+        } finally {
+            source.stop();
+            pipeline.stop();
+        }
+
+        synchronized (timestamps) {
+            assertTrue(timestamps.size() >= 3);
+            for (int i = 1; i < timestamps.size(); i++) {
+                assertTrue(timestamps.get(i) - timestamps.get(i - 1)
+                        >= PlaybackDepthFrameSource.DEFAULT_FRAME_INTERVAL_NANOS);
+            }
+        }
+    }
+
+    private static SyntheticDepthFrameSource noisySource(long seed) {
+        SyntheticDepthFrameSource source = new SyntheticDepthFrameSource(INTRINSICS, seed);
+        source.addPlane(0, 0, 1, 1f);
+        source.setNoise(10);
+        source.setDropoutProbability(0.2f);
+        return source;
+    }
+}
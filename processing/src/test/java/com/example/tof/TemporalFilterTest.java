@@ -0,0 +1,131 @@
+package com.example.tof;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemporalFilterTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final int SIZE = WIDTH * HEIGHT;
+
+    @Test
+    public void window_matchesNaiveAverageOfLastNFrames() {
+        for (int windowSize : new int[] {1, 3, 8, 17}) {
+            TemporalFilter filter = new TemporalFilter(WIDTH, HEIGHT, windowSize);
+            byte[][] frames = randomFrames(40, 1);
+            byte[] output = new byte[SIZE];
+            for (int f = 0; f < frames.length; f++) {
+                filter.filter(frames[f], null, output);
+                int first = Math.max(0, f - windowSize + 1);
+                for (int i = 0; i < SIZE; i++) {
+                    int sum = 0;
+                    for (int k = first; k <= f; k++) {
+                        sum += frames[k][i] & 0xFF;
+                    }
+                    assertEquals(sum / (f - first + 1), output[i] & 0xFF);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void weightedWindow_matchesNaiveWeightedAverage() {
+        TemporalFilter filter = new TemporalFilter(WIDTH, HEIGHT, 5);
+        filter.setConfidenceWeighted(true);
+        byte[][] frames = randomFrames(20, 2);
+        byte[][] weights = randomWeights(20, 3);
+        byte[] output = new byte[SIZE];
+        for (int f = 0; f < frames.length; f++) {
+            filter.filter(frames[f], weights[f], output);
+            int first = Math.max(0, f - 4);
+            for (int i = 0; i < SIZE; i++) {
+                int sum = 0;
+                int weightSum = 0;
+                for (int k = first; k <= f; k++) {
+                    sum += weights[k][i] * (frames[k][i] & 0xFF);
+                    weightSum += weights[k][i];
+                }
+                assertEquals(weightSum > 0 ? sum / weightSum : 0, output[i] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void weightedWindow_ignoresZeroConfidenceSamples() {
+        TemporalFilter filter = new TemporalFilter(WIDTH, HEIGHT, 4);
+        filter.setConfidenceWeighted(true);
+        byte[] output = new byte[SIZE];
+        byte[] fullWeight = new byte[SIZE];
+        java.util.Arrays.fill(fullWeight, (byte) TemporalFilter.MAX_CONFIDENCE_WEIGHT);
+        filter.filter(constant(200), fullWeight, output);
+        // A dropout with no confidence leaves the average where it was
+        filter.filter(constant(0), new byte[SIZE], output);
+        assertArrayEquals(constant(200), output);
+    }
+
+    @Test
+    public void ema_staysWithinOneOfFloatingPoint() {
+        TemporalFilter filter = new TemporalFilter(WIDTH, HEIGHT);
+        filter.setMode(TemporalFilter.Mode.EMA);
+        filter.setEmaAlpha(64);
+        byte[][] frames = randomFrames(60, 4);
+        double[] expected = new double[SIZE];
+        byte[] output = new byte[SIZE];
+        for (int f = 0; f < frames.length; f++) {
+            filter.filter(frames[f], null, output);
+            for (int i = 0; i < SIZE; i++) {
+                int value = frames[f][i] & 0xFF;
+                expected[i] = f == 0 ? value : expected[i] + 0.25 * (value - expected[i]);
+                assertEquals(expected[i], output[i] & 0xFF, 1.0);
+            }
+        }
+    }
+
+    @Test
+    public void confidenceWeight_followsDepth16Encoding() {
+        assertEquals(TemporalFilter.MAX_CONFIDENCE_WEIGHT, TemporalFilter.confidenceWeight((short) 1000));
+        assertEquals(0, TemporalFilter.confidenceWeight((short) ((1 << 13) | 1000)));
+        assertEquals(6, TemporalFilter.confidenceWeight((short) ((7 << 13) | 1000)));
+    }
+
+    @Test
+    public void setWindowSize_restartsTheWindow() {
+        TemporalFilter filter = new TemporalFilter(WIDTH, HEIGHT, 3);
+        byte[] output = new byte[SIZE];
+        filter.filter(constant(90), null, output);
+        filter.setWindowSize(2);
+        filter.filter(constant(30), null, output);
+        assertArrayEquals(constant(30), output);
+    }
+
+    private static byte[] constant(int value) {
+        byte[] frame = new byte[SIZE];
+        java.util.Arrays.fill(frame, (byte) value);
+        return frame;
+    }
+
+    private static byte[][] randomFrames(int count, long seed) {
+        Random random = new Random(seed);
+        byte[][] frames = new byte[count][SIZE];
+        for (byte[] frame : frames) {
+            for (int i = 0; i < SIZE; i++) {
+                frame[i] = (byte) random.nextInt(256);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[][] randomWeights(int count, long seed) {
+        Random random = new Random(seed);
+        byte[][] weights = new byte[count][SIZE];
+        for (byte[] frame : weights) {
+            for (int i = 0; i < SIZE; i++) {
+                frame[i] = (byte) random.nextInt(TemporalFilter.MAX_CONFIDENCE_WEIGHT + 1);
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.tof;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/*  Synthetic scenes and recordings shared by the tests: a wall a little over a meter away, tilted
+    toward the camera at the bottom, with a ball crossing in front of it at 2 m/s.
+ */
+final class TestScenes {
+    private TestScenes() {
+    }
+
+    static SyntheticDepthFrameSource scene(int width, int height, long seed, float noiseMillimeters,
+            float dropoutProbability) {
+        SyntheticDepthFrameSource scene = new SyntheticDepthFrameSource(
+                CameraIntrinsics.fromFieldOfView(75, width, height), seed);
+        scene.addPlane(0, -0.2f, 1, 1.2f)
+                .addSphere(-0.2f, 0, 0.6f, 0.1f, 2f, 0, 0);
+        scene.setNoise(noiseMillimeters);
+        scene.setDropoutProbability(dropoutProbability);
+        return scene;
+    }
+
+    // Records every frame of the scene to path, with room to queue all of them so none is dropped
+    static File record(File path, SyntheticDepthFrameSource scene, int framesPerChunk) throws IOException {
+        int frameCount = scene.getFrameCount();
+        DepthRecorder recorder = new DepthRecorder(path, scene.getWidth(), scene.getHeight(), new DepthDecoder(),
+                framesPerChunk, frameCount);
+        short[] samples = new short[scene.getWidth() * scene.getHeight()];
+        for (int i = 0; i < frameCount; i++) {
+            assertTrue(recorder.submitFrame(samples, scene.readFrame(i, samples)));
+        }
+        recorder.close();
+        return path;
+    }
+}